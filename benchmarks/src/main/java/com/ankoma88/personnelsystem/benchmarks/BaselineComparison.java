@@ -0,0 +1,101 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH CSV result file (-rf csv) with a recorded baseline and prints the change of every score.
+ * Exits with status 1 if any benchmark got worse by more than the tolerance (default 10%).
+ * <pre>
+ * java -cp target/benchmarks.jar com.ankoma88.personnelsystem.benchmarks.BaselineComparison \
+ *     baselines/baseline.csv jmh-result.csv [tolerance-percent]
+ * </pre>
+ */
+public class BaselineComparison {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.csv> <current.csv> [tolerance-percent]");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %9s%n", entry.getKey(), "-", now.score, "new");
+                continue;
+            }
+            // Positive means better: more throughput or less time per operation
+            double change = now.higherIsBetter() ? now.score / before.score - 1 : before.score / now.score - 1;
+            boolean regressed = change < -tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%%s%n", entry.getKey(), before.score, now.score,
+                    change * 100, regressed ? "  REGRESSION" : "");
+        }
+        System.out.println(regressions + " regression(s) beyond " + Math.round(tolerance * 100) + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /** Results keyed by benchmark name, mode and parameters */
+    private static Map<String, Result> read(String file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            List<String> header = split(reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = split(line);
+                // Class and method name, without the package
+                String benchmark = fields.get(0);
+                String name = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+                StringBuilder key = new StringBuilder(name).append(" ").append(fields.get(1));
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+                        key.append(" ").append(header.get(i).substring(7)).append("=").append(fields.get(i));
+                    }
+                }
+                results.put(key.toString(), new Result(fields.get(1),
+                        Double.parseDouble(fields.get(header.indexOf("Score")))));
+            }
+        }
+        return results;
+    }
+
+    /** JMH quotes every text field and never embeds quotes or commas in them */
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        for (String field : line.split(",", -1)) {
+            fields.add(field.startsWith("\"") && field.endsWith("\"") && field.length() >= 2
+                    ? field.substring(1, field.length() - 1) : field);
+        }
+        return fields;
+    }
+
+    private static class Result {
+        private final String mode;
+        private final double score;
+
+        Result(String mode, double score) {
+            this.mode = mode;
+            this.score = score;
+        }
+
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.impl.EmployeeDaoImpl;
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process H2 database in SQL Server compatibility mode standing in for the production database,
+ * with the same dbo.Employees table. Each instance gets its own named in-memory database.
+ * H2 has no rowversion type or OUTPUT clause: row_version is an 8-byte value taken from a sequence on every
+ * insert and update, and the statements that need OUTPUT select from the changed rows instead.
+ */
+final class EmbeddedDatabase implements DaoFactory {
+
+    private static final String NEXT_ROW_VERSION = "CAST(NEXT VALUE FOR dbo.row_versions AS BINARY(8))";
+
+    private final String url;
+    /** Keeps the in-memory database alive between connections */
+    private final Connection keepAlive;
+
+    EmbeddedDatabase(String name) throws SQLException {
+        this.url = "jdbc:h2:mem:" + name + ";MODE=MSSQLServer;DB_CLOSE_DELAY=0";
+        this.keepAlive = DriverManager.getConnection(url);
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE SCHEMA dbo");
+            statement.execute("CREATE SEQUENCE dbo.row_versions");
+            statement.execute("CREATE TABLE dbo.Employees (id INT IDENTITY PRIMARY KEY, full_name NVARCHAR(200), "
+                    + "department NVARCHAR(200), supervisor INT NOT NULL DEFAULT 0, comment NVARCHAR(500), "
+                    + "row_version BINARY(8) NOT NULL DEFAULT " + NEXT_ROW_VERSION + " ON UPDATE " + NEXT_ROW_VERSION
+                    + ")");
+            statement.execute("CREATE INDEX IX_Employees_supervisor ON dbo.Employees (supervisor)");
+            statement.execute("CREATE INDEX IX_Employees_row_version ON dbo.Employees (row_version)");
+        }
+    }
+
+    /**
+     * Insert count employees shaped like Samples.employee(); their ids are 1..count
+     */
+    EmbeddedDatabase populate(int count) throws SQLException {
+        try (Connection connection = getConnection()) {
+            EmployeeDao dao = getEmployeeDao(connection);
+            for (int from = 1; from <= count; from += 10000) {
+                List<Employee> chunk = new ArrayList<>();
+                for (int id = from; id < from + 10000 && id <= count; id++) {
+                    Employee sample = Samples.employee(id);
+                    chunk.add(new Employee(sample.getFullName(), sample.getDepartment(), sample.getSupervisor(),
+                            sample.getComment()));
+                }
+                dao.createAll(chunk);
+            }
+        } catch (PersistenceException e) {
+            throw new SQLException("Failed to populate the embedded database", e);
+        }
+        return this;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return new EmployeeDaoImpl(connection) {
+            @Override
+            public String getCreateReturningQuery() {
+                return "SELECT id, row_version FROM FINAL TABLE (INSERT INTO dbo.Employees "
+                        + "(full_name, department, supervisor, comment) VALUES (?, ?, ?, ?))";
+            }
+
+            @Override
+            public String getCancelSupervisorUpdateQuery() {
+                return "SELECT * FROM FINAL TABLE (UPDATE dbo.Employees SET supervisor = 0 WHERE supervisor = ?)";
+            }
+        };
+    }
+
+    void close() throws SQLException {
+        keepAlive.close();
+    }
+}
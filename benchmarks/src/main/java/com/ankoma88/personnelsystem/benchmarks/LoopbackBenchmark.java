@@ -0,0 +1,199 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.protocol.BinaryCodec;
+import com.ankoma88.personnelsystem.protocol.WireProtocol;
+import com.ankoma88.personnelsystem.server.ServerStarter;
+import com.ankoma88.personnelsystem.server.dao.impl.CachingDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.NotifyingDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.PooledDaoFactory;
+import com.ankoma88.personnelsystem.server.feed.ChangeFeed;
+import com.ankoma88.personnelsystem.server.index.OrgChartIndex;
+import com.ankoma88.personnelsystem.server.service.impl.AsyncProcessorImpl;
+import com.ankoma88.personnelsystem.server.service.impl.ProcessorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.util.Settings.ORG_CHART_REFRESH_MILLIS;
+
+/**
+ * Request/response round trips over loopback TCP to a ServerStarter backed by the embedded database,
+ * wired like production: pool, cache, org chart index and the async processor.
+ * Every benchmark thread has its own connection. Server logging is raised to SEVERE,
+ * otherwise console output dominates the measurement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LoopbackBenchmark {
+
+    private static final int EMPLOYEES = 10000;
+    private static final int PIPELINE_DEPTH = 32;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        private final Logger serverLog = Logger.getLogger("com.ankoma88.personnelsystem");
+        private EmbeddedDatabase database;
+        private PooledDaoFactory pool;
+        private AsyncProcessorImpl processor;
+        private ServerStarter server;
+
+        @Setup(Level.Trial)
+        public void start() throws SQLException, InterruptedException {
+            serverLog.setLevel(java.util.logging.Level.SEVERE);
+            database = new EmbeddedDatabase("loopback").populate(EMPLOYEES);
+            pool = new PooledDaoFactory(database);
+            NotifyingDaoFactory factory = new NotifyingDaoFactory(new CachingDaoFactory(pool));
+            OrgChartIndex orgChart = new OrgChartIndex(ORG_CHART_REFRESH_MILLIS);
+            factory.addListener(orgChart);
+            processor = new AsyncProcessorImpl(new ProcessorImpl(factory, orgChart));
+            server = new ServerStarter(0, processor, new ChangeFeed());
+            server.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws SQLException {
+            server.shutdown();
+            processor.shutdown();
+            pool.close();
+            database.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BinaryClient {
+        private Socket socket;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private final BinaryCodec codec = new BinaryCodec();
+        private ByteBuffer payload = ByteBuffer.allocate(8192);
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws IOException {
+            socket = new Socket("127.0.0.1", server.server.getLocalPort());
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.writeInt(WireProtocol.MAGIC);
+            out.writeByte(WireProtocol.CURRENT_VERSION);
+            out.flush();
+            in.readInt();
+            in.readByte();
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+
+        void write(Message message) throws IOException {
+            ByteBuffer frame = codec.encode(message);
+            out.write(frame.array(), frame.position(), frame.remaining());
+        }
+
+        Message read() throws IOException {
+            int length = in.readInt();
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+            in.readFully(payload.array(), 0, length);
+            payload.clear();
+            payload.limit(length);
+            return codec.decode(payload);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SerializedClient {
+        private Socket socket;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws IOException {
+            socket = new Socket("127.0.0.1", server.server.getLocalPort());
+            socket.setTcpNoDelay(true);
+            out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public Message binaryRead(BinaryClient client) throws IOException {
+        client.write(new Message(Command.READ, randomId()));
+        client.out.flush();
+        return client.read();
+    }
+
+    @Benchmark
+    public Object serializedRead(SerializedClient client) throws IOException, ClassNotFoundException {
+        client.out.writeObject(new Message(Command.READ, randomId()));
+        client.out.reset();
+        client.out.flush();
+        return client.in.readObject();
+    }
+
+    @Benchmark
+    public Message binaryGetPage(BinaryClient client) throws IOException {
+        client.write(new Message(Command.GET_PAGE, randomId()));
+        client.out.flush();
+        return client.read();
+    }
+
+    /** PIPELINE_DEPTH reads sent back to back with correlation ids, then all answers collected */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int binaryPipelinedRead(BinaryClient client) throws IOException {
+        for (int i = 1; i <= PIPELINE_DEPTH; i++) {
+            Message request = new Message(Command.READ, randomId());
+            request.setCorrelationId(i);
+            client.write(request);
+        }
+        client.out.flush();
+        int sum = 0;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            sum += client.read().getCorrelationId();
+        }
+        return sum;
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, EMPLOYEES + 1);
+    }
+}
@@ -0,0 +1,92 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.protocol.BinaryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization of Message (the legacy wire format) against BinaryCodec frames.
+ * Java serialization uses a fresh stream per message, like a client reconnecting; on a long-lived
+ * stream class descriptors are sent once but every object stays in the handle table.
+ * Encoded sizes are printed by WireSizeReport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int employees;
+
+    /** 3 compresses the larger frames */
+    @Param({"2", "3"})
+    public byte protocolVersion;
+
+    private Message message;
+    private final ByteArrayOutputStream javaOut = new ByteArrayOutputStream(64 * 1024);
+    private byte[] javaEncoded;
+
+    private BinaryCodec encoder;
+    private BinaryCodec decoder;
+    private ByteBuffer binaryPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        message = Samples.response(employees);
+        javaEncoded = javaEncode();
+
+        encoder = new BinaryCodec(protocolVersion);
+        decoder = new BinaryCodec(protocolVersion);
+        ByteBuffer frame = encoder.encode(message);
+        frame.getInt();
+        binaryPayload = ByteBuffer.allocate(frame.remaining());
+        binaryPayload.put(frame).flip();
+    }
+
+    @Benchmark
+    public byte[] javaEncode() throws IOException {
+        javaOut.reset();
+        ObjectOutputStream out = new ObjectOutputStream(javaOut);
+        out.writeObject(message);
+        out.flush();
+        return javaOut.toByteArray();
+    }
+
+    @Benchmark
+    public Object javaDecode() throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(javaEncoded)).readObject();
+    }
+
+    @Benchmark
+    public ByteBuffer binaryEncode() {
+        return encoder.encode(message);
+    }
+
+    @Benchmark
+    public Message binaryDecode() throws IOException {
+        binaryPayload.rewind();
+        return decoder.decode(binaryPayload);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.dao.impl.EmployeeDaoImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EmployeeDaoImpl.parseResultSet alone: the rows are fetched once into a CachedRowSet,
+ * so the measurement covers column lookup and Employee construction but no database work.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseResultSetBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private EmbeddedDatabase database;
+    private CachedRowSet resultSet;
+    private ExposedDao dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new EmbeddedDatabase("parse" + rows).populate(rows);
+        try (Connection connection = database.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT * FROM dbo.Employees")) {
+            resultSet = RowSetProvider.newFactory().createCachedRowSet();
+            resultSet.populate(rs);
+        }
+        dao = new ExposedDao();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Employee> parseResultSet() throws SQLException {
+        resultSet.beforeFirst();
+        return dao.parseResultSet(resultSet);
+    }
+
+    private static class ExposedDao extends EmployeeDaoImpl {
+        ExposedDao() {
+            super(null);
+        }
+
+        @Override
+        public List<Employee> parseResultSet(ResultSet rs) throws SQLException {
+            return super.parseResultSet(rs);
+        }
+    }
+}
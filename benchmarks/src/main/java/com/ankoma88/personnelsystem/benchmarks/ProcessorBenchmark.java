@@ -0,0 +1,96 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.server.dao.impl.CachingDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.NotifyingDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.PooledDaoFactory;
+import com.ankoma88.personnelsystem.server.index.OrgChartIndex;
+import com.ankoma88.personnelsystem.server.service.impl.ProcessorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.ankoma88.personnelsystem.util.Settings.ORG_CHART_REFRESH_MILLIS;
+
+/**
+ * ProcessorImpl.processMessage against the embedded database, through the same factory chain as the server.
+ * "direct" goes to the database for every request (pool only), "cached" adds the employee cache
+ * and the org chart index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorBenchmark {
+
+    private static final int EMPLOYEES = 10000;
+
+    @Param({"direct", "cached"})
+    public String path;
+
+    private EmbeddedDatabase database;
+    private PooledDaoFactory pool;
+    private ProcessorImpl processor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new EmbeddedDatabase("processor").populate(EMPLOYEES);
+        pool = new PooledDaoFactory(database);
+        if ("cached".equals(path)) {
+            NotifyingDaoFactory factory = new NotifyingDaoFactory(new CachingDaoFactory(pool));
+            OrgChartIndex orgChart = new OrgChartIndex(ORG_CHART_REFRESH_MILLIS);
+            factory.addListener(orgChart);
+            processor = new ProcessorImpl(factory, orgChart);
+        } else {
+            processor = new ProcessorImpl(pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        pool.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Message read() {
+        return processor.processMessage(new Message(Command.READ, randomId()));
+    }
+
+    @Benchmark
+    public Message getSubordinates() {
+        return processor.processMessage(new Message(Command.GET_SUBORDINATES, randomId() / 10));
+    }
+
+    @Benchmark
+    public Message getPage() {
+        return processor.processMessage(new Message(Command.GET_PAGE, randomId()));
+    }
+
+    /** Unknown command: the cost of dispatch alone */
+    @Benchmark
+    public Message dispatchOnly() {
+        return processor.processMessage(new Message(Command.SUCCESS));
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, EMPLOYEES + 1);
+    }
+}
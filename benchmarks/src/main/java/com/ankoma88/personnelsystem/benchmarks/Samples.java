@@ -0,0 +1,40 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic test data shaped like the production personnel table
+ */
+final class Samples {
+
+    static final String[] DEPARTMENTS = {"Accounting", "Engineering", "Human Resources", "Legal", "Marketing",
+            "Operations", "Research and Development", "Sales", "Support"};
+
+    private Samples() {
+    }
+
+    static Employee employee(int id) {
+        Employee employee = new Employee("Employee Number " + id + " Surname", DEPARTMENTS[id % DEPARTMENTS.length],
+                id < 10 ? 0 : id / 10, id % 3 == 0 ? null : "Joined in " + (2000 + id % 20));
+        employee.setId(id);
+        return employee;
+    }
+
+    static List<Employee> employees(int count) {
+        List<Employee> list = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            list.add(employee(i));
+        }
+        return list;
+    }
+
+    /** A single-employee READ answer for count 1, otherwise a list answer like GET_ALL */
+    static Message response(int count) {
+        return count == 1 ? new Message(Command.SUCCESS, employee(1)) : new Message(Command.SUCCESS, employees(count));
+    }
+}
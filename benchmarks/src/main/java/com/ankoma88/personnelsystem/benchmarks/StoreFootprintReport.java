@@ -0,0 +1,57 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.index.ColumnarEmployeeStore;
+import com.ankoma88.personnelsystem.util.IntObjectHashMap;
+
+/**
+ * Prints the heap taken by the org chart's ColumnarEmployeeStore and by the object-per-row layout
+ * (Employee objects in an IntObjectHashMap) for the same employees: estimated and measured.
+ * Measurements compare used heap after a full GC, so run with a heap large enough for both, e.g.
+ * <pre>
+ * java -Xmx2g -cp target/benchmarks.jar com.ankoma88.personnelsystem.benchmarks.StoreFootprintReport [employees]
+ * </pre>
+ */
+public class StoreFootprintReport {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        long before = usedHeap();
+        IntObjectHashMap<Employee> objects = new IntObjectHashMap<>(count);
+        for (int id = 1; id <= count; id++) {
+            objects.put(id, copy(Samples.employee(id)));
+        }
+        long objectBytes = usedHeap() - before;
+
+        before = usedHeap();
+        ColumnarEmployeeStore.Builder builder = new ColumnarEmployeeStore.Builder();
+        for (int id = 1; id <= count; id++) {
+            builder.add(objects.get(id));
+        }
+        ColumnarEmployeeStore store = builder.build();
+        builder = null;
+        long columnarBytes = usedHeap() - before;
+
+        System.out.println("estimated: " + store.getFootprint());
+        // Reading objects here keeps it reachable while the store is measured
+        System.out.printf("measured:  %d employees: %,d bytes columnar, %,d bytes as objects (%.1f%%)%n",
+                objects.size(), columnarBytes, objectBytes, 100.0 * columnarBytes / objectBytes);
+    }
+
+    /** Strings as a JDBC driver returns them: a separate instance per row */
+    private static Employee copy(Employee e) {
+        Employee copy = new Employee(new String(e.getFullName()), new String(e.getDepartment()), e.getSupervisor(),
+                e.getComment() == null ? null : new String(e.getComment()));
+        copy.setId(e.getId());
+        return copy;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
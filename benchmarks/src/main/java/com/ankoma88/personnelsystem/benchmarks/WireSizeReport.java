@@ -0,0 +1,36 @@
+package com.ankoma88.personnelsystem.benchmarks;
+
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.protocol.BinaryCodec;
+import com.ankoma88.personnelsystem.protocol.WireProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * Prints encoded message sizes for the payloads used by MessageCodecBenchmark; v3 frames may be compressed
+ */
+public class WireSizeReport {
+
+    public static void main(String[] args) throws IOException {
+        BinaryCodec codec = new BinaryCodec(WireProtocol.VERSION_2);
+        BinaryCodec compressing = new BinaryCodec(WireProtocol.VERSION_3);
+        System.out.printf("%10s %14s %14s %8s %16s %8s%n", "employees", "java (bytes)", "binary (bytes)", "ratio",
+                "v3 (bytes)", "ratio");
+        for (int count : new int[]{1, 100, 1000, 10000}) {
+            Message message = Samples.response(count);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(message);
+            out.flush();
+
+            int java = bytes.size();
+            int binary = codec.encode(message).remaining();
+            int compressed = compressing.encode(message).remaining();
+            System.out.printf("%10d %14d %14d %8.2f %16d %8.2f%n", count, java, binary, (double) java / binary,
+                    compressed, (double) java / compressed);
+        }
+    }
+}
@@ -1,6 +1,39 @@
 package com.ankoma88.personnelsystem.model;
 
 
+/**
+ * The binary protocol sends commands by ordinal: add new values at the end only
+ *
+ * After SUBSCRIBE the server pushes a message for every change: EMPLOYEE_CHANGED with the employee's
+ * current state, EMPLOYEE_DELETED or SUPERVISOR_CANCELLED with the id as key. A client that falls behind
+ * gets a single RESYNC instead of the changes it missed and should fetch the full list again.
+ * Subscribe before fetching the full list; every delta carries complete state, so applying one twice is harmless.
+ *
+ * GET_ALL, GET_SUPERVISORS and GET_SUBORDINATES sent with the version of an earlier answer are answered
+ * NOT_MODIFIED if the list is the same, and GET_ALL with a DELTA when the server still knows what changed:
+ * the changed employees, and the deleted ids as keys.
+ *
+ * UPDATE, and DELETE sent with the employee as read, only apply if the employee's row version is the one
+ * it was read with; otherwise the answer is CONFLICT with the employee's current state.
+ *
+ * OVERLOADED means the server turned the request away unprocessed because too many were waiting for the
+ * database; it is safe to retry later.
+ *
+ * TIMEOUT means the request was not answered within its timeout; the database work it started was cancelled,
+ * and a write may or may not have been committed.
+ *
+ * HEARTBEAT only travels between cluster peers: a link sends one every so often and the peer echoes it,
+ * so either end notices a peer that went silent.
+ */
 public enum Command {
-    CREATE, READ, UPDATE, DELETE, GET_ALL, GET_SUPERVISORS, GET_SUBORDINATES, CANCEL_SUPERVISOR, SUCCESS, ERROR
+    CREATE, READ, UPDATE, DELETE, GET_ALL, GET_SUPERVISORS, GET_SUBORDINATES, CANCEL_SUPERVISOR, SUCCESS, ERROR,
+    GET_REPORTING_CHAIN, GET_SUBTREE, GET_PAGE, GET_ALL_STREAM, CHUNK,
+    BATCH_CREATE, BATCH_UPDATE, BATCH_DELETE,
+    SUBSCRIBE, UNSUBSCRIBE, EMPLOYEE_CHANGED, EMPLOYEE_DELETED, SUPERVISOR_CANCELLED, RESYNC,
+    SEARCH, FILTER, COUNT, COUNT_BY_DEPARTMENT, COUNT_BY_SUPERVISOR,
+    NOT_MODIFIED, DELTA,
+    CONFLICT,
+    OVERLOADED,
+    TIMEOUT,
+    HEARTBEAT
 }
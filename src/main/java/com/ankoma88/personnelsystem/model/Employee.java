@@ -11,6 +11,13 @@ public class Employee implements Serializable {
     private String department;
     private Integer supervisor;
     private String comment;
+    /** Data version of the change that gave the employee this state; 0 if not known */
+    private long version;
+    /**
+     * The stored row's version when it was read; sent back with UPDATE or DELETE, the change only applies
+     * if the row still has it. 0 if not known, which applies the change unconditionally.
+     */
+    private long rowVersion;
 
     public Employee() {
         this.supervisor = 0;
@@ -63,6 +70,22 @@ public class Employee implements Serializable {
         this.comment = comment;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getRowVersion() {
+        return rowVersion;
+    }
+
+    public void setRowVersion(long rowVersion) {
+        this.rowVersion = rowVersion;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
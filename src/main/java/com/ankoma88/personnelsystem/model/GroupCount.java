@@ -0,0 +1,39 @@
+package com.ankoma88.personnelsystem.model;
+
+
+import java.io.Serializable;
+
+/**
+ * One group of a COUNT_BY_DEPARTMENT or COUNT_BY_SUPERVISOR answer:
+ * the department name as label, or the supervisor id as key
+ */
+public class GroupCount implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int key;
+    private String label;
+    private int count;
+
+    public GroupCount(int key, String label, int count) {
+        this.key = key;
+        this.label = label;
+        this.count = count;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return (label != null ? label : String.valueOf(key)) + ": " + count;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ankoma88.personnelsystem.model;
+
+
+/**
+ * Outcome of one item of a batch command.
+ * The binary protocol sends statuses by ordinal: add new values at the end only
+ */
+public enum ItemStatus {
+    /** Applied */
+    OK,
+    /** No employee with that id, nothing changed */
+    NOT_FOUND,
+    /** The database rejected this item; the whole batch was rolled back */
+    FAILED,
+    /** Not attempted because an earlier item failed; the whole batch was rolled back */
+    SKIPPED,
+    /** The employee changed since the row version sent with the item, nothing changed */
+    CONFLICT
+}
@@ -14,6 +14,34 @@ public class Message implements Serializable {
     private Employee employee;
     private List<Employee> employees;
     private int key;
+    /**
+     * Chosen by the client to match answers to pipelined requests; the server copies it into every answer.
+     * Requests without one (0) are answered in order, before the next request on the connection is read.
+     */
+    private int correlationId;
+    /**
+     * Rows per page or chunk requested by GET_PAGE / GET_ALL_STREAM, or results wanted by SEARCH;
+     * 0 for the server default
+     */
+    private int pageSize;
+    /** Words or word beginnings to look for with SEARCH; for FILTER and the COUNT commands, the department */
+    private String query;
+    /** Ids for BATCH_DELETE; for FILTER and the COUNT commands, the supervisors */
+    private int[] keys;
+    /** Per-item outcome of a batch command, in request order */
+    private List<ItemStatus> results;
+    /** Answer of COUNT_BY_DEPARTMENT / COUNT_BY_SUPERVISOR, largest group first */
+    private List<GroupCount> groups;
+    /**
+     * In GET_ALL, GET_SUPERVISORS and GET_SUBORDINATES, the version from the client's last answer to the
+     * same request, 0 for none; in their answers, the version to send next time
+     */
+    private long version;
+    /**
+     * Milliseconds the client is willing to wait for the answer, 0 for the server default; the server never waits
+     * longer than REQUEST_TIMEOUT_MILLIS. A request not answered in time is answered TIMEOUT.
+     */
+    private int timeoutMillis;
 
     public Message(Command command, List<Employee> employees) {
         this.command = command;
@@ -58,6 +86,70 @@ public class Message implements Serializable {
         this.key = key;
     }
 
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(int correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int[] getKeys() {
+        return keys;
+    }
+
+    public void setKeys(int[] keys) {
+        this.keys = keys;
+    }
+
+    public List<ItemStatus> getResults() {
+        return results;
+    }
+
+    public void setResults(List<ItemStatus> results) {
+        this.results = results;
+    }
+
+    public List<GroupCount> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<GroupCount> groups) {
+        this.groups = groups;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
     public List<Employee> getEmployees() {
         return employees;
     }
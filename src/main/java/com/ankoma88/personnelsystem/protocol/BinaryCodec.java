@@ -0,0 +1,545 @@
+package com.ankoma88.personnelsystem.protocol;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.GroupCount;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.model.Message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.ankoma88.personnelsystem.protocol.WireProtocol.FRAME_HEADER_BYTES;
+import static com.ankoma88.personnelsystem.protocol.WireProtocol.MAX_FRAME_BYTES;
+import static com.ankoma88.personnelsystem.util.Settings.COMPRESSION_LEVEL;
+import static com.ankoma88.personnelsystem.util.Settings.COMPRESSION_POOL_SIZE;
+import static com.ankoma88.personnelsystem.util.Settings.COMPRESSION_THRESHOLD_BYTES;
+
+/**
+ * Encodes Messages into length-prefixed frames and back.
+ *
+ * The output buffer and string scratch space are reused between calls, so encoding allocates nothing
+ * once the buffer has grown to the largest frame seen. One codec instance per connection, not thread safe.
+ *
+ * Layout (ints are unsigned LEB128 varints, strings are varint (byte length + 1, 0 for null) + UTF-8):
+ * <pre>
+ * payload  := message | 0:u8 message | 1:u8 length:u32 zlib(message)
+ * message  := command:u8 key:varint flags:u8 [flags2:u8] [correlationId:varint] [pageSize:varint] [version:varlong]
+ *             [timeoutMillis:varint]
+ *             [query:string] [employee]
+ *             [count:varint employee*] [count:varint key:varint*] [count:varint status:u8*] [count:varint group*]
+ * employee := flags:u8 [id:varint] [supervisor:varint] [version:varlong] [rowVersion:varlong]
+ *             fullName department comment
+ * group    := key:varint label count:varint
+ * </pre>
+ * flags2, the versions and row versions are only written from protocol version 2 on, the timeout from version 4 on. From version 3 on
+ * a payload starts with its encoding: messages longer than COMPRESSION_THRESHOLD_BYTES are Deflate-compressed
+ * when that makes them smaller. Deflaters and inflaters are pooled, and small messages never touch them.
+ */
+public class BinaryCodec {
+
+    private static final int MESSAGE_HAS_EMPLOYEE = 1;
+    private static final int MESSAGE_HAS_EMPLOYEES = 2;
+    private static final int MESSAGE_HAS_PAGE_SIZE = 4;
+    private static final int MESSAGE_HAS_KEYS = 8;
+    private static final int MESSAGE_HAS_RESULTS = 16;
+    private static final int MESSAGE_HAS_CORRELATION_ID = 32;
+    private static final int MESSAGE_HAS_QUERY = 64;
+    private static final int MESSAGE_HAS_GROUPS = 128;
+
+    private static final int MESSAGE2_HAS_VERSION = 1;
+    private static final int MESSAGE2_HAS_TIMEOUT = 2;
+
+    private static final int EMPLOYEE_PRESENT = 1;
+    private static final int EMPLOYEE_HAS_ID = 2;
+    private static final int EMPLOYEE_HAS_SUPERVISOR = 4;
+    private static final int EMPLOYEE_HAS_VERSION = 8;
+    private static final int EMPLOYEE_HAS_ROW_VERSION = 16;
+
+    private static final int PAYLOAD_PLAIN = 0;
+    private static final int PAYLOAD_DEFLATED = 1;
+
+    private static final Queue<Deflater> deflaters = new ArrayBlockingQueue<>(COMPRESSION_POOL_SIZE);
+    private static final Queue<Inflater> inflaters = new ArrayBlockingQueue<>(COMPRESSION_POOL_SIZE);
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final ItemStatus[] STATUSES = ItemStatus.values();
+
+    private final byte version;
+    private ByteBuffer out = ByteBuffer.allocate(8192);
+    private char[] chars = new char[256];
+    /** Only allocated once a large message is sent or received */
+    private ByteBuffer deflated;
+    private ByteBuffer inflated;
+
+    public BinaryCodec() {
+        this(WireProtocol.CURRENT_VERSION);
+    }
+
+    /** A codec for a connection that negotiated the given protocol version */
+    public BinaryCodec(byte version) {
+        this.version = version;
+    }
+
+    /**
+     * Encode a message as a complete frame (header included).
+     * The returned buffer belongs to the codec and is only valid until the next call.
+     */
+    public ByteBuffer encode(Message message) {
+        out.clear();
+        out.putInt(0);
+        boolean encoded = version >= WireProtocol.VERSION_3;
+        if (encoded) {
+            out.put((byte) PAYLOAD_PLAIN);
+        }
+        writeMessage(message);
+        if (encoded && out.position() - FRAME_HEADER_BYTES - 1 > COMPRESSION_THRESHOLD_BYTES && deflate()) {
+            return deflated;
+        }
+        out.putInt(0, out.position() - FRAME_HEADER_BYTES);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Decode a frame payload (without its length header) positioned at its first byte
+     */
+    public Message decode(ByteBuffer payload) throws ProtocolException {
+        try {
+            if (version >= WireProtocol.VERSION_3) {
+                int encoding = payload.get();
+                if (encoding == PAYLOAD_DEFLATED) {
+                    payload = inflate(payload);
+                } else if (encoding != PAYLOAD_PLAIN) {
+                    throw new ProtocolException("Unknown payload encoding: " + encoding);
+                }
+            }
+            Message message = readMessage(payload);
+            if (payload.hasRemaining()) {
+                throw new ProtocolException("Trailing " + payload.remaining() + " bytes in frame");
+            }
+            return message;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new ProtocolException("Truncated frame", e);
+        }
+    }
+
+    /**
+     * Validate a payload length read from a frame header
+     */
+    public static int checkFrameLength(int length) throws ProtocolException {
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new ProtocolException("Invalid frame length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Compress the message in out into a frame in deflated; false if that would not make it smaller
+     */
+    private boolean deflate() {
+        int start = FRAME_HEADER_BYTES + 1;
+        int length = out.position() - start;
+        // No larger than the plain frame
+        int capacity = start + length;
+        if (deflated == null || deflated.capacity() < capacity) {
+            deflated = ByteBuffer.allocate(Math.max(capacity, 8192));
+        }
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(COMPRESSION_LEVEL);
+        }
+        try {
+            deflater.setInput(out.array(), start, length);
+            deflater.finish();
+            byte[] target = deflated.array();
+            int position = FRAME_HEADER_BYTES + 1 + 4;
+            while (!deflater.finished() && position < capacity) {
+                position += deflater.deflate(target, position, capacity - position);
+            }
+            if (!deflater.finished()) {
+                return false;
+            }
+            deflated.clear();
+            deflated.putInt(position - FRAME_HEADER_BYTES).put((byte) PAYLOAD_DEFLATED).putInt(length);
+            deflated.position(position);
+            deflated.flip();
+            return true;
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Decompress the rest of payload, which follows a PAYLOAD_DEFLATED encoding byte
+     */
+    private ByteBuffer inflate(ByteBuffer payload) throws ProtocolException {
+        int length = checkFrameLength(payload.getInt());
+        // One spare byte lets the inflater reach the end of the stream, and shows data beyond length
+        if (inflated == null || inflated.capacity() < length + 1) {
+            inflated = ByteBuffer.allocate(Math.max(length + 1, 8192));
+        }
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            inflater.setInput(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            byte[] target = inflated.array();
+            int position = 0;
+            while (!inflater.finished() && position <= length) {
+                int n = inflater.inflate(target, position, length + 1 - position);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                position += n;
+            }
+            if (!inflater.finished() || position != length || inflater.getRemaining() != 0) {
+                throw new ProtocolException("Corrupt compressed frame");
+            }
+            payload.position(payload.limit());
+            inflated.clear();
+            inflated.limit(length);
+            return inflated;
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Corrupt compressed frame", e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private void writeMessage(Message message) {
+        ensure(16);
+        out.put((byte) message.getCommand().ordinal());
+        writeVarInt(message.getKey());
+        Employee employee = message.getEmployee();
+        List<Employee> employees = message.getEmployees();
+        int[] keys = message.getKeys();
+        List<ItemStatus> results = message.getResults();
+        List<GroupCount> groups = message.getGroups();
+        int flags = (employee != null ? MESSAGE_HAS_EMPLOYEE : 0) | (employees != null ? MESSAGE_HAS_EMPLOYEES : 0)
+                | (message.getPageSize() != 0 ? MESSAGE_HAS_PAGE_SIZE : 0)
+                | (keys != null ? MESSAGE_HAS_KEYS : 0) | (results != null ? MESSAGE_HAS_RESULTS : 0)
+                | (message.getCorrelationId() != 0 ? MESSAGE_HAS_CORRELATION_ID : 0)
+                | (message.getQuery() != null ? MESSAGE_HAS_QUERY : 0) | (groups != null ? MESSAGE_HAS_GROUPS : 0);
+        out.put((byte) flags);
+        boolean versioned = version >= WireProtocol.VERSION_2;
+        boolean timed = version >= WireProtocol.VERSION_4 && message.getTimeoutMillis() != 0;
+        if (versioned) {
+            int flags2 = (message.getVersion() != 0 ? MESSAGE2_HAS_VERSION : 0) | (timed ? MESSAGE2_HAS_TIMEOUT : 0);
+            out.put((byte) flags2);
+        }
+        if (message.getCorrelationId() != 0) {
+            writeVarInt(message.getCorrelationId());
+        }
+        if (message.getPageSize() != 0) {
+            writeVarInt(message.getPageSize());
+        }
+        if (versioned && message.getVersion() != 0) {
+            writeVarLong(message.getVersion());
+        }
+        if (timed) {
+            writeVarInt(message.getTimeoutMillis());
+        }
+        if (message.getQuery() != null) {
+            writeString(message.getQuery());
+        }
+        if (employee != null) {
+            writeEmployee(employee);
+        }
+        if (employees != null) {
+            writeVarInt(employees.size());
+            for (Employee e : employees) {
+                writeEmployee(e);
+            }
+        }
+        if (keys != null) {
+            writeVarInt(keys.length);
+            for (int k : keys) {
+                writeVarInt(k);
+            }
+        }
+        if (results != null) {
+            writeVarInt(results.size());
+            ensure(results.size());
+            for (ItemStatus status : results) {
+                out.put((byte) status.ordinal());
+            }
+        }
+        if (groups != null) {
+            writeVarInt(groups.size());
+            for (GroupCount group : groups) {
+                writeVarInt(group.getKey());
+                writeString(group.getLabel());
+                writeVarInt(group.getCount());
+            }
+        }
+    }
+
+    private void writeEmployee(Employee employee) {
+        ensure(31);
+        if (employee == null) {
+            out.put((byte) 0);
+            return;
+        }
+        Integer id = employee.getId();
+        Integer supervisor = employee.getSupervisor();
+        long employeeVersion = version >= WireProtocol.VERSION_2 ? employee.getVersion() : 0;
+        long rowVersion = version >= WireProtocol.VERSION_2 ? employee.getRowVersion() : 0;
+        int flags = EMPLOYEE_PRESENT | (id != null ? EMPLOYEE_HAS_ID : 0) | (supervisor != null ? EMPLOYEE_HAS_SUPERVISOR : 0)
+                | (employeeVersion != 0 ? EMPLOYEE_HAS_VERSION : 0) | (rowVersion != 0 ? EMPLOYEE_HAS_ROW_VERSION : 0);
+        out.put((byte) flags);
+        if (id != null) {
+            writeVarInt(id);
+        }
+        if (supervisor != null) {
+            writeVarInt(supervisor);
+        }
+        if (employeeVersion != 0) {
+            writeVarLong(employeeVersion);
+        }
+        if (rowVersion != 0) {
+            writeVarLong(rowVersion);
+        }
+        writeString(employee.getFullName());
+        writeString(employee.getDepartment());
+        writeString(employee.getComment());
+    }
+
+    private void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /** UTF-8 encode straight into the output buffer, without an intermediate byte[] */
+    private void writeString(String s) {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        int length = s.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        writeVarInt(utf8Length + 1);
+        ensure(utf8Length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                // Unpaired surrogates are encoded as-is, like modified UTF-8 would
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (out.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+            out.flip();
+            grown.put(out);
+            out = grown;
+        }
+    }
+
+    private Message readMessage(ByteBuffer in) throws ProtocolException {
+        int ordinal = in.get() & 0xFF;
+        if (ordinal >= COMMANDS.length) {
+            throw new ProtocolException("Unknown command: " + ordinal);
+        }
+        Message message = new Message(COMMANDS[ordinal]);
+        message.setKey(readVarInt(in));
+        int flags = in.get();
+        int flags2 = version >= WireProtocol.VERSION_2 ? in.get() : 0;
+        if ((flags & MESSAGE_HAS_CORRELATION_ID) != 0) {
+            message.setCorrelationId(readVarInt(in));
+        }
+        if ((flags & MESSAGE_HAS_PAGE_SIZE) != 0) {
+            message.setPageSize(readVarInt(in));
+        }
+        if ((flags2 & MESSAGE2_HAS_VERSION) != 0) {
+            message.setVersion(readVarLong(in));
+        }
+        if ((flags2 & MESSAGE2_HAS_TIMEOUT) != 0) {
+            message.setTimeoutMillis(readVarInt(in));
+        }
+        if ((flags & MESSAGE_HAS_QUERY) != 0) {
+            message.setQuery(readString(in));
+        }
+        if ((flags & MESSAGE_HAS_EMPLOYEE) != 0) {
+            message.setEmployee(readEmployee(in));
+        }
+        if ((flags & MESSAGE_HAS_EMPLOYEES) != 0) {
+            int count = checkCount(readVarInt(in), in);
+            List<Employee> employees = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                employees.add(readEmployee(in));
+            }
+            message.setEmployees(employees);
+        }
+        if ((flags & MESSAGE_HAS_KEYS) != 0) {
+            int[] keys = new int[checkCount(readVarInt(in), in)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = readVarInt(in);
+            }
+            message.setKeys(keys);
+        }
+        if ((flags & MESSAGE_HAS_RESULTS) != 0) {
+            int count = checkCount(readVarInt(in), in);
+            List<ItemStatus> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int status = in.get() & 0xFF;
+                if (status >= STATUSES.length) {
+                    throw new ProtocolException("Unknown item status: " + status);
+                }
+                results.add(STATUSES[status]);
+            }
+            message.setResults(results);
+        }
+        if ((flags & MESSAGE_HAS_GROUPS) != 0) {
+            int count = checkCount(readVarInt(in), in);
+            List<GroupCount> groups = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                groups.add(new GroupCount(readVarInt(in), readString(in), readVarInt(in)));
+            }
+            message.setGroups(groups);
+        }
+        return message;
+    }
+
+    /** Every element takes at least one byte, which bounds what a corrupt count can make us allocate */
+    private static int checkCount(int count, ByteBuffer in) throws ProtocolException {
+        if (count < 0 || count > in.remaining()) {
+            throw new ProtocolException("Invalid element count: " + count);
+        }
+        return count;
+    }
+
+    private Employee readEmployee(ByteBuffer in) throws ProtocolException {
+        int flags = in.get();
+        if ((flags & EMPLOYEE_PRESENT) == 0) {
+            return null;
+        }
+        Employee employee = new Employee();
+        if ((flags & EMPLOYEE_HAS_ID) != 0) {
+            employee.setId(readVarInt(in));
+        }
+        employee.setSupervisor((flags & EMPLOYEE_HAS_SUPERVISOR) != 0 ? readVarInt(in) : null);
+        if ((flags & EMPLOYEE_HAS_VERSION) != 0) {
+            employee.setVersion(readVarLong(in));
+        }
+        if ((flags & EMPLOYEE_HAS_ROW_VERSION) != 0) {
+            employee.setRowVersion(readVarLong(in));
+        }
+        employee.setFullName(readString(in));
+        employee.setDepartment(readString(in));
+        employee.setComment(readString(in));
+        return employee;
+    }
+
+    private int readVarInt(ByteBuffer in) throws ProtocolException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    private long readVarLong(ByteBuffer in) throws ProtocolException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed varlong");
+    }
+
+    private String readString(ByteBuffer in) throws ProtocolException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new ProtocolException("String length exceeds frame: " + length);
+        }
+        if (chars.length < length) {
+            chars = new char[Math.max(chars.length * 2, length)];
+        }
+        int n = 0;
+        int end = in.position() + length;
+        while (in.position() < end) {
+            int b = in.get() & 0xFF;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[n++] = (char) (((b & 0x1F) << 6) | (in.get() & 0x3F));
+            } else if (b < 0xF0) {
+                chars[n++] = (char) (((b & 0x0F) << 12) | ((in.get() & 0x3F) << 6) | (in.get() & 0x3F));
+            } else {
+                int cp = ((b & 0x07) << 18) | ((in.get() & 0x3F) << 12) | ((in.get() & 0x3F) << 6) | (in.get() & 0x3F);
+                chars[n++] = Character.highSurrogate(cp);
+                chars[n++] = Character.lowSurrogate(cp);
+            }
+        }
+        if (in.position() != end) {
+            throw new ProtocolException("Malformed UTF-8 string");
+        }
+        return new String(chars, 0, n);
+    }
+}
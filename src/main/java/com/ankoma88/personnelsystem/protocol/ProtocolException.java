@@ -0,0 +1,15 @@
+package com.ankoma88.personnelsystem.protocol;
+
+import java.io.IOException;
+
+/** Malformed or unsupported data on the wire */
+public class ProtocolException extends IOException {
+
+    public ProtocolException(String message) {
+        super(message);
+    }
+
+    public ProtocolException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,41 @@
+package com.ankoma88.personnelsystem.protocol;
+
+/**
+ * Constants of the binary wire protocol shared by client and server.
+ *
+ * A binary client opens the connection with MAGIC followed by the highest protocol version it speaks;
+ * the server answers with MAGIC and the version both sides will use. After that every Message travels
+ * as a frame: 4-byte big-endian payload length followed by the payload written by BinaryCodec.
+ * Clients that start with a Java serialization stream header keep using serialized Messages.
+ */
+public abstract class WireProtocol {
+
+    /** "PSBP" */
+    public static final int MAGIC = 0x50534250;
+    public static final int HANDSHAKE_BYTES = 5;
+
+    public static final byte VERSION_1 = 1;
+    /** Adds data versions to messages and employees, and row versions to employees */
+    public static final byte VERSION_2 = 2;
+    /** Starts every payload with an encoding byte; large payloads may be compressed, see BinaryCodec */
+    public static final byte VERSION_3 = 3;
+    /** Adds the request timeout to messages */
+    public static final byte VERSION_4 = 4;
+    public static final byte CURRENT_VERSION = VERSION_4;
+
+    /** First two bytes written by ObjectOutputStream (STREAM_MAGIC) */
+    public static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    public static final int FRAME_HEADER_BYTES = 4;
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Version to use for a client that supports versions up to clientVersion
+     */
+    public static byte negotiate(byte clientVersion) throws ProtocolException {
+        if (clientVersion < VERSION_1) {
+            throw new ProtocolException("Unsupported protocol version: " + clientVersion);
+        }
+        return (byte) Math.min(clientVersion, CURRENT_VERSION);
+    }
+}
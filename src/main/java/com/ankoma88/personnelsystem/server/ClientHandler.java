@@ -0,0 +1,777 @@
+package com.ankoma88.personnelsystem.server;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.protocol.BinaryCodec;
+import com.ankoma88.personnelsystem.protocol.ProtocolException;
+import com.ankoma88.personnelsystem.protocol.WireProtocol;
+import com.ankoma88.personnelsystem.server.feed.Subscriber;
+import com.ankoma88.personnelsystem.server.feed.Subscription;
+import com.ankoma88.personnelsystem.server.metrics.Counter;
+import com.ankoma88.personnelsystem.server.service.interfaces.AsyncProcessor;
+import com.ankoma88.personnelsystem.server.service.interfaces.MessageSink;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.util.Settings.*;
+
+/**
+ * State of one client connection.
+ * The selector thread moves bytes between the socket and this handler's buffers;
+ * a worker thread is borrowed only while there is a received message to decode,
+ * so idle connections and clients sending slowly hold no thread. Requests are processed by an AsyncProcessor
+ * and answered from whichever thread completes them; workers never wait for the database.
+ * The first bytes from the client select the wire format: the binary protocol (see WireProtocol)
+ * or, for older clients, Java serialization of Message objects.
+ *
+ * Requests carrying a correlation id are pipelined: the reading worker hands each one to the processor
+ * and goes on reading, and answers are written in completion order, tagged with the request's id.
+ * A request without one is answered before the next request is read.
+ * At most MAX_IN_FLIGHT_PER_CONNECTION of them are processed at once; past that the connection is not
+ * read, so a client sending faster than the server answers is eventually held back by TCP flow control.
+ * When the connection closes, or the client closes its end while requests are in processing, those requests
+ * are cancelled, which stops the database statements they are running.
+ *
+ * After SUBSCRIBE, changes from the server's ChangeFeed are pushed between answers,
+ * tagged with the SUBSCRIBE request's correlation id. Pushing pauses while more than
+ * SUBSCRIBER_BACKLOG_BYTES wait to be sent, and the changes coalesce in the meantime.
+ */
+public class ClientHandler implements Runnable {
+    private static final Logger log = Logger.getLogger(ClientHandler.class.getName());
+
+    private final ServerStarter server;
+    private final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final AsyncProcessor processor;
+    private final Executor workers;
+    private SelectionKey key;
+
+    private final Inbound inbound = new Inbound();
+    private final Outbound outbound = new Outbound();
+    /** Used by the selector thread only */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private final Counter bytesReceivedTotal;
+    private final Counter bytesSentTotal;
+    /** Written by the selector thread */
+    private volatile long bytesReceived;
+    /** Written under the writeQueue lock */
+    private volatile long bytesSent;
+
+    /** Queued response bytes the socket did not accept yet, guarded by itself */
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private long queuedBytes;
+
+    /** True while a worker owns this handler (or is about to) */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean readPaused;
+    /** Requests dispatched and not answered yet */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /** Their processing, to cancel when the connection closes */
+    private final Set<CompletableFuture<?>> processing =
+            Collections.newSetFromMap(new ConcurrentHashMap<CompletableFuture<?>, Boolean>());
+    /** An unnumbered request is being processed, nothing more is read until it is answered */
+    private volatile boolean awaitingAnswer;
+    /** Serializes answers written by concurrently processed requests */
+    private final Object sendLock = new Object();
+
+    /** Set by the worker that negotiated the wire format, used only by the worker owning this handler */
+    private volatile MessageStream stream;
+    private volatile Subscription subscription;
+
+    public ClientHandler(ServerStarter server, SocketChannel channel, AsyncProcessor processor, Executor workers)
+            throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.remoteAddress = channel.getRemoteAddress();
+        this.processor = processor;
+        this.workers = workers;
+        this.bytesReceivedTotal = server.getMetrics().getBytesReceived();
+        this.bytesSentTotal = server.getMetrics().getBytesSent();
+    }
+
+    void register(Selector selector) throws IOException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Selector thread: drain the socket into the inbound buffer and make sure a worker looks at it
+     */
+    void onReadable() {
+        int n;
+        try {
+            while ((n = channel.read(readBuffer)) > 0) {
+                bytesReceived += n;
+                bytesReceivedTotal.add(n);
+                readBuffer.flip();
+                inbound.append(readBuffer);
+                readBuffer.clear();
+                if (inbound.available() >= MAX_INBOUND_BUFFER_BYTES && hasInput()) {
+                    // Stop reading until the worker catches up; a frame not received completely is read on
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (n < 0) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            inbound.endOfStream();
+            if (inFlight.get() > 0) {
+                // The client is gone; don't wait for its answers to find out
+                close();
+                return;
+            }
+        }
+        if (canRead()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Selector thread: push queued response bytes to the socket
+     */
+    void onWritable() {
+        synchronized (writeQueue) {
+            try {
+                ByteBuffer head;
+                while ((head = writeQueue.peek()) != null) {
+                    queuedBytes -= channel.write(head);
+                    if (head.hasRemaining()) {
+                        break;
+                    }
+                    writeQueue.poll();
+                }
+                if (writeQueue.isEmpty()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                close();
+            } finally {
+                writeQueue.notifyAll();
+            }
+        }
+        Subscription current = subscription;
+        if (current != null && !isBacklogged()) {
+            current.wakeUp();
+        }
+    }
+
+    /**
+     * Worker thread: decode and dispatch the messages received so far, until an unnumbered request
+     * has to be answered first or the in-flight limit is reached
+     */
+    @Override
+    public void run() {
+        try {
+            if (stream == null && canRead()) {
+                inbound.startMessage();
+                stream = negotiate();
+            }
+            while (stream != null && canRead()) {
+                inbound.startMessage();
+                Message input = stream.read();
+                log.info("Received message on server: " + input);
+                if (input.getCommand() == Command.SUBSCRIBE || input.getCommand() == Command.UNSUBSCRIBE) {
+                    subscribe(input);
+                } else {
+                    dispatch(input);
+                }
+            }
+        } catch (ProtocolException pe) {
+            log.info("Protocol error from " + remoteAddress + ": " + pe.getMessage());
+            close();
+        } catch (IOException ioe) {
+            log.info("IOException...");
+            close();
+        } catch (ClassNotFoundException e) {
+            log.info("Problem on reading message from client");
+            close();
+        } finally {
+            scheduled.set(false);
+            if (canRead()) {
+                schedule();
+            }
+        }
+    }
+
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        server.unregister(this);
+        Subscription current = subscription;
+        if (current != null) {
+            server.getChangeFeed().unsubscribe(current);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignored
+        }
+        if (!processing.isEmpty()) {
+            // Cancelling may wait for the database: not on the selector thread
+            Runnable cancel = new Runnable() {
+                @Override
+                public void run() {
+                    for (CompletableFuture<?> request : processing) {
+                        request.cancel(false);
+                    }
+                }
+            };
+            try {
+                workers.execute(cancel);
+            } catch (RejectedExecutionException e) {
+                cancel.run();
+            }
+        }
+        inbound.endOfStream();
+        synchronized (writeQueue) {
+            writeQueue.clear();
+            writeQueue.notifyAll();
+        }
+        System.err.println("Lost connection to " + remoteAddress + " (received " + bytesReceived + " bytes, sent "
+                + bytesSent + " bytes)");
+    }
+
+    /**
+     * Pick the wire format from the first bytes the client sent
+     */
+    private MessageStream negotiate() throws IOException {
+        int magic = (inbound.peek(0) << 8) | inbound.peek(1);
+        if (magic == WireProtocol.JAVA_SERIALIZATION_MAGIC) {
+            return new SerializedStream();
+        }
+        if (magic != WireProtocol.MAGIC >>> 16) {
+            throw new ProtocolException("Unknown protocol, first bytes: 0x" + Integer.toHexString(magic));
+        }
+        byte[] handshake = new byte[WireProtocol.HANDSHAKE_BYTES];
+        inbound.readFully(handshake, 0, handshake.length);
+        ByteBuffer hello = ByteBuffer.wrap(handshake);
+        if (hello.getInt() != WireProtocol.MAGIC) {
+            throw new ProtocolException("Bad handshake");
+        }
+        byte version = WireProtocol.negotiate(hello.get());
+        ByteBuffer reply = ByteBuffer.allocate(WireProtocol.HANDSHAKE_BYTES);
+        reply.putInt(WireProtocol.MAGIC).put(version).flip();
+        send(reply);
+        log.info("Binary protocol v" + version + " with " + remoteAddress);
+        return new BinaryStream(version);
+    }
+
+    /**
+     * Start or stop pushing changes to this client. Subscribing twice keeps the first subscription.
+     */
+    private void subscribe(Message input) throws IOException {
+        final Reply reply = new Reply(stream, input.getCorrelationId());
+        synchronized (this) {
+            if (input.getCommand() == Command.UNSUBSCRIBE) {
+                if (subscription != null) {
+                    server.getChangeFeed().unsubscribe(subscription);
+                    subscription = null;
+                }
+            } else if (subscription == null && !closed.get()) {
+                subscription = server.getChangeFeed().subscribe(new Subscriber() {
+                    @Override
+                    public boolean isBacklogged() {
+                        return ClientHandler.this.isBacklogged();
+                    }
+
+                    @Override
+                    public void push(Message change) throws IOException {
+                        reply.send(change);
+                    }
+                }, workers);
+            }
+        }
+        reply.send(new Message(Command.SUCCESS));
+    }
+
+    private boolean isBacklogged() {
+        synchronized (writeQueue) {
+            return queuedBytes > SUBSCRIBER_BACKLOG_BYTES;
+        }
+    }
+
+    /**
+     * Hand a request to the processor and answer it once processed, picking up reading again if it was waiting
+     */
+    private void dispatch(final Message input) {
+        final Reply reply = new Reply(stream, input.getCorrelationId());
+        final boolean ordered = input.getCorrelationId() == 0;
+        if (ordered) {
+            awaitingAnswer = true;
+        }
+        inFlight.incrementAndGet();
+        final CompletableFuture<?> processed = (input.getCommand() == Command.GET_ALL_STREAM
+                ? processor.processGetAllStream(input, reply)
+                : processor.processMessage(input)).toCompletableFuture();
+        processing.add(processed);
+        if (closed.get()) {
+            // Closed before it was added, so close() did not see it
+            processed.cancel(false);
+        }
+        processed.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object answer, Throwable failure) {
+                processing.remove(processed);
+                try {
+                    if (failure != null) {
+                        if (!closed.get()) {
+                            // Don't leave the client waiting for an answer that will never come
+                            log.log(Level.WARNING, "Failed to process " + input + " from " + remoteAddress, failure);
+                            reply.send(new Message(Command.ERROR));
+                        }
+                    } else if (answer != null) {
+                        reply.send((Message) answer);
+                    }
+                } catch (IOException e) {
+                    close();
+                } finally {
+                    inFlight.decrementAndGet();
+                    if (ordered) {
+                        awaitingAnswer = false;
+                    }
+                    if (canRead()) {
+                        schedule();
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean canRead() {
+        return !closed.get() && !awaitingAnswer && hasInput() && inFlight.get() < MAX_IN_FLIGHT_PER_CONNECTION;
+    }
+
+    /**
+     * Whether a worker would find something to do without waiting for the client: the end of the stream,
+     * a complete handshake or binary frame, or any part of a serialized message
+     */
+    private boolean hasInput() {
+        if (inbound.isEndOfStream()) {
+            return true;
+        }
+        MessageStream current = stream;
+        if (current != null) {
+            return current.hasMessage();
+        }
+        long magic = inbound.peekBuffered(0, 2);
+        if (magic == WireProtocol.MAGIC >>> 16) {
+            return inbound.available() >= WireProtocol.HANDSHAKE_BYTES;
+        }
+        if (magic == WireProtocol.JAVA_SERIALIZATION_MAGIC) {
+            // ObjectInputStream reads the stream header when it is created
+            return inbound.available() >= 4;
+        }
+        // Nothing yet, or an unknown protocol the worker rejects
+        return magic >= 0;
+    }
+
+    private void schedule() {
+        if (!closed.get() && scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Server is shutting down
+                scheduled.set(false);
+                close();
+            }
+        }
+    }
+
+    /**
+     * Write a complete frame, queueing a copy of what the socket cannot take right now,
+     * so the caller may reuse the buffer as soon as this returns.
+     * Blocks the calling worker only if the client stops reading and too much output piles up.
+     */
+    private void send(ByteBuffer frame) throws IOException {
+        synchronized (writeQueue) {
+            if (closed.get()) {
+                throw new IOException("Connection closed");
+            }
+            bytesSent += frame.remaining();
+            bytesSentTotal.add(frame.remaining());
+            if (writeQueue.isEmpty()) {
+                channel.write(frame);
+            }
+            if (!frame.hasRemaining()) {
+                return;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame).flip();
+            writeQueue.add(copy);
+            queuedBytes += copy.remaining();
+            server.runOnSelector(new Runnable() {
+                @Override
+                public void run() {
+                    if (key.isValid()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+            });
+            long deadline = System.currentTimeMillis() + READ_TIMEOUT_MILLIS;
+            while (queuedBytes > MAX_OUTBOUND_BUFFER_BYTES && !closed.get()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    close();
+                    throw new SocketTimeoutException("Client is not reading responses");
+                }
+                try {
+                    writeQueue.wait(remaining);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private void resumeReading() {
+        readPaused = false;
+        server.runOnSelector(new Runnable() {
+            @Override
+            public void run() {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+        });
+    }
+
+    /**
+     * Bytes received by the selector thread, consumed as a stream by the worker.
+     * A worker only blocks here while the rest of a partially received serialized message is in flight,
+     * until PARTIAL_MESSAGE_TIMEOUT_MILLIS after it started reading it, and only if fewer than
+     * PARTIAL_MESSAGE_WORKERS other workers are waiting like that.
+     */
+    private class Inbound extends InputStream {
+        private byte[] buf = new byte[8192];
+        private int head;
+        private int tail;
+        private boolean eof;
+        private long deadline;
+
+        synchronized void append(ByteBuffer src) {
+            int n = src.remaining();
+            if (tail + n > buf.length) {
+                System.arraycopy(buf, head, buf, 0, tail - head);
+                tail -= head;
+                head = 0;
+                if (tail + n > buf.length) {
+                    byte[] grown = new byte[Math.max(buf.length * 2, tail + n)];
+                    System.arraycopy(buf, 0, grown, 0, tail);
+                    buf = grown;
+                }
+            }
+            src.get(buf, tail, n);
+            tail += n;
+            notifyAll();
+        }
+
+        synchronized void endOfStream() {
+            eof = true;
+            notifyAll();
+        }
+
+        synchronized boolean isEndOfStream() {
+            return eof;
+        }
+
+        /** Called by the worker before it reads a message, which has to arrive within the timeout from now */
+        synchronized void startMessage() {
+            deadline = System.currentTimeMillis() + PARTIAL_MESSAGE_TIMEOUT_MILLIS;
+        }
+
+        /** Byte at offset from the read position, without consuming it */
+        synchronized int peek(int offset) throws IOException {
+            while (tail - head <= offset) {
+                if (eof) {
+                    throw new EOFException();
+                }
+                awaitMore();
+            }
+            return buf[head + offset] & 0xff;
+        }
+
+        /**
+         * Big-endian unsigned value of count (at most 4) bytes at offset from the read position, without
+         * consuming or waiting for them; -1 if they have not all arrived yet
+         */
+        synchronized long peekBuffered(int offset, int count) {
+            if (tail - head < offset + count) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value = value << 8 | (buf[head + offset + i] & 0xff);
+            }
+            return value;
+        }
+
+        void readFully(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = read(b, off, len);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public synchronized int available() {
+            return tail - head;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (!awaitData()) {
+                return -1;
+            }
+            int b = buf[head++] & 0xff;
+            consumed();
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!awaitData()) {
+                return -1;
+            }
+            int n = Math.min(len, tail - head);
+            System.arraycopy(buf, head, b, off, n);
+            head += n;
+            consumed();
+            return n;
+        }
+
+        private boolean awaitData() throws IOException {
+            while (head == tail) {
+                if (eof) {
+                    return false;
+                }
+                awaitMore();
+            }
+            return true;
+        }
+
+        private void awaitMore() throws IOException {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Timed out waiting for the rest of a message");
+            }
+            Semaphore waiters = server.getPartialMessageWaiters();
+            if (!waiters.tryAcquire()) {
+                throw new SocketTimeoutException("Too many clients sending partial messages");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } finally {
+                waiters.release();
+            }
+        }
+
+        private void consumed() {
+            if (head == tail) {
+                head = 0;
+                tail = 0;
+            }
+            if (readPaused && tail - head < MAX_INBOUND_BUFFER_BYTES / 2) {
+                resumeReading();
+            }
+        }
+    }
+
+    /**
+     * Collects what the worker writes and hands it to the socket as one frame on flush()
+     */
+    private class Outbound extends OutputStream {
+        private ByteBuffer frame = ByteBuffer.allocate(8192);
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            frame.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            frame.put(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (frame.position() == 0) {
+                return;
+            }
+            frame.flip();
+            try {
+                send(frame);
+            } finally {
+                frame.clear();
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (frame.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(frame.capacity() * 2, frame.position() + bytes));
+                frame.flip();
+                grown.put(frame);
+                frame = grown;
+            }
+        }
+    }
+
+    /**
+     * Writes the answers to one request, tagged with its correlation id.
+     * Answers to different requests may be written from different workers, one message at a time.
+     */
+    private class Reply implements MessageSink {
+        private final MessageStream stream;
+        private final int correlationId;
+
+        Reply(MessageStream stream, int correlationId) {
+            this.stream = stream;
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public void send(Message message) throws IOException {
+            synchronized (sendLock) {
+                message.setCorrelationId(correlationId);
+                stream.send(message);
+            }
+        }
+    }
+
+    /**
+     * One wire format's way of reading and writing whole Messages
+     */
+    private interface MessageStream extends MessageSink {
+        Message read() throws IOException, ClassNotFoundException;
+
+        /** Whether read() would find a whole message, as far as the format tells before decoding it */
+        boolean hasMessage();
+    }
+
+    /**
+     * Legacy format: Java serialization over one ObjectInputStream/ObjectOutputStream pair per connection.
+     * The output stream is reset after every message so that its handle table does not keep
+     * every Employee ever sent reachable, and so that reused message objects are sent afresh.
+     */
+    private class SerializedStream implements MessageStream {
+        private final ObjectInputStream userInput;
+        private final ObjectOutputStream userOutput;
+
+        SerializedStream() throws IOException {
+            userInput = new ObjectInputStream(inbound);
+            userOutput = new ObjectOutputStream(outbound);
+            userOutput.flush();
+        }
+
+        @Override
+        public Message read() throws IOException, ClassNotFoundException {
+            return (Message) userInput.readObject();
+        }
+
+        /** Serialized messages carry no length: any byte may start one */
+        @Override
+        public boolean hasMessage() {
+            return inbound.available() > 0;
+        }
+
+        @Override
+        public void send(Message message) throws IOException {
+            userOutput.writeObject(message);
+            userOutput.reset();
+            userOutput.flush();
+        }
+    }
+
+    /**
+     * Length-prefixed frames encoded by BinaryCodec; frame buffers are reused for the life of the connection
+     */
+    private class BinaryStream implements MessageStream {
+        private final BinaryCodec codec;
+        private final byte[] header = new byte[WireProtocol.FRAME_HEADER_BYTES];
+        private ByteBuffer payload = ByteBuffer.allocate(8192);
+
+        BinaryStream(byte version) {
+            this.codec = new BinaryCodec(version);
+        }
+
+        @Override
+        public Message read() throws IOException {
+            inbound.readFully(header, 0, header.length);
+            int length = BinaryCodec.checkFrameLength(((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16)
+                    | ((header[2] & 0xff) << 8) | (header[3] & 0xff));
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(Math.max(payload.capacity() * 2, length));
+            }
+            inbound.readFully(payload.array(), 0, length);
+            payload.clear();
+            payload.limit(length);
+            return codec.decode(payload);
+        }
+
+        /** A frame with an invalid length counts as complete, so that read() rejects it */
+        @Override
+        public boolean hasMessage() {
+            long length = inbound.peekBuffered(0, WireProtocol.FRAME_HEADER_BYTES);
+            return length >= 0 && (length > WireProtocol.MAX_FRAME_BYTES
+                    || inbound.available() >= WireProtocol.FRAME_HEADER_BYTES + length);
+        }
+
+        @Override
+        public void send(Message message) throws IOException {
+            ClientHandler.this.send(codec.encode(message));
+        }
+    }
+}
@@ -1,75 +1,78 @@
 package com.ankoma88.personnelsystem.server;
 
-import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.cluster.ClusterBus;
+import com.ankoma88.personnelsystem.server.dao.impl.CachingDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.DaoFactoryImpl;
+import com.ankoma88.personnelsystem.server.dao.impl.MappedDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.MeteredDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.NotifyingDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.PooledDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.impl.WriteBehindDaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.feed.ChangeFeed;
+import com.ankoma88.personnelsystem.server.index.OrgChartIndex;
+import com.ankoma88.personnelsystem.server.index.OrgChartSnapshot;
+import com.ankoma88.personnelsystem.server.metrics.PrometheusEndpoint;
+import com.ankoma88.personnelsystem.server.metrics.ServerMetrics;
+import com.ankoma88.personnelsystem.server.service.impl.AsyncProcessorImpl;
+import com.ankoma88.personnelsystem.server.service.impl.MeteredProcessor;
+import com.ankoma88.personnelsystem.server.service.interfaces.AsyncProcessor;
 import com.ankoma88.personnelsystem.server.service.interfaces.Processor;
 import com.ankoma88.personnelsystem.server.service.impl.ProcessorImpl;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_PEERS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_PORT;
+import static com.ankoma88.personnelsystem.util.Settings.IP;
+import static com.ankoma88.personnelsystem.util.Settings.MAPPED_DATA_DIR;
+import static com.ankoma88.personnelsystem.util.Settings.MAPPED_STORAGE;
+import static com.ankoma88.personnelsystem.util.Settings.METRICS_PORT;
+import static com.ankoma88.personnelsystem.util.Settings.ORG_CHART_REFRESH_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.PARTIAL_MESSAGE_WORKERS;
 import static com.ankoma88.personnelsystem.util.Settings.PORT;
+import static com.ankoma88.personnelsystem.util.Settings.SNAPSHOT_FILE;
+import static com.ankoma88.personnelsystem.util.Settings.SNAPSHOT_INTERVAL_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.WORKER_THREADS;
+import static com.ankoma88.personnelsystem.util.Settings.WRITE_BEHIND;
+import static com.ankoma88.personnelsystem.util.Settings.WRITE_BEHIND_LOG_DIR;
 
 public class ServerStarter extends Thread {
 
     private static final Logger log = Logger.getLogger(ServerStarter.class.getName());
-    private static final Processor processor = new ProcessorImpl();
-
-    public static class ClientHandler implements Runnable {
-
-        private final Socket clientSock;
-
-        public ClientHandler(final Socket clientSocket) {
-            this.clientSock = clientSocket;
-        }
-
-        /**
-         * Method that actually works with client requests (via Processor)
-         */
-        @Override
-        public void run() {
-
-            ObjectInputStream userInput = null;
-            ObjectOutputStream userOutput = null;
-
-            try {
-                userInput = new ObjectInputStream(this.clientSock.getInputStream());
-                userOutput = new ObjectOutputStream(this.clientSock.getOutputStream());
-                while (true) {
-                    Message input = (Message) userInput.readObject();
-                    log.info("Received message on server: " + input);
-                    Message output = processor.processMessage(input);
-                    userOutput.writeObject(output);
-                    userOutput.flush();
-                }
-            } catch (IOException ioe) {
-                log.info("IOException...");
-            } catch (ClassNotFoundException e) {
-                log.info("Problem on reading message from client");
-            }
-            try {
-                if (userInput != null) {
-                    userInput.close();
-                }
-                if (userOutput != null) {
-                    userOutput.close();
-                }
-                this.clientSock.close();
-                System.err.println("Lost connection to " + this.clientSock.getRemoteSocketAddress());
-            } catch (IOException ioe2) {
-                ioe2.printStackTrace();
-            }
-        }
-
-    }
-
 
     public static void main(String[] args) {
 
@@ -80,9 +83,12 @@ public class ServerStarter extends Thread {
         }
 
         final ServerStarter server = new ServerStarter(port);
+        server.services.warmStart();
 
         //Starting server
         server.start();
+        server.services.start();
+        server.services.exportMetrics(server);
 
         try {
             // Wait for the server to shutdown
@@ -95,19 +101,76 @@ public class ServerStarter extends Thread {
     }
 
     /**
-     * Pool of threads of undefined size. A new thread will be created
-     * for each concurrent connection, and old threads will be shut down if they stay idle.
+     * Pool of WORKER_THREADS threads that decode messages and hand them to the processor. Connections without
+     * pending input are only registered with the selector and don't occupy a worker.
      */
-    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final ExecutorService workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS,
+            0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "worker-" + count.incrementAndGet());
+        }
+    });
 
     /**
-     * Server socket for accepting incoming client connections.
+     * Selector watching the listen channel and every client connection.
      */
-    private ServerSocket listenSocket;
+    private Selector selector;
+
+    /**
+     * Server channel for accepting incoming client connections.
+     */
+    private ServerSocketChannel listenChannel;
+
+    /**
+     * Work other threads need done on the selector thread, e.g. changing interest ops.
+     */
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    /** Workers allowed to wait for the rest of a partially received message, see ClientHandler */
+    private final Semaphore partialMessageWaiters = new Semaphore(PARTIAL_MESSAGE_WORKERS);
+
+    private final Set<ClientHandler> clients =
+            Collections.newSetFromMap(new ConcurrentHashMap<ClientHandler, Boolean>());
+
+    /** What the server runs on as configured, closed with it; null for a server given its processor */
+    private final Services services;
+    private final AsyncProcessor clientProcessor;
+    private final ChangeFeed feed;
+    private final ServerMetrics metrics;
 
     private volatile boolean keepRunning = true;
 
+    /**
+     * Server backed by the storage configured in Settings, which this sets up
+     */
     public ServerStarter(final int port) {
+        this(port, new Services());
+    }
+
+    private ServerStarter(final int port, Services services) {
+        this(port, services, services.asyncProcessor, services.changeFeed, services.metrics);
+    }
+
+    /**
+     * Server answering with the given processor instead of the one backed by the configured database,
+     * e.g. for benchmarks against an embedded database; none of the configured storage, cache, cluster or
+     * metrics export is set up. Port 0 picks a free port, see getLocalPort().
+     * Subscribers get changes published to feed.
+     */
+    public ServerStarter(final int port, AsyncProcessor processor, ChangeFeed feed) {
+        this(port, null, processor, feed, new ServerMetrics());
+    }
+
+    private ServerStarter(final int port, Services services, AsyncProcessor processor, ChangeFeed feed,
+                          ServerMetrics metrics) {
+        super("selector");
+        this.services = services;
+        this.clientProcessor = processor;
+        this.feed = feed;
+        this.metrics = metrics;
 
         // Capture shutdown requests from virtual machine.
         Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -118,7 +181,11 @@ public class ServerStarter extends Thread {
         });
 
         try {
-            this.listenSocket = new ServerSocket(port);
+            this.selector = Selector.open();
+            this.listenChannel = ServerSocketChannel.open();
+            this.listenChannel.bind(new InetSocketAddress(port));
+            this.listenChannel.configureBlocking(false);
+            this.listenChannel.register(this.selector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
             System.err.println("Exception occurred while creating the listen socket: " + e.getMessage());
             e.printStackTrace();
@@ -127,61 +194,401 @@ public class ServerStarter extends Thread {
     }
 
     /**
-     * This is executed when ServerStarter.start() is invoked by another thread.  Will listen for incoming connections
-     * and hand them over to the ExecutorService (thread pool) for the actual handling of client requests.
+     * This is executed when ServerStarter.start() is invoked by another thread. Accepts incoming connections,
+     * reads and writes client sockets as they become ready and hands received messages over to the workers.
      */
     @Override
     public void run() {
-        // Set a timeout on the accept so we can catch shutdown requests
-        try {
-            this.listenSocket.setSoTimeout(1000);
-        } catch (SocketException e1) {
-            System.err.println("Unable to set acceptor timeout value.  The server may not shutdown gracefully.");
-        }
+        log.info("Accepting incoming connections on port " + this.listenChannel.socket().getLocalPort());
 
-        log.info("Accepting incoming connections on port " + this.listenSocket.getLocalPort());
-
-        // Accept an incoming connection, handle it, then close and repeat.
         while (this.keepRunning) {
             try {
-                // Accept the next incoming connection
-                final Socket clientSocket = this.listenSocket.accept();
-                log.info("Accepted connection from " + clientSocket.getRemoteSocketAddress());
-
-                ClientHandler handler = new ClientHandler(clientSocket);
-                this.workers.execute(handler);
-
-            } catch (SocketTimeoutException te) {
-                // Ignored, timeouts will happen every 1 second
+                this.selector.select();
+                runSelectorTasks();
+                Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            ClientHandler handler = (ClientHandler) key.attachment();
+                            if (key.isReadable()) {
+                                handler.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                handler.onWritable();
+                            }
+                        }
+                    } catch (CancelledKeyException e) {
+                        // Connection was closed by a worker in the meantime
+                    }
+                }
             } catch (IOException ioe) {
                 System.err.println("Exception occurred while handling client request: " + ioe.getMessage());
                 // Yield to other threads if an exceptions occurs
                 Thread.yield();
             }
         }
+
+        for (ClientHandler handler : new ArrayList<>(this.clients)) {
+            handler.close();
+        }
         try {
             // Make sure to release the port, otherwise it may remain bound for several minutes
-            this.listenSocket.close();
+            this.listenChannel.close();
+            this.selector.close();
         } catch (IOException ioe) {
             // Ignored
         }
         log.info("Stopped accepting incoming connections.");
     }
 
+    public int getLocalPort() {
+        return this.listenChannel.socket().getLocalPort();
+    }
+
     /**
-     * Shuts down this server.  Since the main server thread will time out every 1 second,
-     * the shutdown process should complete in at most 1 second from the time this method is invoked.
+     * Run a task on the selector thread as soon as it wakes up.
+     */
+    void runOnSelector(Runnable task) {
+        this.selectorTasks.add(task);
+        this.selector.wakeup();
+    }
+
+    ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    Semaphore getPartialMessageWaiters() {
+        return this.partialMessageWaiters;
+    }
+
+    ChangeFeed getChangeFeed() {
+        return this.feed;
+    }
+
+    void unregister(ClientHandler handler) {
+        this.clients.remove(handler);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = this.listenChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ClientHandler handler = new ClientHandler(this, channel, this.clientProcessor, this.workers);
+            handler.register(this.selector);
+            this.clients.add(handler);
+            log.info("Accepted connection from " + handler.getRemoteAddress());
+        }
+    }
+
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = this.selectorTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (CancelledKeyException e) {
+                // Connection was closed in the meantime
+            }
+        }
+    }
+
+    /**
+     * Shuts down this server. The selector is woken up immediately, so the shutdown does not wait
+     * for any timeout; in-flight messages are interrupted.
      */
     public void shutdown() {
         log.info("Shutting down the server.");
         this.keepRunning = false;
+        this.selector.wakeup();
         this.workers.shutdownNow();
         try {
             this.join();
         } catch (InterruptedException e) {
             // Ignored
         }
+        if (this.services != null) {
+            this.services.close();
+        }
     }
 
+    /**
+     * The server as configured in Settings: storage engine, cache, org chart, change feed, cluster,
+     * snapshots and metrics export. Only main() builds one, so that a server given a processor of its own
+     * starts none of it.
+     */
+    private static final class Services {
+        private final ServerMetrics metrics = new ServerMetrics();
+        private final MappedDaoFactory mappedDaoFactory = MAPPED_STORAGE ? openMapped() : null;
+        /** Connections to the database server; null with the mapped storage engine */
+        private final PooledDaoFactory daoFactory =
+                MAPPED_STORAGE ? null : new PooledDaoFactory(new DaoFactoryImpl());
+        private final DaoFactory storage = MAPPED_STORAGE ? mappedDaoFactory : daoFactory;
+        private final WriteBehindDaoFactory writeBehindDaoFactory =
+                WRITE_BEHIND ? openWriteBehind(new MeteredDaoFactory(storage, metrics)) : null;
+        private final CachingDaoFactory cachingDaoFactory = new CachingDaoFactory(
+                writeBehindDaoFactory != null ? writeBehindDaoFactory : new MeteredDaoFactory(storage, metrics));
+        private final NotifyingDaoFactory notifyingDaoFactory = new NotifyingDaoFactory(cachingDaoFactory);
+        private final OrgChartIndex orgChart = new OrgChartIndex(ORG_CHART_REFRESH_MILLIS);
+        private final ChangeFeed changeFeed = new ChangeFeed();
+        private final ClusterBus cluster = CLUSTER_PEERS.trim().isEmpty() ? null : openCluster();
+        private final Processor processor =
+                new MeteredProcessor(new ProcessorImpl(notifyingDaoFactory, orgChart), metrics);
+        private final AsyncProcessorImpl asyncProcessor = new AsyncProcessorImpl(processor);
+        /**
+         * Where the org chart is saved for a warm start; null when disabled. Not with the mapped storage engine:
+         * it reads employees from memory already, and its row versions are hashes, which cannot tell what changed.
+         */
+        private final Path snapshotFile =
+                SNAPSHOT_FILE.isEmpty() || MAPPED_STORAGE ? null : Paths.get(SNAPSHOT_FILE);
+        private final ScheduledExecutorService snapshotter = snapshotFile == null ? null
+                : Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "org-chart-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        /** Org chart version last saved to snapshotFile */
+        private volatile long savedVersion;
+
+        Services() {
+            notifyingDaoFactory.addListener(orgChart);
+            notifyingDaoFactory.addListener(changeFeed);
+            if (cluster != null) {
+                notifyingDaoFactory.addListener(cluster);
+                cluster.addListener(cachingDaoFactory);
+                cluster.addListener(orgChart);
+                cluster.addListener(changeFeed);
+            }
+        }
+
+        private static MappedDaoFactory openMapped() {
+            try {
+                return new MappedDaoFactory(Paths.get(MAPPED_DATA_DIR));
+            } catch (IOException e) {
+                System.err.println("Cannot open the employee data file in " + MAPPED_DATA_DIR + ": " + e);
+                System.exit(1);
+                return null;
+            }
+        }
+
+        private static WriteBehindDaoFactory openWriteBehind(DaoFactory delegate) {
+            try {
+                return new WriteBehindDaoFactory(delegate, Paths.get(WRITE_BEHIND_LOG_DIR));
+            } catch (IOException e) {
+                System.err.println("Cannot open the write-ahead log in " + WRITE_BEHIND_LOG_DIR + ": " + e);
+                System.exit(1);
+                return null;
+            }
+        }
+
+        /**
+         * Peers share the database: with the mapped storage engine each node would have data of its own, and with
+         * write-behind peers would read rows before the changes they were told about reach them
+         */
+        private ClusterBus openCluster() {
+            if (MAPPED_STORAGE || WRITE_BEHIND) {
+                System.err.println("Cluster mode needs the database storage engine, without write-behind");
+                System.exit(1);
+            }
+            try {
+                return new ClusterBus(new MeteredDaoFactory(storage, metrics), CLUSTER_PORT,
+                        ClusterBus.parsePeers(CLUSTER_PEERS));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Cannot start cluster mode on port " + CLUSTER_PORT + ": " + e);
+                System.exit(1);
+                return null;
+            }
+        }
+
+        /**
+         * Load the org chart from the saved snapshot, caught up with the database, before taking requests.
+         * Failing that it is read from the database with the first query that needs it, as without a snapshot.
+         */
+        void warmStart() {
+            if (snapshotFile == null || !Files.exists(snapshotFile)) {
+                return;
+            }
+            long start = System.nanoTime();
+            try (Connection con = notifyingDaoFactory.getConnection()) {
+                orgChart.load(notifyingDaoFactory.getEmployeeDao(con), OrgChartSnapshot.open(snapshotFile));
+                savedVersion = orgChart.getVersion();
+                log.info("Org chart loaded from " + snapshotFile + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            } catch (IOException | SQLException e) {
+                log.log(Level.WARNING, "Cannot start from " + snapshotFile
+                        + ", the org chart will be read from the database", e);
+            }
+        }
+
+        /**
+         * Save the org chart to snapshotFile if it is loaded and changed since the last save. The database's
+         * lowest active row version is taken first, so that the writes the org chart may not have yet are found.
+         */
+        void saveSnapshot() {
+            if (!orgChart.isLoaded() || orgChart.getVersion() == savedVersion) {
+                return;
+            }
+            long version = orgChart.getVersion();
+            try {
+                long watermark;
+                try (Connection con = notifyingDaoFactory.getConnection()) {
+                    watermark = notifyingDaoFactory.getEmployeeDao(con).getMinActiveRowVersion();
+                }
+                List<Employee> employees = orgChart.getAll();
+                OrgChartSnapshot.save(snapshotFile, watermark, employees);
+                savedVersion = version;
+                log.fine("Saved " + employees.size() + " employees to " + snapshotFile);
+            } catch (IOException | SQLException | RuntimeException e) {
+                log.log(Level.WARNING, "Cannot save the org chart to " + snapshotFile, e);
+            }
+        }
+
+        /**
+         * Expose server metrics through JMX and as Prometheus text on METRICS_PORT. Failing to do so is logged,
+         * the server runs without them.
+         */
+        void exportMetrics(final ServerStarter server) {
+            metrics.addGauge("personnel_client_connections", "Open client connections", new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return server.clients.size();
+                }
+            });
+            if (daoFactory != null) {
+                metrics.addGauge("personnel_pool_active_connections", "Database connections in use",
+                        new LongSupplier() {
+                            @Override
+                            public long getAsLong() {
+                                return daoFactory.getStats().getActive();
+                            }
+                        });
+                metrics.addGauge("personnel_pool_idle_connections", "Open database connections not in use",
+                        new LongSupplier() {
+                            @Override
+                            public long getAsLong() {
+                                return daoFactory.getStats().getIdle();
+                            }
+                        });
+                metrics.addGauge("personnel_pool_waiting_threads", "Threads waiting for a database connection",
+                        new LongSupplier() {
+                            @Override
+                            public long getAsLong() {
+                                return daoFactory.getStats().getWaiting();
+                            }
+                        });
+            }
+            metrics.addGauge("personnel_org_chart_bytes", "Estimated heap taken by the in-memory org chart",
+                    new LongSupplier() {
+                        @Override
+                        public long getAsLong() {
+                            return orgChart.getSnapshotBytes();
+                        }
+                    });
+            metrics.addGauge("personnel_feed_subscribers", "Clients subscribed to changes", new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return changeFeed.getSubscriberCount();
+                }
+            });
+            if (writeBehindDaoFactory != null) {
+                metrics.addGauge("personnel_write_behind_pending", "Logged changes not yet written to the database",
+                        new LongSupplier() {
+                            @Override
+                            public long getAsLong() {
+                                return writeBehindDaoFactory.getPendingCount();
+                            }
+                        });
+            }
+            if (cluster != null) {
+                metrics.addGauge("personnel_cluster_peers_connected", "Cluster peers we are sending changes to",
+                        new LongSupplier() {
+                            @Override
+                            public long getAsLong() {
+                                return cluster.getConnectedPeerCount();
+                            }
+                        });
+            }
+            metrics.addGauge("personnel_io_queue_size", "Requests waiting for an I/O thread", new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return asyncProcessor.getQueueSize();
+                }
+            });
+            metrics.addGauge("personnel_concurrency_limit", "Requests allowed to use the database at once",
+                    new LongSupplier() {
+                        @Override
+                        public long getAsLong() {
+                            return asyncProcessor.getConcurrencyLimit();
+                        }
+                    });
+            metrics.addGauge("personnel_overloaded_requests", "Requests answered OVERLOADED since the start",
+                    new LongSupplier() {
+                        @Override
+                        public long getAsLong() {
+                            return asyncProcessor.getOverloadedCount();
+                        }
+                    });
+            metrics.addGauge("personnel_timed_out_requests", "Requests answered TIMEOUT since the start",
+                    new LongSupplier() {
+                        @Override
+                        public long getAsLong() {
+                            return asyncProcessor.getTimedOutCount();
+                        }
+                    });
+            try {
+                metrics.registerMBeans();
+                new PrometheusEndpoint(metrics, IP, METRICS_PORT).start();
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Metrics export is unavailable", e);
+            }
+        }
+
+        /** Start the cluster links and the periodic snapshots, once the server is accepting */
+        void start() {
+            if (cluster != null) {
+                cluster.start();
+            }
+            if (snapshotter != null) {
+                snapshotter.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        saveSnapshot();
+                    }
+                }, SNAPSHOT_INTERVAL_MILLIS, SNAPSHOT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
 
-}
\ No newline at end of file
+        /** Finish the requests in processing, save the org chart and close the storage */
+        void close() {
+            asyncProcessor.shutdown();
+            if (snapshotter != null) {
+                snapshotter.shutdown();
+                try {
+                    snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                saveSnapshot();
+            }
+            if (cluster != null) {
+                cluster.close();
+            }
+            log.info(cachingDaoFactory.getCache().getStats().toString());
+            if (writeBehindDaoFactory != null) {
+                writeBehindDaoFactory.close();
+            }
+            if (daoFactory != null) {
+                daoFactory.close();
+            }
+            if (mappedDaoFactory != null) {
+                mappedDaoFactory.close();
+            }
+        }
+    }
+}
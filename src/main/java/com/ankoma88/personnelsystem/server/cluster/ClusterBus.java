@@ -0,0 +1,387 @@
+package com.ankoma88.personnelsystem.server.cluster;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.protocol.BinaryCodec;
+import com.ankoma88.personnelsystem.protocol.ProtocolException;
+import com.ankoma88.personnelsystem.protocol.WireProtocol;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeChangeListener;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.protocol.WireProtocol.FRAME_HEADER_BYTES;
+import static com.ankoma88.personnelsystem.util.Settings.BATCH_SIZE;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_CONNECT_TIMEOUT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_HEARTBEAT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_HEARTBEAT_TIMEOUT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_QUEUE_LIMIT;
+
+/**
+ * Keeps the caches of servers sharing one database consistent with each other.
+ *
+ * Registered with the NotifyingDaoFactory that processes requests, it sends every change this node stores
+ * to each peer over a PeerLink. Peers connect to our port the same way; the changes they send are passed to
+ * the listeners added here (the cache, the org chart, the change feed), never sent on.
+ *
+ * Only ids travel: for a changed employee the receiver reads the current row from the database, so changes
+ * to one employee made concurrently on two nodes leave every node with what was committed last, whatever
+ * order their messages arrive in. A RESYNC, or a read that fails, makes the listeners start over.
+ * Links carry heartbeats both ways, so a peer that vanishes without closing its connection is noticed
+ * within CLUSTER_HEARTBEAT_TIMEOUT_MILLIS on either end.
+ */
+public class ClusterBus implements EmployeeChangeListener {
+    private static final Logger log = Logger.getLogger(ClusterBus.class.getName());
+
+    private final DaoFactory storage;
+    private final ServerSocket serverSocket;
+    private final List<PeerLink> links = new ArrayList<>();
+    private final List<Thread> linkThreads = new ArrayList<>();
+    private final List<EmployeeChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Set<Socket> inbound = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private volatile boolean closed;
+
+    /**
+     * @param storage the database the peers share, read directly (not through a cache) for changed employees
+     * @param port    where peers connect to us
+     * @param peers   the other nodes' cluster ports
+     */
+    public ClusterBus(DaoFactory storage, int port, List<InetSocketAddress> peers) throws IOException {
+        this.storage = storage;
+        this.serverSocket = new ServerSocket(port);
+        for (InetSocketAddress peer : peers) {
+            links.add(new PeerLink(peer, CLUSTER_QUEUE_LIMIT));
+        }
+    }
+
+    /**
+     * Parse a comma separated list of host:port
+     */
+    public static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Cluster peer without a port: " + peer);
+            }
+            int port = Integer.parseInt(peer.substring(colon + 1));
+            addresses.add(InetSocketAddress.createUnresolved(peer.substring(0, colon), port));
+        }
+        return addresses;
+    }
+
+    /** Receives the changes made on other nodes */
+    public void addListener(EmployeeChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnectedPeerCount() {
+        int count = 0;
+        for (PeerLink link : links) {
+            if (link.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void start() {
+        for (PeerLink link : links) {
+            Thread thread = new Thread(link, "cluster-link-" + link.getAddress());
+            thread.setDaemon(true);
+            thread.start();
+            linkThreads.add(thread);
+        }
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "cluster-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Thread watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchHeartbeats();
+            }
+        }, "cluster-heartbeat");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        log.info("Cluster listening on port " + getLocalPort() + ", peers " + links.size());
+    }
+
+    /**
+     * Stop accepting peers and send the changes still queued to connected peers, waiting for that a bounded time
+     */
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignored
+        }
+        for (Socket socket : inbound) {
+            closeQuietly(socket);
+        }
+        for (PeerLink link : links) {
+            link.close();
+        }
+        for (int i = 0; i < linkThreads.size(); i++) {
+            try {
+                linkThreads.get(i).join(CLUSTER_CONNECT_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            links.get(i).abort();
+        }
+    }
+
+    @Override
+    public void employeeCreated(Employee employee) {
+        publish(new Message(Command.EMPLOYEE_CHANGED, employee.getId()));
+    }
+
+    @Override
+    public void employeeUpdated(Employee employee) {
+        publish(new Message(Command.EMPLOYEE_CHANGED, employee.getId()));
+    }
+
+    @Override
+    public void employeeDeleted(int id) {
+        publish(new Message(Command.EMPLOYEE_DELETED, id));
+    }
+
+    @Override
+    public void supervisorCancelled(int supervisor) {
+        publish(new Message(Command.SUPERVISOR_CANCELLED, supervisor));
+    }
+
+    @Override
+    public void resync() {
+        for (PeerLink link : links) {
+            link.resync();
+        }
+    }
+
+    private void publish(Message change) {
+        for (PeerLink link : links) {
+            link.offer(change);
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.log(Level.WARNING, "Cluster port stopped accepting peers", e);
+                }
+                return;
+            }
+            inbound.add(socket);
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receive(socket);
+                }
+            }, "cluster-peer-" + socket.getRemoteSocketAddress());
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /** Break the links whose peers stopped echoing heartbeats, so they reconnect */
+    private void watchHeartbeats() {
+        while (!closed) {
+            try {
+                Thread.sleep(CLUSTER_HEARTBEAT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (PeerLink link : links) {
+                link.checkHeartbeat(now);
+            }
+        }
+    }
+
+    /**
+     * Answer the handshake, then apply the peer's changes; those that arrived together are applied together.
+     * Heartbeats are echoed; without one or a change for CLUSTER_HEARTBEAT_TIMEOUT_MILLIS the peer is dropped.
+     */
+    private void receive(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(CLUSTER_CONNECT_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != WireProtocol.MAGIC) {
+                throw new ProtocolException("Not a cluster peer");
+            }
+            byte version = WireProtocol.negotiate(in.readByte());
+            ByteBuffer answer = ByteBuffer.allocate(WireProtocol.HANDSHAKE_BYTES);
+            answer.putInt(WireProtocol.MAGIC).put(version);
+            socket.getOutputStream().write(answer.array());
+            socket.getOutputStream().flush();
+            socket.setSoTimeout(CLUSTER_HEARTBEAT_TIMEOUT_MILLIS);
+            log.info("Cluster peer connected from " + socket.getRemoteSocketAddress());
+
+            BinaryCodec codec = new BinaryCodec(version);
+            ByteBuffer echo = codec.encode(new Message(Command.HEARTBEAT));
+            OutputStream out = socket.getOutputStream();
+            List<Message> changes = new ArrayList<>();
+            while (true) {
+                Message message = read(in, codec);
+                if (message.getCommand() == Command.HEARTBEAT) {
+                    out.write(echo.array(), echo.arrayOffset() + echo.position(), echo.remaining());
+                } else {
+                    changes.add(message);
+                }
+                if (!changes.isEmpty() && (changes.size() >= BATCH_SIZE || in.available() < FRAME_HEADER_BYTES)) {
+                    apply(changes);
+                    changes.clear();
+                }
+            }
+        } catch (EOFException e) {
+            log.info("Cluster peer " + socket.getRemoteSocketAddress() + " disconnected");
+        } catch (IOException e) {
+            if (!closed) {
+                log.log(Level.WARNING, "Cluster peer " + socket.getRemoteSocketAddress() + " failed", e);
+            }
+        } finally {
+            inbound.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static Message read(DataInputStream in, BinaryCodec codec) throws IOException {
+        byte[] payload = new byte[BinaryCodec.checkFrameLength(in.readInt())];
+        in.readFully(payload);
+        return codec.decode(ByteBuffer.wrap(payload));
+    }
+
+    private void apply(List<Message> changes) throws ProtocolException {
+        Connection connection = null;
+        try {
+            EmployeeDao dao = null;
+            for (Message change : changes) {
+                switch (change.getCommand()) {
+                    case EMPLOYEE_CHANGED:
+                        if (dao == null) {
+                            connection = storage.getConnection();
+                            dao = storage.getEmployeeDao(connection);
+                        }
+                        Employee current = dao.read(change.getKey());
+                        if (current != null) {
+                            notifyUpdated(current);
+                        } else {
+                            notifyDeleted(change.getKey());
+                        }
+                        break;
+                    case EMPLOYEE_DELETED:
+                        notifyDeleted(change.getKey());
+                        break;
+                    case SUPERVISOR_CANCELLED:
+                        notifySupervisorCancelled(change.getKey());
+                        break;
+                    case RESYNC:
+                        notifyResync();
+                        break;
+                    default:
+                        throw new ProtocolException("Unexpected command from cluster peer: " + change.getCommand());
+                }
+            }
+        } catch (SQLException | PersistenceException e) {
+            log.log(Level.WARNING, "Could not read changes made by a cluster peer, starting over", e);
+            notifyResync();
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    // Ignored
+                }
+            }
+        }
+    }
+
+    private void notifyUpdated(Employee employee) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeUpdated(employee);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    private void notifyDeleted(int id) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeDeleted(id);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    private void notifySupervisorCancelled(int supervisor) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.supervisorCancelled(supervisor);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    private void notifyResync() {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.resync();
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+}
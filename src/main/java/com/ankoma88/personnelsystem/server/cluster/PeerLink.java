@@ -0,0 +1,239 @@
+package com.ankoma88.personnelsystem.server.cluster;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.protocol.BinaryCodec;
+import com.ankoma88.personnelsystem.protocol.ProtocolException;
+import com.ankoma88.personnelsystem.protocol.WireProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_CONNECT_TIMEOUT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_HEARTBEAT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_HEARTBEAT_TIMEOUT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.CLUSTER_RECONNECT_MILLIS;
+
+/**
+ * Sends this node's changes to one peer, in order, on a thread of its own; publishers never wait for it.
+ *
+ * While the peer is unreachable changes queue up to the limit. When they overflow, or a connection breaks
+ * with changes possibly undelivered, the queue is dropped and the peer gets RESYNC first thing instead.
+ * A HEARTBEAT goes out every CLUSTER_HEARTBEAT_MILLIS; checkHeartbeat() breaks the connection when the peer
+ * stopped echoing them, which a write to a vanished peer would otherwise take TCP's retransmission time to do.
+ */
+class PeerLink implements Runnable {
+    private static final Logger log = Logger.getLogger(PeerLink.class.getName());
+
+    private final InetSocketAddress address;
+    private final int limit;
+
+    /** Guarded by this */
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    private boolean lost;
+    private boolean closing;
+    private Socket socket;
+
+    private volatile boolean connected;
+    /** When the peer last echoed a heartbeat, or the connection was made */
+    private volatile long heardAt;
+
+    PeerLink(InetSocketAddress address, int limit) {
+        this.address = address;
+        this.limit = limit;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    synchronized void offer(Message change) {
+        if (closing || lost) {
+            // A pending RESYNC covers this change
+            return;
+        }
+        if (queue.size() >= limit) {
+            queue.clear();
+            lost = true;
+        } else {
+            queue.add(change);
+        }
+        notifyAll();
+    }
+
+    /** Drop what is queued and send RESYNC instead */
+    synchronized void resync() {
+        queue.clear();
+        lost = true;
+        notifyAll();
+    }
+
+    /** Let the thread send what is queued if connected, then stop it */
+    synchronized void close() {
+        closing = true;
+        notifyAll();
+    }
+
+    /** Break the connection if the peer has not echoed a heartbeat for CLUSTER_HEARTBEAT_TIMEOUT_MILLIS */
+    void checkHeartbeat(long now) {
+        if (connected && now - heardAt > CLUSTER_HEARTBEAT_TIMEOUT_MILLIS) {
+            log.warning("Cluster peer " + address + " stopped answering heartbeats");
+            abort();
+        }
+    }
+
+    /** Stop a thread that did not finish after close() */
+    synchronized void abort() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignored
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (closing) {
+                    return;
+                }
+            }
+            Socket current = new Socket();
+            try {
+                current.setKeepAlive(true);
+                current.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                        CLUSTER_CONNECT_TIMEOUT_MILLIS);
+                synchronized (this) {
+                    socket = current;
+                }
+                if (send(current)) {
+                    return;
+                }
+            } catch (IOException e) {
+                if (connected) {
+                    log.log(Level.WARNING, "Lost the link to cluster peer " + address, e);
+                    resync();
+                } else {
+                    log.fine("Cluster peer " + address + " is unreachable: " + e);
+                }
+            } finally {
+                connected = false;
+                synchronized (this) {
+                    socket = null;
+                }
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // Ignored
+                }
+            }
+            synchronized (this) {
+                if (!closing) {
+                    try {
+                        wait(CLUSTER_RECONNECT_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handshake like a binary client, then send changes until closing. Returns true when it stopped for close().
+     */
+    private boolean send(Socket current) throws IOException {
+        current.setTcpNoDelay(true);
+        current.setSoTimeout(CLUSTER_CONNECT_TIMEOUT_MILLIS);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(current.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream()));
+        out.writeInt(WireProtocol.MAGIC);
+        out.writeByte(WireProtocol.CURRENT_VERSION);
+        out.flush();
+        if (in.readInt() != WireProtocol.MAGIC) {
+            throw new ProtocolException("Cluster peer " + address + " answered with an unknown handshake");
+        }
+        BinaryCodec codec = new BinaryCodec(in.readByte());
+        current.setSoTimeout(0);
+        heardAt = System.currentTimeMillis();
+        connected = true;
+        log.info("Connected to cluster peer " + address);
+
+        long heartbeatAt = heardAt + CLUSTER_HEARTBEAT_MILLIS;
+        while (true) {
+            int echoed = in.available();
+            if (echoed > 0) {
+                // The peer only ever sends back heartbeats
+                in.skip(echoed);
+                heardAt = System.currentTimeMillis();
+            }
+            long now = System.currentTimeMillis();
+            Message next;
+            if (now >= heartbeatAt) {
+                next = new Message(Command.HEARTBEAT);
+                heartbeatAt = now + CLUSTER_HEARTBEAT_MILLIS;
+            } else {
+                next = next(0);
+                if (next == null) {
+                    out.flush();
+                    next = next(heartbeatAt - now);
+                    if (next == null) {
+                        if (isClosing()) {
+                            return true;
+                        }
+                        continue;
+                    }
+                }
+            }
+            ByteBuffer frame = codec.encode(next);
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        }
+    }
+
+    private synchronized boolean isClosing() {
+        return closing;
+    }
+
+    /**
+     * The next change to send, RESYNC if changes were dropped; null when there is none within waitMillis,
+     * or none and closing
+     */
+    private synchronized Message next(long waitMillis) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            if (lost) {
+                lost = false;
+                return new Message(Command.RESYNC);
+            }
+            if (!queue.isEmpty()) {
+                return queue.poll();
+            }
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0 || closing) {
+                return null;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+}
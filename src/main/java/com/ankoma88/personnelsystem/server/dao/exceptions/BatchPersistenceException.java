@@ -0,0 +1,22 @@
+package com.ankoma88.personnelsystem.server.dao.exceptions;
+
+import com.ankoma88.personnelsystem.model.ItemStatus;
+
+import java.util.List;
+
+/**
+ * A batch was rolled back; statuses tell which items caused it
+ */
+public class BatchPersistenceException extends PersistenceException {
+
+    private final List<ItemStatus> statuses;
+
+    public BatchPersistenceException(String message, Throwable cause, List<ItemStatus> statuses) {
+        super(message, cause);
+        this.statuses = statuses;
+    }
+
+    public List<ItemStatus> getStatuses() {
+        return statuses;
+    }
+}
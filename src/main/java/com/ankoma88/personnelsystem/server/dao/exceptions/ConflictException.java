@@ -0,0 +1,21 @@
+package com.ankoma88.personnelsystem.server.dao.exceptions;
+
+import com.ankoma88.personnelsystem.model.Employee;
+
+/**
+ * A conditional update or delete found the employee changed since the row version it was sent with
+ */
+public class ConflictException extends PersistenceException {
+
+    private final Employee current;
+
+    public ConflictException(Employee current) {
+        super("Employee " + current.getId() + " changed since it was read");
+        this.current = current;
+    }
+
+    /** The employee as it is stored now */
+    public Employee getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+/**
+ * Point-in-time snapshot of EmployeeCache counters
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long invalidations;
+    private final int employees;
+    private final int subordinateLists;
+    private final boolean allCached;
+    private final boolean supervisorsCached;
+
+    public CacheStats(long hits, long misses, long evictions, long invalidations, int employees,
+                      int subordinateLists, boolean allCached, boolean supervisorsCached) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.employees = employees;
+        this.subordinateLists = subordinateLists;
+        this.allCached = allCached;
+        this.supervisorsCached = supervisorsCached;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public int getEmployees() {
+        return employees;
+    }
+
+    public int getSubordinateLists() {
+        return subordinateLists;
+    }
+
+    public boolean isAllCached() {
+        return allCached;
+    }
+
+    public boolean isSupervisorsCached() {
+        return supervisorsCached;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Cache: hits=%d, misses=%d, hitRatio=%.2f, evictions=%d, invalidations=%d, " +
+                        "employees=%d, subordinateLists=%d, all=%b, supervisors=%b",
+                hits, misses, getHitRatio(), evictions, invalidations, employees, subordinateLists,
+                allCached, supervisorsCached);
+    }
+}
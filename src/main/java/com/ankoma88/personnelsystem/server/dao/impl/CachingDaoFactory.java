@@ -0,0 +1,122 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeChangeListener;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static com.ankoma88.personnelsystem.util.Settings.*;
+
+/**
+ * DaoFactory decorator whose DAOs answer reads from a shared EmployeeCache.
+ * Connections are opened lazily, on the first JDBC call, so requests served
+ * entirely from the cache never take a connection from the wrapped factory.
+ *
+ * Changes made through the DAOs update the cache themselves; register the factory as an
+ * EmployeeChangeListener only for changes made elsewhere, e.g. by other nodes of a cluster.
+ */
+public class CachingDaoFactory implements DaoFactory, EmployeeChangeListener {
+
+    private final DaoFactory delegate;
+    private final EmployeeCache cache;
+
+    public CachingDaoFactory(DaoFactory delegate) {
+        this(delegate, new EmployeeCache(CACHE_MAX_EMPLOYEES, CACHE_MAX_SUBORDINATE_LISTS, CACHE_TTL_MILLIS));
+    }
+
+    public CachingDaoFactory(DaoFactory delegate, EmployeeCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new LazyConnection());
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return new CachingEmployeeDao(delegate.getEmployeeDao(connection), cache);
+    }
+
+    public EmployeeCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void employeeCreated(Employee employee) {
+        cache.created(employee);
+    }
+
+    @Override
+    public void employeeUpdated(Employee employee) {
+        cache.updated(employee);
+    }
+
+    @Override
+    public void employeeDeleted(int id) {
+        cache.deleted(id);
+    }
+
+    @Override
+    public void supervisorCancelled(int supervisor) {
+        cache.supervisorCancelled(supervisor);
+    }
+
+    @Override
+    public void resync() {
+        cache.clear();
+    }
+
+    /**
+     * Obtains the real connection from the wrapped factory the first time it is needed
+     */
+    private class LazyConnection implements InvocationHandler {
+        private Connection target;
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean noArgs = method.getParameterTypes().length == 0;
+            if ("close".equals(name) && noArgs) {
+                closed = true;
+                if (target != null) {
+                    target.close();
+                }
+                return null;
+            }
+            if ("isClosed".equals(name) && noArgs) {
+                return closed;
+            }
+            if ("equals".equals(name) && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && noArgs) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name) && noArgs) {
+                return "Lazy[" + target + "]";
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            if (target == null) {
+                target = delegate.getConnection();
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
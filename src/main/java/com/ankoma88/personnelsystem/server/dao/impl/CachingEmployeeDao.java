@@ -0,0 +1,213 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Read-through EmployeeDao decorator backed by a shared EmployeeCache.
+ * Writes go to the wrapped DAO first and are then applied to the cache.
+ */
+public class CachingEmployeeDao implements EmployeeDao {
+
+    private final EmployeeDao delegate;
+    private final EmployeeCache cache;
+
+    public CachingEmployeeDao(EmployeeDao delegate, EmployeeCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public Employee create(Employee e) throws PersistenceException {
+        Employee created;
+        try {
+            created = delegate.create(e);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        cache.created(created);
+        return created;
+    }
+
+    @Override
+    public Employee read(int key) throws PersistenceException {
+        Employee employee = cache.get(key);
+        if (employee == null) {
+            long stamp = cache.stamp();
+            employee = delegate.read(key);
+            cache.put(employee, stamp);
+        }
+        return employee;
+    }
+
+    @Override
+    public Employee update(Employee employee) throws PersistenceException {
+        Employee updated;
+        try {
+            updated = delegate.update(employee);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        if (updated != null) {
+            cache.updated(updated);
+        } else {
+            cache.clear();
+        }
+        return updated;
+    }
+
+    @Override
+    public void delete(int key) throws PersistenceException {
+        try {
+            delegate.delete(key);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        cache.deleted(key);
+    }
+
+    @Override
+    public void delete(int key, long rowVersion) throws PersistenceException {
+        try {
+            delegate.delete(key, rowVersion);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        cache.deleted(key);
+    }
+
+    @Override
+    public List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException {
+        List<ItemStatus> statuses;
+        try {
+            statuses = delegate.createAll(employees);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        for (int i = 0; i < employees.size(); i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                cache.created(employees.get(i));
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException {
+        List<ItemStatus> statuses;
+        try {
+            statuses = delegate.updateAll(employees);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        for (int i = 0; i < employees.size(); i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                cache.updated(employees.get(i));
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<ItemStatus> deleteAll(int[] keys) throws PersistenceException {
+        List<ItemStatus> statuses;
+        try {
+            statuses = delegate.deleteAll(keys);
+        } catch (PersistenceException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                cache.deleted(keys[i]);
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<Employee> getAll() throws SQLException {
+        List<Employee> list = cache.getAll();
+        if (list == null) {
+            long stamp = cache.stamp();
+            list = delegate.getAll();
+            cache.putAll(list, stamp);
+        }
+        return list;
+    }
+
+    @Override
+    public List<Employee> getPage(int afterId, int limit) throws SQLException {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public EmployeeCursor openCursor(int fetchSize) throws SQLException {
+        return delegate.openCursor(fetchSize);
+    }
+
+    @Override
+    public List<Employee> getChangedSince(long rowVersion) throws SQLException {
+        return delegate.getChangedSince(rowVersion);
+    }
+
+    @Override
+    public long getMinActiveRowVersion() throws SQLException {
+        return delegate.getMinActiveRowVersion();
+    }
+
+    @Override
+    public int[] getIds() throws SQLException {
+        return delegate.getIds();
+    }
+
+    @Override
+    public List<Employee> getSupervisors() throws SQLException {
+        List<Employee> list = cache.getSupervisors();
+        if (list == null) {
+            long stamp = cache.stamp();
+            list = delegate.getSupervisors();
+            cache.putSupervisors(list, stamp);
+        }
+        return list;
+    }
+
+    @Override
+    public List<Employee> getSubordinates(int key) throws SQLException {
+        List<Employee> list = cache.getSubordinates(key);
+        if (list == null) {
+            long stamp = cache.stamp();
+            list = delegate.getSubordinates(key);
+            cache.putSubordinates(key, list, stamp);
+        }
+        return list;
+    }
+
+    @Override
+    public List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
+        List<Employee> cancelled;
+        try {
+            cancelled = delegate.updateCancelSupervisorOfFormerSubordinates(key);
+        } catch (SQLException | RuntimeException ex) {
+            cache.clear();
+            throw ex;
+        }
+        cache.supervisorCancelled(key);
+        for (Employee employee : cancelled) {
+            cache.updated(employee);
+        }
+        return cancelled;
+    }
+}
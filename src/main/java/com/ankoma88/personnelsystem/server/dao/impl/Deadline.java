@@ -0,0 +1,125 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a request has left, and the statements it runs so that they can be stopped.
+ *
+ * The thread working on a request attaches its deadline; EmployeeDaoImpl then gives every statement the time
+ * left as its query timeout, rounded up to the whole seconds JDBC counts in, so the driver cancels it once the
+ * deadline has passed. cancel() stops those statements early, e.g. when the client has gone away.
+ * Threads without a deadline, such as background flushes, run statements without a timeout; suspend() takes
+ * a request's thread there for the duration of work shared with other requests.
+ */
+public class Deadline {
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final long expiresAt;
+    /** Guarded by this. Statements this request prepared, kept until detach() */
+    private final List<Statement> statements = new ArrayList<>();
+    private boolean cancelled;
+
+    public Deadline(long timeoutMillis) {
+        this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /** The deadline of the request the current thread works on, null for none */
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /** Make this the current thread's deadline until detach() */
+    public void attach() {
+        current.set(this);
+    }
+
+    public void detach() {
+        current.remove();
+        synchronized (this) {
+            statements.clear();
+        }
+    }
+
+    /**
+     * Let the current thread run statements without its deadline, for work other requests share and
+     * should not see cut short or cancelled with this one; resume() with what this returns afterwards
+     */
+    public static Deadline suspend() {
+        Deadline deadline = current.get();
+        current.remove();
+        return deadline;
+    }
+
+    /** Make a deadline suspend() returned the current thread's again */
+    public static void resume(Deadline deadline) {
+        if (deadline != null) {
+            current.set(deadline);
+        }
+    }
+
+    public long getRemainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop the request: statements it is running are cancelled, and those it prepares later fail
+     */
+    public void cancel() {
+        List<Statement> running;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            running = new ArrayList<>(statements);
+        }
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // Closed in the meantime
+            }
+        }
+    }
+
+    /**
+     * Give a freshly prepared statement the current deadline's time left as query timeout, and let cancel()
+     * reach it. Closes it and throws SQLTimeoutException if the deadline has passed or was cancelled.
+     */
+    static <S extends Statement> S apply(S statement) throws SQLException {
+        Deadline deadline = current.get();
+        if (deadline == null) {
+            return statement;
+        }
+        long remaining = deadline.expiresAt - System.nanoTime();
+        synchronized (deadline) {
+            if (!deadline.cancelled && remaining > 0) {
+                deadline.statements.add(statement);
+            } else {
+                statement.close();
+                throw new SQLTimeoutException(deadline.cancelled ? "Request cancelled" : "Request deadline passed");
+            }
+        }
+        long seconds = (remaining + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        try {
+            statement.setQueryTimeout((int) Math.min(seconds, Integer.MAX_VALUE));
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,309 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded cache of employees and of the lists the DAO derives from them:
+ * all employees, supervisors and subordinates of each supervisor.
+ *
+ * Entries expire after the TTL and the least recently used ones are evicted beyond the size limits.
+ * Mutations patch the cached views where the effect is known and drop them otherwise.
+ * Loads are stamped with the mutation generation they started in, so a load racing with
+ * a mutation never stores data the mutation already superseded.
+ * Cached Employee objects are never modified; patched entries are replaced by copies.
+ */
+public class EmployeeCache {
+
+    private final int maxEmployees;
+    private final int maxSubordinateLists;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<Integer, Cached<Employee>> byId;
+    private final LinkedHashMap<Integer, Cached<LinkedHashMap<Integer, Employee>>> subordinates;
+    private Cached<LinkedHashMap<Integer, Employee>> all;
+    private Cached<LinkedHashMap<Integer, Employee>> supervisors;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public EmployeeCache(int maxEmployees, int maxSubordinateLists, long ttlMillis) {
+        this.maxEmployees = maxEmployees;
+        this.maxSubordinateLists = maxSubordinateLists;
+        this.ttlMillis = ttlMillis;
+        this.byId = new LinkedHashMap<Integer, Cached<Employee>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Cached<Employee>> eldest) {
+                return evict(size() > EmployeeCache.this.maxEmployees);
+            }
+        };
+        this.subordinates = new LinkedHashMap<Integer, Cached<LinkedHashMap<Integer, Employee>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Cached<LinkedHashMap<Integer, Employee>>> eldest) {
+                return evict(size() > EmployeeCache.this.maxSubordinateLists);
+            }
+        };
+    }
+
+    /**
+     * Current mutation generation, to be passed to the put methods by whoever loads data after calling this
+     */
+    public synchronized long stamp() {
+        return generation;
+    }
+
+    public synchronized Employee get(int id) {
+        Cached<Employee> entry = byId.get(id);
+        if (isLive(entry)) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+        if (entry != null) {
+            byId.remove(id);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public synchronized List<Employee> getAll() {
+        if (!isLive(all)) {
+            all = null;
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<>(all.value.values());
+    }
+
+    public synchronized List<Employee> getSupervisors() {
+        if (!isLive(supervisors)) {
+            supervisors = null;
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<>(supervisors.value.values());
+    }
+
+    public synchronized List<Employee> getSubordinates(int supervisor) {
+        Cached<LinkedHashMap<Integer, Employee>> entry = subordinates.get(supervisor);
+        if (!isLive(entry)) {
+            if (entry != null) {
+                subordinates.remove(supervisor);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<>(entry.value.values());
+    }
+
+    public synchronized void put(Employee employee, long stamp) {
+        if (stamp == generation && employee != null && employee.getId() != null) {
+            cache(employee);
+        }
+    }
+
+    public synchronized void putAll(List<Employee> list, long stamp) {
+        if (stamp == generation && list != null && list.size() <= maxEmployees) {
+            all = new Cached<>(index(list));
+        }
+    }
+
+    public synchronized void putSupervisors(List<Employee> list, long stamp) {
+        if (stamp == generation && list != null && list.size() <= maxEmployees) {
+            supervisors = new Cached<>(index(list));
+        }
+    }
+
+    public synchronized void putSubordinates(int supervisor, List<Employee> list, long stamp) {
+        if (stamp == generation && list != null && list.size() <= maxEmployees) {
+            subordinates.put(supervisor, new Cached<>(index(list)));
+        }
+    }
+
+    /**
+     * A new employee was stored
+     */
+    public synchronized void created(Employee employee) {
+        generation++;
+        cache(employee);
+        if (all != null) {
+            all.value.put(employee.getId(), employee);
+        }
+        int supervisor = supervisorOf(employee);
+        Cached<LinkedHashMap<Integer, Employee>> list = subordinates.get(supervisor);
+        if (list != null) {
+            list.value.put(employee.getId(), employee);
+        }
+        if (supervisors != null) {
+            if (supervisor == 0) {
+                supervisors.value.put(employee.getId(), employee);
+            } else if (!supervisors.value.containsKey(supervisor)) {
+                // Someone just became a supervisor, we may not know them
+                invalidateSupervisors();
+            }
+        }
+    }
+
+    /**
+     * An employee was overwritten; the argument is the stored state
+     */
+    public synchronized void updated(Employee employee) {
+        generation++;
+        int id = employee.getId();
+        Cached<Employee> previous = byId.get(id);
+        cache(employee);
+        if (all != null) {
+            all.value.put(id, employee);
+        }
+
+        int newSupervisor = supervisorOf(employee);
+        if (previous != null && supervisorOf(previous.value) == newSupervisor) {
+            Cached<LinkedHashMap<Integer, Employee>> list = subordinates.get(newSupervisor);
+            if (list != null && list.value.containsKey(id)) {
+                list.value.put(id, employee);
+            }
+            if (supervisors != null && supervisors.value.containsKey(id)) {
+                supervisors.value.put(id, employee);
+            }
+            return;
+        }
+
+        // Moved to another supervisor (or we don't know where from): fix lists, supervisor set changes
+        for (Cached<LinkedHashMap<Integer, Employee>> list : subordinates.values()) {
+            list.value.remove(id);
+        }
+        Cached<LinkedHashMap<Integer, Employee>> list = subordinates.get(newSupervisor);
+        if (list != null) {
+            list.value.put(id, employee);
+        }
+        invalidateSupervisors();
+    }
+
+    /**
+     * An employee was deleted
+     */
+    public synchronized void deleted(int id) {
+        generation++;
+        byId.remove(id);
+        if (all != null) {
+            all.value.remove(id);
+        }
+        for (Cached<LinkedHashMap<Integer, Employee>> list : subordinates.values()) {
+            list.value.remove(id);
+        }
+        // Their supervisor may have no subordinates left
+        invalidateSupervisors();
+    }
+
+    /**
+     * Everyone reporting to supervisor now has no supervisor (0)
+     */
+    public synchronized void supervisorCancelled(int supervisor) {
+        generation++;
+        for (Cached<Employee> entry : byId.values()) {
+            if (supervisorOf(entry.value) == supervisor) {
+                entry.value = withoutSupervisor(entry.value);
+            }
+        }
+        if (all != null) {
+            for (Map.Entry<Integer, Employee> entry : all.value.entrySet()) {
+                if (supervisorOf(entry.getValue()) == supervisor) {
+                    entry.setValue(withoutSupervisor(entry.getValue()));
+                }
+            }
+        }
+
+        Cached<LinkedHashMap<Integer, Employee>> former = subordinates.remove(supervisor);
+        Cached<LinkedHashMap<Integer, Employee>> topLevel = subordinates.get(0);
+        if (topLevel != null) {
+            if (former != null) {
+                for (Employee e : former.value.values()) {
+                    topLevel.value.put(e.getId(), withoutSupervisor(e));
+                }
+            } else {
+                subordinates.remove(0);
+                invalidations.incrementAndGet();
+            }
+        }
+        invalidateSupervisors();
+    }
+
+    /**
+     * Forget everything, e.g. after a failed mutation left the database in an unknown state
+     */
+    public synchronized void clear() {
+        generation++;
+        byId.clear();
+        subordinates.clear();
+        all = null;
+        supervisors = null;
+        invalidations.incrementAndGet();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), invalidations.get(), byId.size(),
+                subordinates.size(), all != null, supervisors != null);
+    }
+
+    private void cache(Employee employee) {
+        byId.put(employee.getId(), new Cached<>(employee));
+    }
+
+    private void invalidateSupervisors() {
+        if (supervisors != null) {
+            supervisors = null;
+            invalidations.incrementAndGet();
+        }
+    }
+
+    private boolean isLive(Cached<?> entry) {
+        return entry != null && System.currentTimeMillis() - entry.loadedAt <= ttlMillis;
+    }
+
+    private boolean evict(boolean overLimit) {
+        if (overLimit) {
+            evictions.incrementAndGet();
+        }
+        return overLimit;
+    }
+
+    private LinkedHashMap<Integer, Employee> index(Collection<Employee> list) {
+        LinkedHashMap<Integer, Employee> map = new LinkedHashMap<>(list.size() * 4 / 3 + 1);
+        for (Employee e : list) {
+            map.put(e.getId(), e);
+        }
+        return map;
+    }
+
+    private static int supervisorOf(Employee employee) {
+        return employee.getSupervisor() == null ? 0 : employee.getSupervisor();
+    }
+
+    private static Employee withoutSupervisor(Employee employee) {
+        Employee copy = new Employee(employee.getFullName(), employee.getDepartment(), 0, employee.getComment());
+        copy.setId(employee.getId());
+        // Outdated until updated() follows with the row version the database gave it
+        copy.setRowVersion(employee.getRowVersion());
+        return copy;
+    }
+
+    private static class Cached<T> {
+        private T value;
+        private final long loadedAt = System.currentTimeMillis();
+
+        Cached(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -1,18 +1,38 @@
 package com.ankoma88.personnelsystem.server.dao.impl;
 
 import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.BatchPersistenceException;
+import com.ankoma88.personnelsystem.server.dao.exceptions.ConflictException;
 import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
 import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+import com.ankoma88.personnelsystem.util.IntList;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.LinkedList;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import static com.ankoma88.personnelsystem.util.Settings.BATCH_SIZE;
+import static com.ankoma88.personnelsystem.util.Settings.MAX_PAGE_SIZE;
+
+/**
+ * EmployeeDao on the dbo.Employees table. Optimistic concurrency relies on a rowversion column:
+ * ALTER TABLE dbo.Employees ADD row_version rowversion;
+ * getChangedSince() scans the table unless the column is indexed as well:
+ * CREATE INDEX IX_Employees_row_version ON dbo.Employees (row_version);
+ * Statements get the time left to the current request's Deadline as their query timeout.
+ */
 public class EmployeeDaoImpl implements EmployeeDao {
     private static final Logger log = Logger.getLogger(EmployeeDaoImpl.class.getName());
 
@@ -24,33 +44,88 @@ public class EmployeeDaoImpl implements EmployeeDao {
 
 
 
+    /*
+     * Statement text is constant so that pooled connections find their cached prepared statements
+     */
+    private static final String READ_SQL = "SELECT * FROM dbo.Employees WHERE id = ?;";
+    private static final String SELECT_SQL = "SELECT * FROM dbo.Employees ";
+    private static final String PAGE_SQL = "SELECT TOP (?) * FROM dbo.Employees WHERE id > ? ORDER BY id;";
+    private static final String CURSOR_SQL = "SELECT * FROM dbo.Employees ORDER BY id;";
+    private static final String CHANGED_SINCE_SQL = "SELECT * FROM dbo.Employees WHERE row_version > ? ORDER BY id;";
+    private static final String MIN_ACTIVE_ROW_VERSION_SQL = "SELECT MIN_ACTIVE_ROWVERSION();";
+    private static final String IDS_SQL = "SELECT id FROM dbo.Employees ORDER BY id;";
+    private static final String SUPERVISORS_SQL = SELECT_SQL +
+            "WHERE id IN (SELECT DISTINCT supervisor FROM dbo.Employees) OR supervisor = 0";
+    private static final String SUBORDINATES_SQL = SELECT_SQL + "WHERE supervisor = ?;";
+    private static final String CREATE_SQL = "INSERT INTO dbo.Employees (full_name, department, supervisor, comment) \n" +
+            "VALUES (?, ?, ?, ?);";
+    private static final String CREATE_RETURNING_SQL = "INSERT INTO dbo.Employees (full_name, department, supervisor, comment) \n" +
+            "OUTPUT INSERTED.id, INSERTED.row_version \n" +
+            "VALUES (?, ?, ?, ?);";
+    private static final String UPDATE_SQL = "UPDATE dbo.Employees \n" +
+            "SET full_name = ?, department  = ?, supervisor = ?, comment = ? \n" +
+            "WHERE id = ? AND (? IS NULL OR row_version = ?);";
+    private static final String CANCEL_SUPERVISOR_SQL = "UPDATE dbo.Employees \n" +
+            "SET supervisor = 0 \n" +
+            "OUTPUT INSERTED.* \n" +
+            "WHERE supervisor = ?;";
+    private static final String ROW_VERSIONS_SQL = "SELECT id, row_version FROM dbo.Employees WHERE id IN ";
+    private static final String DELETE_SQL = "DELETE FROM dbo.Employees WHERE id= ? AND (? IS NULL OR row_version = ?);";
+
     public String getReadQuery() {
-        return "SELECT * FROM dbo.Employees WHERE id = ?;";
+        return READ_SQL;
     }
 
     public String getSelectQuery() {
-        return "SELECT * FROM dbo.Employees ";
+        return SELECT_SQL;
+    }
+
+    public String getPageQuery() {
+        return PAGE_SQL;
+    }
+
+    public String getCursorQuery() {
+        return CURSOR_SQL;
+    }
+
+    public String getChangedSinceQuery() {
+        return CHANGED_SINCE_SQL;
+    }
+
+    public String getMinActiveRowVersionQuery() {
+        return MIN_ACTIVE_ROW_VERSION_SQL;
+    }
+
+    public String getIdsQuery() {
+        return IDS_SQL;
+    }
+
+    public String getSupervisorsQuery() {
+        return SUPERVISORS_SQL;
+    }
+
+    public String getSubordinatesQuery() {
+        return SUBORDINATES_SQL;
     }
 
     public String getCreateQuery() {
-        return "INSERT INTO dbo.Employees (full_name, department, supervisor, comment) \n" +
-                "VALUES (?, ?, ?, ?);";
+        return CREATE_SQL;
+    }
+
+    public String getCreateReturningQuery() {
+        return CREATE_RETURNING_SQL;
     }
 
     public String getUpdateQuery() {
-        return "UPDATE dbo.Employees \n" +
-                "SET full_name = ?, department  = ?, supervisor = ?, comment = ? \n" +
-                "WHERE id = ?;";
+        return UPDATE_SQL;
     }
 
     public String getCancelSupervisorUpdateQuery() {
-        return "UPDATE dbo.Employees \n" +
-                "SET supervisor = 0 \n" +
-                "WHERE supervisor = ?;";
+        return CANCEL_SUPERVISOR_SQL;
     }
 
     public String getDeleteQuery() {
-        return "DELETE FROM dbo.Employees WHERE id= ?;";
+        return DELETE_SQL;
     }
 
     @Override
@@ -58,19 +133,18 @@ public class EmployeeDaoImpl implements EmployeeDao {
         if (employee.getId() != null) {
             throw new PersistenceException("Such record already exists");
         }
-        String sql = getCreateQuery();
-        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        // The row version is generated as well; without it the first update could not be conditional
+        String sql = getCreateReturningQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             prepareStatementForInsert(statement, employee);
-            int count = statement.executeUpdate();
-            if (count != 1) {
-                throw new PersistenceException("More than 1 record modified on persist: " + count);
-            }
-
-            try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    employee.setId(generatedKeys.getInt(1));
-                } else {
-                    throw new PersistenceException("Creating employee failed. More than 1 id obtained");
+            try (ResultSet inserted = statement.executeQuery()) {
+                if (!inserted.next()) {
+                    throw new PersistenceException("Creating employee failed. No id obtained");
+                }
+                employee.setId(inserted.getInt(1));
+                employee.setRowVersion(toRowVersion(inserted.getBytes(2)));
+                if (inserted.next()) {
+                    throw new PersistenceException("More than 1 record modified on persist");
                 }
             }
         } catch (Exception e) {
@@ -84,7 +158,7 @@ public class EmployeeDaoImpl implements EmployeeDao {
     public Employee read(int key) throws PersistenceException {
         List<Employee> list;
         String sql = getReadQuery();
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             statement.setInt(1, key);
             ResultSet rs = statement.executeQuery();
             list = parseResultSet(rs);
@@ -104,105 +178,440 @@ public class EmployeeDaoImpl implements EmployeeDao {
     @Override
     public Employee update(Employee employee) throws PersistenceException {
         String sql = getUpdateQuery();
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        int count;
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             prepareStatementForUpdate(statement, employee);
-
-            int count = statement.executeUpdate();
-            if (count != 1) {
-                throw new PersistenceException("More than one record modified on update: " + count);
-            }
+            count = statement.executeUpdate();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
+        if (count == 0) {
+            checkConflict(employee.getId(), employee.getRowVersion());
+        }
+        if (count != 1) {
+            throw new PersistenceException("More than one record modified on update: " + count);
+        }
 
         return read(employee.getId());
     }
 
     @Override
     public void delete(int key) throws PersistenceException {
+        delete(key, 0);
+    }
+
+    @Override
+    public void delete(int key, long rowVersion) throws PersistenceException {
         String sql = getDeleteQuery();
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        int count;
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             statement.setInt(1, key);
-            int count = statement.executeUpdate();
-            if (count != 1) {
-                throw new PersistenceException("More than one record modified on delete: " + count);
-            }
+            setRowVersion(statement, 2, rowVersion);
+            count = statement.executeUpdate();
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
+        if (count == 0) {
+            checkConflict(key, rowVersion);
+        }
+        if (count != 1) {
+            throw new PersistenceException("More than one record modified on delete: " + count);
+        }
+    }
+
+    /** A conditional statement changed nothing: throw a ConflictException if that is because the row changed */
+    private void checkConflict(int key, long rowVersion) throws PersistenceException {
+        if (rowVersion != 0) {
+            Employee current = read(key);
+            if (current != null) {
+                throw new ConflictException(current);
+            }
+        }
     }
 
     @Override
-    public List<Employee> getAll()  {
-        List<Employee> list = null;
+    public List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException {
+        for (Employee employee : employees) {
+            if (employee.getId() != null) {
+                throw new PersistenceException("Such record already exists: " + employee.getId());
+            }
+        }
+        List<ItemStatus> statuses = new ArrayList<>(employees.size());
+        beginTransaction();
+        try {
+            try {
+                insertBatched(employees, statuses);
+            } catch (GeneratedKeysUnavailableException e) {
+                // Driver can't report keys for batches: redo row by row, still in one transaction
+                connection.rollback();
+                statuses.clear();
+                insertOneByOne(employees, statuses);
+            }
+            readRowVersions(employees, statuses);
+            connection.commit();
+        } catch (SQLException e) {
+            throw rollback("Batch create failed", e, statuses, employees.size());
+        } finally {
+            endTransaction();
+        }
+        log.info("Batch created " + employees.size() + " employees");
+        return statuses;
+    }
+
+    @Override
+    public List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException {
+        List<ItemStatus> statuses = new ArrayList<>(employees.size());
+        beginTransaction();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(getUpdateQuery()))) {
+            for (int from = 0; from < employees.size(); from += BATCH_SIZE) {
+                for (Employee employee : employees.subList(from, Math.min(from + BATCH_SIZE, employees.size()))) {
+                    prepareStatementForUpdate(statement, employee);
+                    statement.addBatch();
+                }
+                addStatuses(statuses, statement.executeBatch());
+            }
+            for (int i = 0; i < employees.size(); i++) {
+                Employee employee = employees.get(i);
+                if (statuses.get(i) == ItemStatus.NOT_FOUND && employee.getRowVersion() != 0
+                        && read(employee.getId()) != null) {
+                    statuses.set(i, ItemStatus.CONFLICT);
+                }
+            }
+            readRowVersions(employees, statuses);
+            connection.commit();
+        } catch (SQLException e) {
+            throw rollback("Batch update failed", e, statuses, employees.size());
+        } finally {
+            endTransaction();
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<ItemStatus> deleteAll(int[] keys) throws PersistenceException {
+        List<ItemStatus> statuses = new ArrayList<>(keys.length);
+        beginTransaction();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(getDeleteQuery()))) {
+            for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+                for (int i = from; i < Math.min(from + BATCH_SIZE, keys.length); i++) {
+                    statement.setInt(1, keys[i]);
+                    setRowVersion(statement, 2, 0);
+                    statement.addBatch();
+                }
+                addStatuses(statuses, statement.executeBatch());
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw rollback("Batch delete failed", e, statuses, keys.length);
+        } finally {
+            endTransaction();
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<Employee> getAll() throws SQLException {
         String sql = getSelectQuery();
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             ResultSet rs = statement.executeQuery();
-            list = parseResultSet(rs);
+            return parseResultSet(rs);
+        }
+    }
+
+    @Override
+    public List<Employee> getPage(int afterId, int limit) throws SQLException {
+        String sql = getPageQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
+            statement.setInt(1, limit);
+            statement.setInt(2, afterId);
+            statement.setFetchSize(limit);
+            try (ResultSet rs = statement.executeQuery()) {
+                return parseResultSet(rs);
+            }
+        }
+    }
+
+    /**
+     * Keeps only the current row in memory; with the SQL Server driver's default adaptive
+     * response buffering the rest of the result stays on the wire until it is read.
+     */
+    @Override
+    public EmployeeCursor openCursor(int fetchSize) throws SQLException {
+        final PreparedStatement statement = Deadline.apply(connection.prepareStatement(getCursorQuery(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY));
+        final ResultSet rs;
+        try {
+            statement.setFetchSize(fetchSize);
+            rs = statement.executeQuery();
         } catch (SQLException e) {
-            e.printStackTrace();
+            statement.close();
+            throw e;
+        }
+        return new EmployeeCursor() {
+            @Override
+            public Employee next() throws SQLException {
+                return rs.next() ? parseRow(rs) : null;
+            }
+
+            @Override
+            public void close() throws SQLException {
+                try {
+                    rs.close();
+                } finally {
+                    statement.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * rowversion grows with every insert and update in the database, so this finds every row written after
+     * the one that had the given version; deleted rows are not found
+     */
+    @Override
+    public List<Employee> getChangedSince(long rowVersion) throws SQLException {
+        String sql = getChangedSinceQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
+            statement.setBytes(1, toBytes(rowVersion));
+            try (ResultSet rs = statement.executeQuery()) {
+                return parseResultSet(rs);
+            }
+        }
+    }
+
+    @Override
+    public long getMinActiveRowVersion() throws SQLException {
+        String sql = getMinActiveRowVersionQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql));
+             ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return toRowVersion(rs.getBytes(1));
+        }
+    }
+
+    @Override
+    public int[] getIds() throws SQLException {
+        String sql = getIdsQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
+            statement.setFetchSize(MAX_PAGE_SIZE);
+            try (ResultSet rs = statement.executeQuery()) {
+                IntList ids = new IntList();
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+                return ids.toArray();
+            }
         }
-        return list;
     }
 
     @Override
     public List<Employee> getSupervisors() throws SQLException {
-        List<Employee> list = null;
-        String sql = getSelectQuery() + "WHERE id IN (SELECT DISTINCT supervisor FROM dbo.Employees) OR supervisor = 0";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        String sql = getSupervisorsQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             ResultSet rs = statement.executeQuery();
-            list = parseResultSet(rs);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return parseResultSet(rs);
         }
-        return list;
     }
 
     @Override
     public List<Employee> getSubordinates(int key) throws SQLException {
-        List<Employee> list = null;
-        String sql = getSelectQuery() + "WHERE supervisor = ?;";
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        String sql = getSubordinatesQuery();
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             statement.setInt(1, key);
             ResultSet rs = statement.executeQuery();
-            list = parseResultSet(rs);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return parseResultSet(rs);
         }
-        return list;
     }
 
     @Override
-    public void updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
+    public List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
         String sql = getCancelSupervisorUpdateQuery();
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql))) {
             statement.setInt(1, key);
-            statement.executeQuery();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            try (ResultSet rs = statement.executeQuery()) {
+                return parseResultSet(rs);
+            }
         }
     }
 
-    protected List<Employee> parseResultSet(ResultSet rs) {
-        LinkedList<Employee> result = new LinkedList<>();
-        try {
-            while (rs.next()) {
-                Employee employee = new Employee();
-                employee.setFullName(rs.getString("full_name"));
-                employee.setDepartment(rs.getString("department"));
-                employee.setSupervisor(rs.getInt("supervisor"));
-                employee.setComment(rs.getString("comment"));
+    /**
+     * Set the row versions the database gave the employees written with status OK. Runs in the writing
+     * transaction, so nobody else can have written them since.
+     */
+    private void readRowVersions(List<Employee> employees, List<ItemStatus> statuses) throws SQLException {
+        List<Employee> written = new ArrayList<>(employees.size());
+        for (int i = 0; i < employees.size(); i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                written.add(employees.get(i));
+            }
+        }
+        for (int from = 0; from < written.size(); from += BATCH_SIZE) {
+            List<Employee> chunk = written.subList(from, Math.min(from + BATCH_SIZE, written.size()));
+            // Padded to a power of two with the last id, so that few distinct statements get prepared
+            int parameters = Math.min(Integer.highestOneBit(chunk.size() * 2 - 1), BATCH_SIZE);
+            StringBuilder sql = new StringBuilder(ROW_VERSIONS_SQL).append('(');
+            for (int i = 0; i < parameters; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(");");
+            Map<Integer, Long> rowVersions = new HashMap<>();
+            try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(sql.toString()))) {
+                for (int i = 0; i < parameters; i++) {
+                    statement.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)).getId());
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        rowVersions.put(rs.getInt(1), toRowVersion(rs.getBytes(2)));
+                    }
+                }
+            }
+            for (Employee employee : chunk) {
+                Long rowVersion = rowVersions.get(employee.getId());
+                employee.setRowVersion(rowVersion == null ? 0 : rowVersion);
+            }
+        }
+    }
 
-                employee.setId(rs.getInt("id"));
+    private void insertBatched(List<Employee> employees, List<ItemStatus> statuses) throws SQLException, PersistenceException {
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(getCreateQuery(),
+                Statement.RETURN_GENERATED_KEYS))) {
+            for (int from = 0; from < employees.size(); from += BATCH_SIZE) {
+                List<Employee> chunk = employees.subList(from, Math.min(from + BATCH_SIZE, employees.size()));
+                for (Employee employee : chunk) {
+                    prepareStatementForInsert(statement, employee);
+                    statement.addBatch();
+                }
+                addStatuses(statuses, statement.executeBatch());
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    int i = 0;
+                    while (generatedKeys.next() && i < chunk.size()) {
+                        chunk.get(i++).setId(generatedKeys.getInt(1));
+                    }
+                    if (i != chunk.size()) {
+                        throw new GeneratedKeysUnavailableException();
+                    }
+                }
+            }
+        }
+    }
 
-                result.add(employee);
+    private void insertOneByOne(List<Employee> employees, List<ItemStatus> statuses) throws SQLException, PersistenceException {
+        try (PreparedStatement statement = Deadline.apply(connection.prepareStatement(getCreateQuery(),
+                Statement.RETURN_GENERATED_KEYS))) {
+            for (Employee employee : employees) {
+                prepareStatementForInsert(statement, employee);
+                statement.executeUpdate();
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("No id generated for " + employee);
+                    }
+                    employee.setId(generatedKeys.getInt(1));
+                }
+                statuses.add(ItemStatus.OK);
             }
+        }
+    }
+
+    private void beginTransaction() throws PersistenceException {
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    private void endTransaction() {
+        try {
+            connection.setAutoCommit(true);
         } catch (SQLException e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Roll the batch back and describe which item broke it: items before it were fine,
+     * items after it never ran
+     */
+    private PersistenceException rollback(String message, SQLException cause, List<ItemStatus> statuses, int size) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+        if (cause instanceof BatchUpdateException) {
+            int[] counts = ((BatchUpdateException) cause).getUpdateCounts();
+            for (int i = 0; counts != null && i < counts.length && statuses.size() < size; i++) {
+                statuses.add(counts[i] == Statement.EXECUTE_FAILED ? ItemStatus.FAILED : ItemStatus.OK);
+            }
+        }
+        if (!statuses.contains(ItemStatus.FAILED) && statuses.size() < size) {
+            statuses.add(ItemStatus.FAILED);
+        }
+        statuses.addAll(Collections.nCopies(size - statuses.size(), ItemStatus.SKIPPED));
+        return new BatchPersistenceException(message, cause, statuses);
+    }
+
+    private static void addStatuses(List<ItemStatus> statuses, int[] counts) {
+        for (int count : counts) {
+            statuses.add(count == 0 ? ItemStatus.NOT_FOUND : ItemStatus.OK);
+        }
+    }
+
+    /** The driver returned fewer generated keys than rows inserted by a batch */
+    private static class GeneratedKeysUnavailableException extends SQLException {
+    }
+
+    /** Fails rather than return part of the rows, e.g. when the statement timed out while they were read */
+    protected List<Employee> parseResultSet(ResultSet rs) throws SQLException {
+        List<Employee> result = new ArrayList<>();
+        while (rs.next()) {
+            result.add(parseRow(rs));
+        }
         return result;
     }
 
+    protected Employee parseRow(ResultSet rs) throws SQLException {
+        Employee employee = new Employee();
+        employee.setFullName(rs.getString("full_name"));
+        employee.setDepartment(rs.getString("department"));
+        employee.setSupervisor(rs.getInt("supervisor"));
+        employee.setComment(rs.getString("comment"));
+
+        employee.setId(rs.getInt("id"));
+        employee.setRowVersion(toRowVersion(rs.getBytes("row_version")));
+        return employee;
+    }
+
+    /** rowversion is an 8-byte big-endian counter */
+    private static long toRowVersion(byte[] bytes) {
+        long value = 0;
+        for (int i = 0; bytes != null && i < bytes.length; i++) {
+            value = value << 8 | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /** Set the two parameters of the "? IS NULL OR row_version = ?" condition; 0 matches any row version */
+    private static void setRowVersion(PreparedStatement statement, int index, long rowVersion) throws SQLException {
+        if (rowVersion == 0) {
+            statement.setNull(index, Types.BINARY);
+            statement.setNull(index + 1, Types.BINARY);
+            return;
+        }
+        byte[] bytes = toBytes(rowVersion);
+        statement.setBytes(index, bytes);
+        statement.setBytes(index + 1, bytes);
+    }
+
+    private static byte[] toBytes(long rowVersion) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) rowVersion;
+            rowVersion >>>= 8;
+        }
+        return bytes;
+    }
+
 
     protected void prepareStatementForUpdate(PreparedStatement statement, Employee employee) throws PersistenceException {
         try {
@@ -212,6 +621,7 @@ public class EmployeeDaoImpl implements EmployeeDao {
             statement.setString(4, employee.getComment());
 
             statement.setInt(5, employee.getId());
+            setRowVersion(statement, 6, employee.getRowVersion());
         } catch (Exception e) {
             throw new PersistenceException(e);
         }
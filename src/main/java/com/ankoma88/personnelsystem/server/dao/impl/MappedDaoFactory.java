@@ -0,0 +1,81 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DaoFactory storing employees in a local MappedEmployeeStore instead of a database server.
+ * There are no sessions: connections are placeholders that only support being closed,
+ * and every DAO works on the same store.
+ */
+public class MappedDaoFactory implements DaoFactory {
+    private static final Logger log = Logger.getLogger(MappedDaoFactory.class.getName());
+
+    private final MappedEmployeeStore store;
+
+    public MappedDaoFactory(Path directory) throws IOException {
+        this.store = new MappedEmployeeStore(directory);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new NoConnection());
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return new MappedEmployeeDao(store);
+    }
+
+    public MappedEmployeeStore getStore() {
+        return store;
+    }
+
+    /** Save the index for a fast next start; call after the last request */
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close the employee store", e);
+        }
+    }
+
+    private static class NoConnection implements InvocationHandler {
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean noArgs = method.getParameterTypes().length == 0;
+            if ("close".equals(name) && noArgs) {
+                closed = true;
+                return null;
+            }
+            if ("isClosed".equals(name) && noArgs) {
+                return closed;
+            }
+            if ("equals".equals(name) && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && noArgs) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name) && noArgs) {
+                return "MappedStore";
+            }
+            throw new SQLFeatureNotSupportedException("No database behind the mapped employee store: " + name);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.ConflictException;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * EmployeeDao over a MappedEmployeeStore; follows EmployeeDaoImpl in which calls fail and how
+ */
+public class MappedEmployeeDao implements EmployeeDao {
+
+    private final MappedEmployeeStore store;
+
+    public MappedEmployeeDao(MappedEmployeeStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Employee create(Employee employee) throws PersistenceException {
+        if (employee.getId() != null) {
+            throw new PersistenceException("Such record already exists");
+        }
+        try {
+            store.insert(Collections.singletonList(employee));
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+        return employee;
+    }
+
+    @Override
+    public Employee read(int key) throws PersistenceException {
+        return store.get(key);
+    }
+
+    @Override
+    public Employee update(Employee employee) throws PersistenceException {
+        if (employee.getId() == null) {
+            throw new PersistenceException("No such record: " + employee.getId());
+        }
+        check(updateAll(Collections.singletonList(employee)).get(0), employee.getId());
+        return store.get(employee.getId());
+    }
+
+    @Override
+    public void delete(int key) throws PersistenceException {
+        delete(key, 0);
+    }
+
+    @Override
+    public void delete(int key, long rowVersion) throws PersistenceException {
+        try {
+            check(store.delete(key, rowVersion), key);
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    private void check(ItemStatus status, int key) throws PersistenceException {
+        Employee current;
+        if (status == ItemStatus.CONFLICT && (current = store.get(key)) != null) {
+            throw new ConflictException(current);
+        }
+        if (status != ItemStatus.OK) {
+            throw new PersistenceException("No such record: " + key);
+        }
+    }
+
+    @Override
+    public List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException {
+        for (Employee employee : employees) {
+            if (employee.getId() != null) {
+                throw new PersistenceException("Such record already exists: " + employee.getId());
+            }
+        }
+        try {
+            store.insert(employees);
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+        return Collections.nCopies(employees.size(), ItemStatus.OK);
+    }
+
+    @Override
+    public List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException {
+        for (Employee employee : employees) {
+            if (employee.getId() == null) {
+                throw new PersistenceException("Employee without id in batch update");
+            }
+        }
+        try {
+            return store.update(employees);
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public List<ItemStatus> deleteAll(int[] keys) throws PersistenceException {
+        try {
+            return store.delete(keys);
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    @Override
+    public List<Employee> getAll() throws SQLException {
+        return store.page(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Employee> getPage(int afterId, int limit) throws SQLException {
+        return store.page(afterId, limit);
+    }
+
+    /** Reads fetchSize employees at a time; sees changes made while it is open */
+    @Override
+    public EmployeeCursor openCursor(final int fetchSize) throws SQLException {
+        return new EmployeeCursor() {
+            private List<Employee> page = Collections.emptyList();
+            private int next;
+            private int lastId;
+            private boolean done;
+
+            @Override
+            public Employee next() throws SQLException {
+                if (next == page.size() && !done) {
+                    page = store.page(lastId, Math.max(fetchSize, 1));
+                    next = 0;
+                    done = page.isEmpty();
+                }
+                if (done) {
+                    return null;
+                }
+                Employee employee = page.get(next++);
+                lastId = employee.getId();
+                return employee;
+            }
+
+            @Override
+            public void close() {
+                done = true;
+            }
+        };
+    }
+
+    /** Row versions here are content hashes, not ordered: everyone counts as changed */
+    @Override
+    public List<Employee> getChangedSince(long rowVersion) throws SQLException {
+        return store.page(0, Integer.MAX_VALUE);
+    }
+
+    /** Writes are visible here as they are made, and getChangedSince() returns everyone anyway */
+    @Override
+    public long getMinActiveRowVersion() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public int[] getIds() throws SQLException {
+        return store.ids();
+    }
+
+    @Override
+    public List<Employee> getSupervisors() throws SQLException {
+        return store.supervisors();
+    }
+
+    @Override
+    public List<Employee> getSubordinates(int key) throws SQLException {
+        return store.subordinates(key);
+    }
+
+    @Override
+    public List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
+        try {
+            return store.cancelSupervisor(key);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+}
@@ -0,0 +1,742 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.util.IntList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static com.ankoma88.personnelsystem.util.Settings.MAPPED_INITIAL_BYTES;
+import static com.ankoma88.personnelsystem.util.Settings.MAPPED_SYNC_WRITES;
+
+/**
+ * Employees kept in a memory-mapped, append-only data file; ids and record offsets are held in memory.
+ *
+ * Every change is appended as one record, length:int crc32:int and one or more operations, so a batch
+ * is either replayed completely or, torn by a crash, not at all. Reads decode straight from the mapping,
+ * without system calls or intermediate buffers. close() saves the id index next to the data file; on
+ * startup it is loaded and only records appended after it are replayed, so a full scan is needed only
+ * after a crash. Once dead records take more than half of the file it is rewritten with the live ones.
+ * A single mapping limits the data file to 2 GB.
+ *
+ * There is no row version column: an employee's row version is a 64-bit hash of its stored content,
+ * so it changes whenever the content does.
+ */
+public class MappedEmployeeStore implements Closeable {
+    private static final Logger log = Logger.getLogger(MappedEmployeeStore.class.getName());
+
+    private static final String DATA_FILE = "employees.dat";
+    private static final String INDEX_FILE = "employees.idx";
+    private static final int MAGIC = 0x50534544;
+    private static final int INDEX_MAGIC = 0x50534958;
+    private static final int VERSION = 1;
+    /** magic:int version:int generation:long nextId:int reserved:int */
+    private static final int HEADER_BYTES = 24;
+    private static final int NEXT_ID_OFFSET = 16;
+    private static final int RECORD_HEADER_BYTES = 8;
+    /** Index header: magic:int generation:long end:int nextId:int liveBytes:long count:int */
+    private static final int INDEX_HEADER_BYTES = 32;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final long COMPACT_MIN_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final Path dataFile;
+    private final Path indexFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /* Guarded by lock */
+    private FileChannel channel;
+    private MappedByteBuffer data;
+    private long generation;
+    /** Offset after the last record */
+    private int end;
+    private int nextId;
+    /** Ids in ascending order and the offsets of their current PUT operations, 0 once deleted */
+    private int[] ids = new int[1024];
+    private int[] offsets = new int[1024];
+    private int slots;
+    private int live;
+    /** Bytes of the current PUT operations */
+    private long liveBytes;
+    private boolean closed;
+
+    public MappedEmployeeStore(Path directory) throws IOException {
+        long started = System.nanoTime();
+        this.directory = directory;
+        this.dataFile = directory.resolve(DATA_FILE);
+        this.indexFile = directory.resolve(INDEX_FILE);
+        Files.createDirectories(directory);
+        channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            boolean created = channel.size() == 0;
+            data = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), MAPPED_INITIAL_BYTES));
+            if (created) {
+                generation = newGeneration();
+                nextId = 1;
+                writeHeader(data, generation, nextId);
+                end = HEADER_BYTES;
+            } else {
+                if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                    throw new IOException(dataFile + " is not an employee data file of version " + VERSION);
+                }
+                generation = data.getLong(8);
+                nextId = data.getInt(NEXT_ID_OFFSET);
+            }
+            int indexed = created ? HEADER_BYTES : loadIndex();
+            int replayed = replay(indexed);
+            log.info("Opened " + dataFile + " with " + live + " employees in "
+                    + (System.nanoTime() - started) / 1000000 + " ms"
+                    + (indexed > HEADER_BYTES ? " from the index, " : ", ") + replayed + " records replayed");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Employee get(int id) {
+        lock.readLock().lock();
+        try {
+            int slot = slot(id);
+            return slot >= 0 && offsets[slot] != 0 ? decode(offsets[slot]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Up to limit employees with id greater than afterId, in id order */
+    public List<Employee> page(int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Employee> page = new ArrayList<>(Math.min(limit, live));
+            int slot = slot(afterId);
+            for (int i = slot >= 0 ? slot + 1 : -slot - 1; i < slots && page.size() < limit; i++) {
+                if (offsets[i] != 0) {
+                    page.add(decode(offsets[i]));
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Employees reporting to supervisor, in id order */
+    public List<Employee> subordinates(int supervisor) {
+        lock.readLock().lock();
+        try {
+            List<Employee> subordinates = new ArrayList<>();
+            for (int i = 0; i < slots; i++) {
+                if (offsets[i] != 0 && supervisorAt(offsets[i]) == supervisor) {
+                    subordinates.add(decode(offsets[i]));
+                }
+            }
+            return subordinates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Employees without a supervisor or with someone reporting to them, in id order */
+    public List<Employee> supervisors() {
+        lock.readLock().lock();
+        try {
+            BitSet supervising = new BitSet();
+            for (int i = 0; i < slots; i++) {
+                if (offsets[i] != 0) {
+                    int supervisor = supervisorAt(offsets[i]);
+                    if (supervisor > 0) {
+                        supervising.set(supervisor);
+                    }
+                }
+            }
+            List<Employee> supervisors = new ArrayList<>();
+            for (int i = 0; i < slots; i++) {
+                if (offsets[i] != 0 && (supervising.get(ids[i]) || supervisorAt(offsets[i]) == 0)) {
+                    supervisors.add(decode(offsets[i]));
+                }
+            }
+            return supervisors;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Store new employees, setting their ids */
+    public void insert(List<Employee> employees) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Record record = new Record();
+            int id = nextId;
+            for (Employee employee : employees) {
+                record.put(id++, employee);
+            }
+            append(record);
+            for (int i = 0; i < employees.size(); i++) {
+                Employee employee = employees.get(i);
+                employee.setId(record.ids.get(i));
+                employee.setRowVersion(rowVersion(employee));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace stored employees and set their new row versions; those not stored are NOT_FOUND,
+     * those with a row version they no longer have CONFLICT, and both are left out
+     */
+    public List<ItemStatus> update(List<Employee> employees) throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<ItemStatus> statuses = new ArrayList<>(employees.size());
+            Record record = new Record();
+            for (Employee employee : employees) {
+                if (!exists(employee.getId())) {
+                    statuses.add(ItemStatus.NOT_FOUND);
+                } else if (employee.getRowVersion() != 0
+                        && employee.getRowVersion() != decode(offsets[slot(employee.getId())]).getRowVersion()) {
+                    statuses.add(ItemStatus.CONFLICT);
+                } else {
+                    record.put(employee.getId(), employee);
+                    statuses.add(ItemStatus.OK);
+                }
+            }
+            append(record);
+            for (int i = 0; i < employees.size(); i++) {
+                if (statuses.get(i) == ItemStatus.OK) {
+                    employees.get(i).setRowVersion(rowVersion(employees.get(i)));
+                }
+            }
+            return statuses;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<ItemStatus> delete(int[] keys) throws IOException {
+        lock.writeLock().lock();
+        try {
+            List<ItemStatus> statuses = new ArrayList<>(keys.length);
+            Record record = new Record();
+            BitSet deleted = new BitSet();
+            for (int key : keys) {
+                if (exists(key) && !deleted.get(key)) {
+                    deleted.set(key);
+                    record.delete(key);
+                    statuses.add(ItemStatus.OK);
+                } else {
+                    statuses.add(ItemStatus.NOT_FOUND);
+                }
+            }
+            append(record);
+            return statuses;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Delete the employee if it still has rowVersion, or whatever it holds if that is 0 */
+    public ItemStatus delete(int key, long rowVersion) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!exists(key)) {
+                return ItemStatus.NOT_FOUND;
+            }
+            if (rowVersion != 0 && rowVersion != decode(offsets[slot(key)]).getRowVersion()) {
+                return ItemStatus.CONFLICT;
+            }
+            Record record = new Record();
+            record.delete(key);
+            append(record);
+            return ItemStatus.OK;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Set the supervisor of everyone reporting to supervisor to 0 */
+    public List<Employee> cancelSupervisor(int supervisor) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Record record = new Record();
+            List<Employee> cancelled = new ArrayList<>();
+            for (int i = 0; i < slots; i++) {
+                if (offsets[i] != 0 && supervisorAt(offsets[i]) == supervisor) {
+                    Employee employee = decode(offsets[i]);
+                    employee.setSupervisor(0);
+                    employee.setRowVersion(rowVersion(employee));
+                    record.put(employee.getId(), employee);
+                    cancelled.add(employee);
+                }
+            }
+            append(record);
+            return cancelled;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Ids of the current employees, ascending */
+    public int[] ids() {
+        lock.readLock().lock();
+        try {
+            int[] current = new int[live];
+            int n = 0;
+            for (int i = 0; i < slots; i++) {
+                if (offsets[i] != 0) {
+                    current[n++] = ids[i];
+                }
+            }
+            return current;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Rewrite the data file with the current employees only */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            rewrite();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Flush the mapping and save the index for a fast next start */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            data.force();
+            saveIndex();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean exists(Integer id) {
+        if (id == null) {
+            return false;
+        }
+        int slot = slot(id);
+        return slot >= 0 && offsets[slot] != 0;
+    }
+
+    /** Index of id among the slots, or -(insertion point) - 1 */
+    private int slot(int id) {
+        return Arrays.binarySearch(ids, 0, slots, id);
+    }
+
+    private void append(Record record) throws IOException {
+        if (closed) {
+            throw new IOException("Employee store is closed");
+        }
+        if (record.ids.isEmpty()) {
+            return;
+        }
+        byte[] operations = record.bytes.toByteArray();
+        // Room for the record and a zero length after it
+        ensureCapacity((long) end + RECORD_HEADER_BYTES + operations.length + 4);
+        CRC32 crc = new CRC32();
+        crc.update(operations);
+        ByteBuffer target = data.duplicate();
+        target.position(end + RECORD_HEADER_BYTES);
+        target.put(operations);
+        data.putInt(end + 4, (int) crc.getValue());
+        // Written last: until then a reader of the file sees the end of the log here
+        data.putInt(end, operations.length);
+        int start = end + RECORD_HEADER_BYTES;
+        end = start + operations.length;
+        for (int i = 0; i < record.starts.size(); i++) {
+            apply(start + record.starts.get(i));
+        }
+        data.putInt(NEXT_ID_OFFSET, nextId);
+        if (MAPPED_SYNC_WRITES) {
+            data.force();
+        }
+
+        long garbage = end - HEADER_BYTES - liveBytes - (long) RECORD_HEADER_BYTES * live;
+        if (garbage > COMPACT_MIN_BYTES && garbage > liveBytes) {
+            try {
+                rewrite();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Could not compact " + dataFile, e);
+            }
+        }
+    }
+
+    /** Update the index for the operation at offset, which is in the file already */
+    private int apply(int offset) {
+        int id = data.getInt(offset + 1);
+        int slot = slot(id);
+        if (slot >= 0 && offsets[slot] != 0) {
+            liveBytes -= operationSize(offsets[slot]);
+            live--;
+            offsets[slot] = 0;
+        }
+        int size = operationSize(offset);
+        if (data.get(offset) == PUT) {
+            if (slot < 0) {
+                slot = insertSlot(-slot - 1, id);
+            }
+            offsets[slot] = offset;
+            live++;
+            liveBytes += size;
+            nextId = Math.max(nextId, id + 1);
+        }
+        return size;
+    }
+
+    private int insertSlot(int position, int id) {
+        if (slots == ids.length) {
+            ids = Arrays.copyOf(ids, slots * 2);
+            offsets = Arrays.copyOf(offsets, slots * 2);
+        }
+        System.arraycopy(ids, position, ids, position + 1, slots - position);
+        System.arraycopy(offsets, position, offsets, position + 1, slots - position);
+        ids[position] = id;
+        slots++;
+        return position;
+    }
+
+    /**
+     * Apply the records from offset on, stopping at the end of the log or at a record torn by a crash
+     * @return the number of records applied
+     */
+    private int replay(int offset) throws IOException {
+        int records = 0;
+        int capacity = data.capacity();
+        while (offset + RECORD_HEADER_BYTES <= capacity) {
+            int length = data.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            int start = offset + RECORD_HEADER_BYTES;
+            if (length < 0 || length > capacity - start || !checksumMatches(start, length, data.getInt(offset + 4))) {
+                log.warning("Ignoring a torn record at " + offset + " of " + dataFile);
+                break;
+            }
+            for (int operation = start; operation < start + length; ) {
+                byte type = data.get(operation);
+                if (type != PUT && type != DELETE) {
+                    throw new IOException("Unknown operation " + type + " at " + operation + " of " + dataFile);
+                }
+                operation += apply(operation);
+            }
+            offset = start + length;
+            records++;
+        }
+        end = offset;
+        return records;
+    }
+
+    private boolean checksumMatches(int start, int length, int checksum) {
+        ByteBuffer operations = data.duplicate();
+        operations.limit(start + length).position(start);
+        CRC32 crc = new CRC32();
+        crc.update(operations);
+        return (int) crc.getValue() == checksum;
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= data.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException(dataFile + " is full, compact it or archive employees");
+        }
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(required, 2L * data.capacity()));
+        data = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private int supervisorAt(int offset) {
+        return data.getInt(offset + 5);
+    }
+
+    private int operationSize(int offset) {
+        if (data.get(offset) == DELETE) {
+            return 5;
+        }
+        int size = 9;
+        for (int field = 0; field < 3; field++) {
+            size += 4 + Math.max(data.getInt(offset + size), 0);
+        }
+        return size;
+    }
+
+    private Employee decode(int offset) {
+        ByteBuffer in = data.duplicate();
+        in.position(offset + 1);
+        int id = in.getInt();
+        int supervisor = in.getInt();
+        Employee employee = new Employee(readString(in), readString(in), supervisor, readString(in));
+        employee.setId(id);
+        employee.setRowVersion(rowVersion(employee));
+        return employee;
+    }
+
+    /** FNV-1a over the stored fields; never 0, which means no row version */
+    private static long rowVersion(Employee employee) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, employee.getId());
+        hash = mix(hash, employee.getSupervisor() == null ? 0 : employee.getSupervisor());
+        for (String field : new String[]{employee.getFullName(), employee.getDepartment(), employee.getComment()}) {
+            if (field == null) {
+                hash = mix(hash, -1);
+                continue;
+            }
+            hash = mix(hash, field.length());
+            for (int i = 0; i < field.length(); i++) {
+                hash = (hash ^ field.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /** Copy the live operations into a new file that replaces the data file */
+    private void rewrite() throws IOException {
+        long started = System.nanoTime();
+        int before = end;
+        Path compacted = directory.resolve(DATA_FILE + ".compact");
+        Files.deleteIfExists(compacted);
+        long required = HEADER_BYTES + liveBytes + (long) RECORD_HEADER_BYTES * live + 4;
+        FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer out;
+        int position = HEADER_BYTES;
+        int[] newIds = new int[Math.max(live, 1024)];
+        int[] newOffsets = new int[newIds.length];
+        long newGeneration = newGeneration();
+        try {
+            out = target.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.min(Integer.MAX_VALUE, Math.max(MAPPED_INITIAL_BYTES, 2 * required)));
+            writeHeader(out, newGeneration, nextId);
+            int n = 0;
+            for (int i = 0; i < slots; i++) {
+                if (offsets[i] == 0) {
+                    continue;
+                }
+                int size = operationSize(offsets[i]);
+                ByteBuffer operation = data.duplicate();
+                operation.limit(offsets[i] + size).position(offsets[i]);
+                CRC32 crc = new CRC32();
+                crc.update(operation.duplicate());
+                out.position(position + RECORD_HEADER_BYTES);
+                out.put(operation);
+                out.putInt(position + 4, (int) crc.getValue());
+                out.putInt(position, size);
+                newIds[n] = ids[i];
+                newOffsets[n++] = position + RECORD_HEADER_BYTES;
+                position += RECORD_HEADER_BYTES + size;
+            }
+            out.force();
+            Files.move(compacted, dataFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+        syncDirectory();
+        channel.close();
+        channel = target;
+        data = out;
+        generation = newGeneration;
+        end = position;
+        ids = newIds;
+        offsets = newOffsets;
+        slots = live;
+        saveIndex();
+        log.info("Compacted " + dataFile + " from " + before + " to " + end + " bytes in "
+                + (System.nanoTime() - started) / 1000000 + " ms");
+    }
+
+    /**
+     * Load the index saved by close() if it matches the data file
+     * @return the offset to replay from
+     */
+    private int loadIndex() {
+        if (!Files.exists(indexFile)) {
+            return HEADER_BYTES;
+        }
+        try (FileChannel in = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < INDEX_HEADER_BYTES + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Truncated index");
+            }
+            MappedByteBuffer index = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer content = index.duplicate();
+            content.limit((int) size - 4);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            int savedEnd = index.getInt(12);
+            int count = index.getInt(28);
+            if (index.getInt(0) != INDEX_MAGIC || (int) crc.getValue() != index.getInt((int) size - 4)
+                    || size != INDEX_HEADER_BYTES + 8L * count + 4) {
+                throw new IOException("Corrupt index");
+            }
+            if (index.getLong(4) != generation || savedEnd < HEADER_BYTES || savedEnd > data.capacity()) {
+                log.info(indexFile + " belongs to another version of the data file, scanning it");
+                return HEADER_BYTES;
+            }
+            ids = new int[Math.max(count, 1024)];
+            offsets = new int[ids.length];
+            index.position(INDEX_HEADER_BYTES);
+            index.asIntBuffer().get(ids, 0, count);
+            index.position(INDEX_HEADER_BYTES + 4 * count);
+            index.asIntBuffer().get(offsets, 0, count);
+            slots = count;
+            live = count;
+            liveBytes = index.getLong(20);
+            nextId = Math.max(nextId, index.getInt(16));
+            return savedEnd;
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Ignoring " + indexFile + ", scanning " + dataFile, e);
+            ids = new int[1024];
+            offsets = new int[1024];
+            slots = 0;
+            live = 0;
+            liveBytes = 0;
+            return HEADER_BYTES;
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        int size = INDEX_HEADER_BYTES + 8 * live;
+        ByteBuffer index = ByteBuffer.allocate(size + 4);
+        index.putInt(INDEX_MAGIC).putLong(generation).putInt(end).putInt(nextId).putLong(liveBytes).putInt(live);
+        for (int i = 0; i < slots; i++) {
+            if (offsets[i] != 0) {
+                index.putInt(ids[i]);
+            }
+        }
+        for (int i = 0; i < slots; i++) {
+            if (offsets[i] != 0) {
+                index.putInt(offsets[i]);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(index.array(), 0, size);
+        index.putInt((int) crc.getValue());
+        index.flip();
+
+        Path saved = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(saved, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) {
+                out.write(index);
+            }
+            out.force(true);
+        }
+        Files.move(saved, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void syncDirectory() {
+        // Makes the rename durable; not supported everywhere
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not sync " + directory, e);
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buffer, long generation, int nextId) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, generation);
+        buffer.putInt(NEXT_ID_OFFSET, nextId);
+    }
+
+    /** Identifies one data file, so that an index saved for an older one is not used */
+    private static long newGeneration() {
+        return System.currentTimeMillis() ^ System.nanoTime() << 20;
+    }
+
+    /** Operations of a record being built; starts are relative to the first one */
+    private static class Record {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final IntList starts = new IntList();
+        final IntList ids = new IntList();
+
+        void put(int id, Employee employee) throws IOException {
+            starts.add(out.size());
+            ids.add(id);
+            out.writeByte(PUT);
+            out.writeInt(id);
+            out.writeInt(employee.getSupervisor() == null ? 0 : employee.getSupervisor());
+            writeString(employee.getFullName());
+            writeString(employee.getDepartment());
+            writeString(employee.getComment());
+        }
+
+        void delete(int id) throws IOException {
+            starts.add(out.size());
+            ids.add(id);
+            out.writeByte(DELETE);
+            out.writeInt(id);
+        }
+
+        private void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+import com.ankoma88.personnelsystem.server.metrics.ServerMetrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * DaoFactory decorator that times connection acquisition and, through MeteredEmployeeDao,
+ * every DAO call and the rows it returns. Place it below the cache so only database work is recorded.
+ */
+public class MeteredDaoFactory implements DaoFactory {
+
+    private final DaoFactory delegate;
+    private final ServerMetrics metrics;
+
+    public MeteredDaoFactory(DaoFactory delegate, ServerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Connection connection = delegate.getConnection();
+            failed = false;
+            return connection;
+        } finally {
+            metrics.getConnectionAcquire().recordSince(start, failed);
+        }
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return new MeteredEmployeeDao(delegate.getEmployeeDao(connection), metrics);
+    }
+}
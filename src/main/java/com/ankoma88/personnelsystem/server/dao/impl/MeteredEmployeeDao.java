@@ -0,0 +1,274 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+import com.ankoma88.personnelsystem.server.metrics.DaoOperation;
+import com.ankoma88.personnelsystem.server.metrics.ServerMetrics;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * EmployeeDao decorator recording latency and failures of each call, and the number of rows read
+ */
+public class MeteredEmployeeDao implements EmployeeDao {
+
+    private final EmployeeDao delegate;
+    private final ServerMetrics metrics;
+
+    public MeteredEmployeeDao(EmployeeDao delegate, ServerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Employee create(Employee e) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Employee created = delegate.create(e);
+            failed = false;
+            return created;
+        } finally {
+            record(DaoOperation.CREATE, start, failed);
+        }
+    }
+
+    @Override
+    public Employee read(int key) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Employee employee = delegate.read(key);
+            failed = false;
+            if (employee != null) {
+                metrics.getRowsReturned().add(1);
+            }
+            return employee;
+        } finally {
+            record(DaoOperation.READ, start, failed);
+        }
+    }
+
+    @Override
+    public Employee update(Employee employee) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Employee updated = delegate.update(employee);
+            failed = false;
+            return updated;
+        } finally {
+            record(DaoOperation.UPDATE, start, failed);
+        }
+    }
+
+    @Override
+    public void delete(int key) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.delete(key);
+            failed = false;
+        } finally {
+            record(DaoOperation.DELETE, start, failed);
+        }
+    }
+
+    @Override
+    public void delete(int key, long rowVersion) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.delete(key, rowVersion);
+            failed = false;
+        } finally {
+            record(DaoOperation.DELETE, start, failed);
+        }
+    }
+
+    @Override
+    public List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<ItemStatus> statuses = delegate.createAll(employees);
+            failed = false;
+            return statuses;
+        } finally {
+            record(DaoOperation.CREATE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<ItemStatus> statuses = delegate.updateAll(employees);
+            failed = false;
+            return statuses;
+        } finally {
+            record(DaoOperation.UPDATE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public List<ItemStatus> deleteAll(int[] keys) throws PersistenceException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<ItemStatus> statuses = delegate.deleteAll(keys);
+            failed = false;
+            return statuses;
+        } finally {
+            record(DaoOperation.DELETE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public List<Employee> getAll() throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Employee> list = rows(delegate.getAll());
+            failed = false;
+            return list;
+        } finally {
+            record(DaoOperation.GET_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public List<Employee> getPage(int afterId, int limit) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Employee> list = rows(delegate.getPage(afterId, limit));
+            failed = false;
+            return list;
+        } finally {
+            record(DaoOperation.GET_PAGE, start, failed);
+        }
+    }
+
+    /** Times opening the cursor; rows are counted as they are fetched */
+    @Override
+    public EmployeeCursor openCursor(int fetchSize) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final EmployeeCursor cursor = delegate.openCursor(fetchSize);
+            failed = false;
+            return new EmployeeCursor() {
+                @Override
+                public Employee next() throws SQLException {
+                    Employee employee = cursor.next();
+                    if (employee != null) {
+                        metrics.getRowsReturned().add(1);
+                    }
+                    return employee;
+                }
+
+                @Override
+                public void close() throws SQLException {
+                    cursor.close();
+                }
+            };
+        } finally {
+            record(DaoOperation.CURSOR, start, failed);
+        }
+    }
+
+    @Override
+    public List<Employee> getChangedSince(long rowVersion) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Employee> list = rows(delegate.getChangedSince(rowVersion));
+            failed = false;
+            return list;
+        } finally {
+            record(DaoOperation.CHANGED_SINCE, start, failed);
+        }
+    }
+
+    @Override
+    public long getMinActiveRowVersion() throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            long rowVersion = delegate.getMinActiveRowVersion();
+            failed = false;
+            return rowVersion;
+        } finally {
+            record(DaoOperation.MIN_ACTIVE_ROW_VERSION, start, failed);
+        }
+    }
+
+    @Override
+    public int[] getIds() throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int[] ids = delegate.getIds();
+            failed = false;
+            return ids;
+        } finally {
+            record(DaoOperation.GET_IDS, start, failed);
+        }
+    }
+
+    @Override
+    public List<Employee> getSupervisors() throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Employee> list = rows(delegate.getSupervisors());
+            failed = false;
+            return list;
+        } finally {
+            record(DaoOperation.GET_SUPERVISORS, start, failed);
+        }
+    }
+
+    @Override
+    public List<Employee> getSubordinates(int key) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Employee> list = rows(delegate.getSubordinates(key));
+            failed = false;
+            return list;
+        } finally {
+            record(DaoOperation.GET_SUBORDINATES, start, failed);
+        }
+    }
+
+    @Override
+    public List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<Employee> cancelled = delegate.updateCancelSupervisorOfFormerSubordinates(key);
+            failed = false;
+            return cancelled;
+        } finally {
+            record(DaoOperation.CANCEL_SUPERVISOR, start, failed);
+        }
+    }
+
+    private List<Employee> rows(List<Employee> list) {
+        if (list != null) {
+            metrics.getRowsReturned().add(list.size());
+        }
+        return list;
+    }
+
+    private void record(DaoOperation operation, long start, boolean failed) {
+        metrics.daoOperation(operation).recordSince(start, failed);
+    }
+}
@@ -0,0 +1,102 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeChangeListener;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DaoFactory decorator that publishes every successful mutation made through its DAOs
+ * to the registered EmployeeChangeListeners. A failing listener is logged and skipped;
+ * it never fails the request that caused the change.
+ */
+public class NotifyingDaoFactory implements DaoFactory, EmployeeChangeListener {
+    private static final Logger log = Logger.getLogger(NotifyingDaoFactory.class.getName());
+
+    private final DaoFactory delegate;
+    private final List<EmployeeChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public NotifyingDaoFactory(DaoFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    public void addListener(EmployeeChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(EmployeeChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return delegate.getConnection();
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return new NotifyingEmployeeDao(delegate.getEmployeeDao(connection), this);
+    }
+
+    @Override
+    public void employeeCreated(Employee employee) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeCreated(employee);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void employeeUpdated(Employee employee) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeUpdated(employee);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void employeeDeleted(int id) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.employeeDeleted(id);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void supervisorCancelled(int supervisor) {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.supervisorCancelled(supervisor);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void resync() {
+        for (EmployeeChangeListener listener : listeners) {
+            try {
+                listener.resync();
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+}
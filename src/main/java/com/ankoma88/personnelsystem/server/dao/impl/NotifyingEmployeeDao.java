@@ -0,0 +1,155 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.ConflictException;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeChangeListener;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * EmployeeDao decorator that reports successful mutations to an EmployeeChangeListener
+ */
+public class NotifyingEmployeeDao implements EmployeeDao {
+
+    private final EmployeeDao delegate;
+    private final EmployeeChangeListener listener;
+
+    public NotifyingEmployeeDao(EmployeeDao delegate, EmployeeChangeListener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public Employee create(Employee e) throws PersistenceException {
+        Employee created = delegate.create(e);
+        listener.employeeCreated(created);
+        return created;
+    }
+
+    @Override
+    public Employee read(int key) throws PersistenceException {
+        return delegate.read(key);
+    }
+
+    /** A conflict tells what is stored now; listeners get it, since they may still have an older state */
+    @Override
+    public Employee update(Employee employee) throws PersistenceException {
+        Employee updated;
+        try {
+            updated = delegate.update(employee);
+        } catch (ConflictException e) {
+            listener.employeeUpdated(e.getCurrent());
+            throw e;
+        }
+        if (updated != null) {
+            listener.employeeUpdated(updated);
+        }
+        return updated;
+    }
+
+    @Override
+    public void delete(int key) throws PersistenceException {
+        delegate.delete(key);
+        listener.employeeDeleted(key);
+    }
+
+    @Override
+    public void delete(int key, long rowVersion) throws PersistenceException {
+        try {
+            delegate.delete(key, rowVersion);
+        } catch (ConflictException e) {
+            listener.employeeUpdated(e.getCurrent());
+            throw e;
+        }
+        listener.employeeDeleted(key);
+    }
+
+    @Override
+    public List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException {
+        List<ItemStatus> statuses = delegate.createAll(employees);
+        for (int i = 0; i < employees.size(); i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                listener.employeeCreated(employees.get(i));
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException {
+        List<ItemStatus> statuses = delegate.updateAll(employees);
+        for (int i = 0; i < employees.size(); i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                listener.employeeUpdated(employees.get(i));
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<ItemStatus> deleteAll(int[] keys) throws PersistenceException {
+        List<ItemStatus> statuses = delegate.deleteAll(keys);
+        for (int i = 0; i < keys.length; i++) {
+            if (statuses.get(i) == ItemStatus.OK) {
+                listener.employeeDeleted(keys[i]);
+            }
+        }
+        return statuses;
+    }
+
+    @Override
+    public List<Employee> getAll() throws SQLException {
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<Employee> getPage(int afterId, int limit) throws SQLException {
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public EmployeeCursor openCursor(int fetchSize) throws SQLException {
+        return delegate.openCursor(fetchSize);
+    }
+
+    @Override
+    public List<Employee> getChangedSince(long rowVersion) throws SQLException {
+        return delegate.getChangedSince(rowVersion);
+    }
+
+    @Override
+    public long getMinActiveRowVersion() throws SQLException {
+        return delegate.getMinActiveRowVersion();
+    }
+
+    @Override
+    public int[] getIds() throws SQLException {
+        return delegate.getIds();
+    }
+
+    @Override
+    public List<Employee> getSupervisors() throws SQLException {
+        return delegate.getSupervisors();
+    }
+
+    @Override
+    public List<Employee> getSubordinates(int key) throws SQLException {
+        return delegate.getSubordinates(key);
+    }
+
+    @Override
+    public List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
+        List<Employee> cancelled = delegate.updateCancelSupervisorOfFormerSubordinates(key);
+        listener.supervisorCancelled(key);
+        // Their new row versions
+        for (Employee employee : cancelled) {
+            listener.employeeUpdated(employee);
+        }
+        return cancelled;
+    }
+}
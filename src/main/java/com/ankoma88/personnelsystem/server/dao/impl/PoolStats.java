@@ -0,0 +1,105 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+/**
+ * Point-in-time snapshot of connection pool counters (see {@link PooledDaoFactory#getStats()})
+ */
+public class PoolStats {
+
+    private final int active;
+    private final int idle;
+    private final int maxSize;
+    private final int waiting;
+    private final long acquireCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long timeoutCount;
+    private final long leakCount;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long statementHits;
+    private final long statementMisses;
+
+    public PoolStats(int active, int idle, int maxSize, int waiting, long acquireCount, long totalWaitNanos,
+                     long maxWaitNanos, long timeoutCount, long leakCount, long createdCount, long destroyedCount,
+                     long statementHits, long statementMisses) {
+        this.active = active;
+        this.idle = idle;
+        this.maxSize = maxSize;
+        this.waiting = waiting;
+        this.acquireCount = acquireCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.timeoutCount = timeoutCount;
+        this.leakCount = leakCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.statementHits = statementHits;
+        this.statementMisses = statementMisses;
+    }
+
+    /** Connections currently borrowed by callers */
+    public int getActive() {
+        return active;
+    }
+
+    /** Open connections waiting in the pool */
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Threads currently blocked in getConnection() */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public double getAverageWaitMillis() {
+        return acquireCount == 0 ? 0 : totalWaitNanos / 1e6 / acquireCount;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1e6;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getLeakCount() {
+        return leakCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    /** prepareStatement() calls answered from a connection's statement cache */
+    public long getStatementHits() {
+        return statementHits;
+    }
+
+    /** prepareStatement() calls that had to prepare a new statement */
+    public long getStatementMisses() {
+        return statementMisses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool: active=%d, idle=%d, max=%d, waiting=%d, acquired=%d, avgWait=%.3fms, " +
+                        "maxWait=%.3fms, timeouts=%d, leaks=%d, created=%d, destroyed=%d, statementHits=%d, " +
+                        "statementMisses=%d",
+                active, idle, maxSize, waiting, acquireCount, getAverageWaitMillis(), getMaxWaitMillis(),
+                timeoutCount, leakCount, createdCount, destroyedCount, statementHits, statementMisses);
+    }
+}
@@ -0,0 +1,570 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.util.Settings.*;
+
+/**
+ * Bounded pool of physical connections obtained from another DaoFactory.
+ * Connections handed out are proxies: closing them returns the physical connection to the pool.
+ * Each physical connection keeps its most recently used prepared statements; preparing the same SQL
+ * again reuses one, so the driver does not parse it and the server keeps its plan.
+ */
+public class PooledDaoFactory implements DaoFactory {
+    private static final Logger log = Logger.getLogger(PooledDaoFactory.class.getName());
+
+    private final DaoFactory delegate;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    /** Idle connections, most recently returned first so that warm connections are reused */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> active =
+            Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+    /** One permit per connection that may be borrowed at the same time */
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public PooledDaoFactory(DaoFactory delegate) {
+        this(delegate, POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_ACQUIRE_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS,
+                POOL_LEAK_THRESHOLD_MILLIS, POOL_VALIDATION_TIMEOUT_SECONDS, POOL_STATEMENT_CACHE_SIZE);
+    }
+
+    public PooledDaoFactory(DaoFactory delegate, int minSize, int maxSize, long acquireTimeoutMillis,
+                            long idleTimeoutMillis, long leakThresholdMillis, int validationTimeoutSeconds,
+                            int statementCacheSize) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.delegate = delegate;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "connection-pool-housekeeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                houseKeep();
+            }
+        }, 0, POOL_HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection, waiting at most the acquire timeout for one to become available, and no longer
+     * than the current thread's Deadline leaves: SQLTimeoutException once that has passed.
+     * The caller must close the returned connection to give it back.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        Deadline request = Deadline.current();
+        long waitMillis = acquireTimeoutMillis;
+        if (request != null) {
+            if (request.isCancelled()) {
+                throw new SQLTimeoutException("Request cancelled");
+            }
+            waitMillis = Math.min(waitMillis, Math.max(request.getRemainingMillis(), 0));
+        }
+        boolean limited = waitMillis < acquireTimeoutMillis;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        try {
+            if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                throw acquireTimeout(limited);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pc = takeConnection(deadline, limited);
+            long waited = System.nanoTime() - start;
+            recordWait(waited);
+            pc.borrowed(leakThresholdMillis > 0 && POOL_LEAK_STACK_TRACES);
+            active.add(pc);
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return delegate.getEmployeeDao(connection);
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(active.size(), idle.size(), maxSize, permits.getQueueLength(), acquireCount.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(), timeoutCount.get(), leakCount.get(), createdCount.get(),
+                destroyedCount.get(), statementHits.get(), statementMisses.get());
+    }
+
+    /**
+     * Stop housekeeping and close idle connections. Borrowed connections are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            destroy(pc);
+        }
+        log.info("Connection pool closed. " + getStats());
+    }
+
+    /**
+     * Called with a permit held: reuse a valid idle connection, open a new one or wait for a returned one
+     * until deadline, which is the request's if limited
+     */
+    private PooledConnection takeConnection(long deadline, boolean limited) throws SQLException {
+        while (true) {
+            PooledConnection pc = idle.pollFirst();
+            if (pc == null) {
+                if (total.incrementAndGet() <= maxSize) {
+                    return create();
+                }
+                total.decrementAndGet();
+                long remaining = deadline - System.nanoTime();
+                try {
+                    pc = idle.pollFirst(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection", e);
+                }
+                if (pc == null) {
+                    throw acquireTimeout(limited);
+                }
+            }
+            if (isValid(pc)) {
+                return pc;
+            }
+            destroy(pc);
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        try {
+            PooledConnection pc = new PooledConnection(delegate.getConnection());
+            createdCount.incrementAndGet();
+            return pc;
+        } catch (SQLException | RuntimeException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return pc.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        total.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            log.log(Level.FINE, "Failed to close pooled connection", e);
+        }
+    }
+
+    /** Return a physical connection to the pool, resetting transactional state left by the borrower */
+    private void release(PooledConnection pc) {
+        active.remove(pc);
+        try {
+            boolean healthy = true;
+            try {
+                pc.releaseStatements();
+                if (!pc.physical.getAutoCommit()) {
+                    pc.physical.rollback();
+                    pc.physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                healthy = false;
+            }
+            if (healthy && !closed) {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            } else {
+                destroy(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private SQLException acquireTimeout(boolean limited) {
+        if (limited) {
+            return new SQLTimeoutException("Request deadline passed while waiting for a connection. " + getStats());
+        }
+        timeoutCount.incrementAndGet();
+        return new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection. " + getStats());
+    }
+
+    private void recordWait(long waited) {
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waited);
+        long max;
+        while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited)) {
+            // Retry until our value is stored or a larger one is
+        }
+    }
+
+    /**
+     * Evict connections idle longer than the idle timeout (down to the minimum size),
+     * top the pool up to its minimum size and report connections held longer than the leak threshold.
+     */
+    private void houseKeep() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total.get() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutMillis && idle.remove(pc)) {
+                    destroy(pc);
+                }
+            }
+
+            while (!closed && total.get() < minSize) {
+                if (total.incrementAndGet() > maxSize) {
+                    total.decrementAndGet();
+                    break;
+                }
+                PooledConnection pc = create();
+                pc.lastUsed = now;
+                idle.offerLast(pc);
+            }
+
+            if (leakThresholdMillis > 0) {
+                for (PooledConnection pc : active) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis) {
+                        pc.leakReported = true;
+                        leakCount.incrementAndGet();
+                        log.log(Level.WARNING, "Connection held for " + (now - pc.borrowedAt)
+                                + "ms without being closed, borrowed by thread " + pc.borrowerName, pc.borrowedBy);
+                    }
+                }
+            }
+            log.fine(getStats().toString());
+        } catch (SQLException | RuntimeException e) {
+            log.log(Level.WARNING, "Connection pool housekeeping failed", e);
+        }
+    }
+
+    /**
+     * Physical connection together with its pool bookkeeping
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private volatile long lastUsed;
+        private volatile long borrowedAt;
+        private volatile String borrowerName;
+        /** Where the connection was borrowed, only with POOL_LEAK_STACK_TRACES */
+        private volatile Throwable borrowedBy;
+        private volatile boolean leakReported;
+        /** Prepared statements by prepareStatement() arguments, least recently used first */
+        private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        void borrowed(boolean captureStack) {
+            borrowedAt = System.currentTimeMillis();
+            borrowerName = Thread.currentThread().getName();
+            borrowedBy = captureStack ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+
+        /**
+         * A cached statement for prepareStatement(args) if one is free, otherwise a newly prepared one,
+         * cached unless the same SQL is in use already. Only the borrower touches this.
+         */
+        PreparedStatement prepare(Connection handle, Method method, Object[] args) throws Throwable {
+            String key = Arrays.deepToString(args);
+            CachedStatement cached = statements.get(key);
+            if (cached != null && !cached.inUse) {
+                statementHits.incrementAndGet();
+                return cached.newHandle(handle);
+            }
+            statementMisses.incrementAndGet();
+            PreparedStatement statement;
+            try {
+                statement = (PreparedStatement) method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (cached != null) {
+                return statement;
+            }
+            cached = new CachedStatement(statement, statements, key);
+            statements.put(key, cached);
+            Iterator<CachedStatement> eldest = statements.values().iterator();
+            while (statements.size() > statementCacheSize && eldest.hasNext()) {
+                CachedStatement evicted = eldest.next();
+                if (!evicted.inUse) {
+                    eldest.remove();
+                    evicted.closeQuietly();
+                }
+            }
+            return cached.newHandle(handle);
+        }
+
+        /** Make statements the borrower did not close reusable again */
+        void releaseStatements() {
+            Iterator<CachedStatement> it = statements.values().iterator();
+            while (it.hasNext()) {
+                CachedStatement cached = it.next();
+                if (cached.inUse && !cached.reset()) {
+                    it.remove();
+                    cached.closeQuietly();
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepared statement kept open on its physical connection
+     */
+    private static class CachedStatement {
+        private final PreparedStatement physical;
+        /** The owning connection's cache and this statement's key in it */
+        private final Map<String, CachedStatement> cache;
+        private final String key;
+        private boolean inUse;
+        private ResultSet resultSet;
+
+        CachedStatement(PreparedStatement physical, Map<String, CachedStatement> cache, String key) {
+            this.physical = physical;
+            this.cache = cache;
+            this.key = key;
+        }
+
+        PreparedStatement newHandle(Connection connection) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandle(this, connection));
+        }
+
+        /** Clear what the last user left behind; false if the statement is no longer usable */
+        boolean reset() {
+            inUse = false;
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                    resultSet = null;
+                }
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.setQueryTimeout(0);
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /** Close a statement that failed to reset, and forget it so it is not handed out again */
+        void discard() {
+            if (cache.get(key) == this) {
+                cache.remove(key);
+            }
+            closeQuietly();
+        }
+
+        void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                log.log(Level.FINE, "Failed to close cached statement", e);
+            }
+        }
+    }
+
+    /**
+     * What a borrower sees of a cached statement: closing it makes the statement available again
+     */
+    private static class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection connection;
+        private volatile boolean closed;
+
+        StatementHandle(CachedStatement cached, Connection connection) {
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean noArgs = method.getParameterTypes().length == 0;
+            if ("close".equals(name) && noArgs) {
+                synchronized (this) {
+                    if (!closed) {
+                        closed = true;
+                        if (!cached.reset()) {
+                            cached.discard();
+                        }
+                    }
+                }
+                return null;
+            }
+            if ("cancel".equals(name) && noArgs) {
+                // Comes from another thread: must not reach the statement once the next borrower has it
+                synchronized (this) {
+                    if (!closed) {
+                        cached.physical.cancel();
+                    }
+                }
+                return null;
+            }
+            if ("isClosed".equals(name) && noArgs) {
+                return closed || cached.physical.isClosed();
+            }
+            if ("equals".equals(name) && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && noArgs) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name) && noArgs) {
+                return "Cached[" + cached.physical + "]";
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            if ("getConnection".equals(name) && noArgs) {
+                return connection;
+            }
+            Object result;
+            try {
+                result = method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet) {
+                // Closed with the statement, as it would be without the cache
+                cached.resultSet = (ResultSet) result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * What a borrower sees. Each borrow gets its own handle so a stale reference cannot
+     * use the physical connection after it went back to the pool.
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean released;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name) && method.getParameterTypes().length == 0) {
+                if (!released) {
+                    released = true;
+                    release(pc);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name) && method.getParameterTypes().length == 0) {
+                return released || pc.physical.isClosed();
+            }
+            if ("equals".equals(name) && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name) && method.getParameterTypes().length == 0) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name) && method.getParameterTypes().length == 0) {
+                return "Pooled[" + pc.physical + "]";
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if ("prepareStatement".equals(name) && statementCacheSize > 0) {
+                return pc.prepare((Connection) proxy, method, args);
+            }
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of employee updates and deletes, split into numbered segment files.
+ *
+ * Records are framed as length:int crc32:int payload, so a record torn by a crash is detected and
+ * ignored on recovery. sync() implements group commit: a thread waiting while another one forces the
+ * file finds its records already durable afterwards and returns without forcing again.
+ * rotate() starts a new segment; segments are deleted once their changes are in the database.
+ */
+public class WriteAheadLog {
+    private static final Logger log = Logger.getLogger(WriteAheadLog.class.getName());
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    /** Written before strings were length-prefixed UTF-8, still read on recovery */
+    private static final byte MODIFIED_UTF8_UPDATE = 1;
+    private static final byte DELETE = 2;
+    private static final byte UPDATE = 3;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final Object syncLock = new Object();
+
+    /** Guarded by this */
+    private FileChannel channel;
+    private long segment;
+    /** Bytes appended since the log was opened, over all segments */
+    private long appended;
+
+    private volatile long synced;
+
+    public WriteAheadLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Long> segments = segments();
+        segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        channel = open(segment);
+    }
+
+    /**
+     * Changes recorded in the existing segments, oldest first: employees for updates, ids for deletes
+     */
+    public synchronized List<Object> recover() throws IOException {
+        List<Object> changes = new ArrayList<>();
+        for (long number : segments()) {
+            if (number == segment) {
+                continue;
+            }
+            Path file = file(number);
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                readSegment(in, changes, file);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Append changes as one record each, not yet durable: see sync()
+     * @return the position to sync to
+     */
+    public synchronized long append(List<?> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Object change : changes) {
+            byte[] payload = encode(change);
+            if (payload.length > MAX_RECORD_BYTES) {
+                // Recovery would reject it as torn and drop everything after it
+                throw new IOException("Record of " + payload.length + " bytes exceeds " + MAX_RECORD_BYTES);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long start = channel.size();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // Records after a partial one would be lost on recovery
+            channel.truncate(start);
+            throw e;
+        }
+        appended += bytes.size();
+        return appended;
+    }
+
+    /**
+     * Wait until everything up to position is on disk
+     */
+    public void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = appended;
+                current = channel;
+            }
+            current.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * Close the current segment, making it durable, and continue in a new one
+     * @return the number of the closed segment
+     */
+    public long rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                synced = appended;
+                long closed = segment;
+                channel = open(++segment);
+                return closed;
+            }
+        }
+    }
+
+    /**
+     * Delete the segments up to and including the given one, their changes having been stored elsewhere
+     */
+    public synchronized void deleteThrough(long number) throws IOException {
+        for (long existing : segments()) {
+            if (existing <= number && existing != segment) {
+                Files.delete(file(existing));
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+                synced = appended;
+            }
+        }
+    }
+
+    private void readSegment(DataInputStream in, List<Object> changes, Path file) throws IOException {
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            try {
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    throw new IOException("Invalid record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Checksum mismatch");
+                }
+                changes.add(decode(payload));
+            } catch (IOException e) {
+                // A crash while appending leaves a partial record at the end of the last segment
+                log.log(Level.WARNING, "Ignoring the rest of " + file + ": " + e);
+                return;
+            }
+        }
+    }
+
+    private static byte[] encode(Object change) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (change instanceof Employee) {
+            Employee employee = (Employee) change;
+            out.writeByte(UPDATE);
+            out.writeInt(employee.getId());
+            out.writeInt(employee.getSupervisor() == null ? 0 : employee.getSupervisor());
+            writeString(out, employee.getFullName());
+            writeString(out, employee.getDepartment());
+            writeString(out, employee.getComment());
+        } else {
+            out.writeByte(DELETE);
+            out.writeInt((Integer) change);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        int id = in.readInt();
+        if (type == DELETE) {
+            return id;
+        }
+        if (type == MODIFIED_UTF8_UPDATE) {
+            int supervisor = in.readInt();
+            Employee employee = new Employee(readModifiedUtf8(in), readModifiedUtf8(in), supervisor,
+                    readModifiedUtf8(in));
+            employee.setId(id);
+            return employee;
+        }
+        if (type != UPDATE) {
+            throw new IOException("Unknown record type " + type);
+        }
+        int supervisor = in.readInt();
+        Employee employee = new Employee(readString(in), readString(in), supervisor, readString(in));
+        employee.setId(id);
+        return employee;
+    }
+
+    /** Length-prefixed UTF-8, -1 for null; unlike writeUTF not limited to 64 KB */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_RECORD_BYTES) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static String readModifiedUtf8(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private FileChannel open(long number) throws IOException {
+        FileChannel created = FileChannel.open(file(number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Make the new file's directory entry durable too; not supported everywhere
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not sync " + directory, e);
+        }
+        return created;
+    }
+
+    private Path file(long number) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, number, SUFFIX));
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warning("Ignoring " + file);
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
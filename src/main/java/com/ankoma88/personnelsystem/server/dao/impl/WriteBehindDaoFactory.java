@@ -0,0 +1,379 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.BatchPersistenceException;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.util.Settings.WRITE_BEHIND_FLUSH_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.WRITE_BEHIND_MAX_PENDING;
+import static com.ankoma88.personnelsystem.util.Settings.WRITE_BEHIND_REMEMBERED_VERSIONS;
+
+/**
+ * DaoFactory decorator whose DAOs acknowledge updates and deletes once they are in a local
+ * WriteAheadLog, and write them to the database later, in batches.
+ *
+ * Pending changes are coalesced per employee, so an employee edited many times between two flushes
+ * is written once. Every WRITE_BEHIND_FLUSH_MILLIS a background thread starts a new log segment and
+ * writes what was pending with updateAll and deleteAll; the older segments are deleted once that
+ * committed. A failed flush is retried with the next one. On startup the segments left by a crash
+ * are replayed: changes are idempotent, so replaying ones that already reached the database is harmless.
+ *
+ * read() sees pending changes, also while they are being flushed. A pending employee has a row version of
+ * its own, so a conditional update or delete is checked against the pending state when there is one.
+ * Once flushed the database's row version replaces it, but the pending one handed out before still matches
+ * until the employee is written again, so clients, caches and listeners holding it do not conflict.
+ * Creates go straight to the database.
+ * Other queries and cancelling a supervisor first flush what is pending, so they see every acknowledged change.
+ * Writers wait for a flush while more than WRITE_BEHIND_MAX_PENDING changes are pending.
+ */
+public class WriteBehindDaoFactory implements DaoFactory {
+    private static final Logger log = Logger.getLogger(WriteBehindDaoFactory.class.getName());
+
+    private final DaoFactory delegate;
+    private final WriteAheadLog wal;
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+
+    /** Guarded by this. Employee ids to their new state, null for a delete. */
+    private Map<Integer, Employee> pending = new HashMap<>();
+    /** Guarded by this. What the flush in progress writes, like pending */
+    private Map<Integer, Employee> flushing = Collections.emptyMap();
+    /**
+     * Guarded by this. Employees flushed and not changed since, most recent last: the pending row version
+     * they were handed out with, and the database's after the flush
+     */
+    private final Map<Integer, long[]> flushedRowVersions = new LinkedHashMap<Integer, long[]>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+            return size() > WRITE_BEHIND_REMEMBERED_VERSIONS;
+        }
+    };
+    /** Row versions of pending employees count down from here; database row versions are positive */
+    private long nextRowVersion = -1 - ThreadLocalRandom.current().nextLong(1L << 48);
+
+    public WriteBehindDaoFactory(DaoFactory delegate, Path logDirectory) throws IOException {
+        this.delegate = delegate;
+        this.wal = new WriteAheadLog(logDirectory);
+        List<Object> recovered = wal.recover();
+        for (Object change : recovered) {
+            if (change instanceof Employee) {
+                Employee employee = (Employee) change;
+                employee.setRowVersion(nextRowVersion--);
+                pending.put(employee.getId(), employee);
+            } else {
+                pending.put((Integer) change, null);
+            }
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Recovered " + recovered.size() + " logged changes for " + pending.size() + " employees");
+        }
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "write-behind-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (SQLException e) {
+                    log.log(Level.WARNING, "Write-behind flush failed, will retry", e);
+                }
+            }
+        }, 0, WRITE_BEHIND_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return delegate.getConnection();
+    }
+
+    @Override
+    public EmployeeDao getEmployeeDao(Connection connection) {
+        return new WriteBehindEmployeeDao(delegate.getEmployeeDao(connection), this);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Write every pending change to the database. Returns once they are committed, also when
+     * another thread was flushing already.
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            Map<Integer, Employee> batch;
+            long segment;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                try {
+                    segment = wal.rotate();
+                } catch (IOException e) {
+                    throw new SQLException("Could not rotate the write-ahead log", e);
+                }
+                batch = pending;
+                pending = new HashMap<>();
+                flushing = new HashMap<>(batch);
+            }
+
+            Map<Integer, long[]> flushed = new HashMap<>();
+            try {
+                write(batch, flushed);
+            } catch (SQLException e) {
+                requeue(batch);
+                throw e;
+            } finally {
+                flushed(flushed);
+            }
+            try {
+                wal.deleteThrough(segment);
+            } catch (IOException e) {
+                // Replaying them later is harmless
+                log.log(Level.WARNING, "Could not delete flushed log segments", e);
+            }
+        }
+    }
+
+    /** Flush what is pending and stop; call after the last request */
+    public void close() {
+        // Not shutdownNow: interrupting a flush would close the log's channel under it
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (SQLException e) {
+            log.log(Level.SEVERE, "Final write-behind flush failed, changes stay in the log", e);
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close the write-ahead log", e);
+        }
+    }
+
+    /** The pending state of an employee, or the database's if nothing is pending for it */
+    Employee read(int key, EmployeeDao dao) throws PersistenceException {
+        synchronized (this) {
+            if (pending.containsKey(key)) {
+                return copy(pending.get(key));
+            }
+            if (flushing.containsKey(key)) {
+                return copy(flushing.get(key));
+            }
+        }
+        return dao.read(key);
+    }
+
+    /**
+     * Log changes (employees to update, Integer ids to delete) and wait until they are durable.
+     * Changes to employees with a pending delete are NOT_FOUND and not logged.
+     */
+    List<ItemStatus> log(List<?> changes) throws PersistenceException {
+        return log(changes, null, null);
+    }
+
+    ItemStatus log(Object change, long rowVersion, long storedRowVersion) throws PersistenceException {
+        return log(Collections.singletonList(change), new long[]{rowVersion}, new long[]{storedRowVersion}).get(0);
+    }
+
+    /**
+     * Log changes whose rowVersions (0 for none) are still current: the pending state's, or storedRowVersions,
+     * read from the database before (0 if it had no such employee), when nothing is pending for them.
+     * Changes with a row version that is no longer current are CONFLICT and not logged.
+     */
+    List<ItemStatus> log(List<?> changes, long[] rowVersions, long[] storedRowVersions) throws PersistenceException {
+        List<ItemStatus> statuses = new ArrayList<>(changes.size());
+        List<Object> accepted = new ArrayList<>(changes.size());
+        long position;
+        boolean full;
+        synchronized (this) {
+            for (int i = 0; i < changes.size(); i++) {
+                Object change = changes.get(i);
+                Integer id = change instanceof Employee ? ((Employee) change).getId() : (Integer) change;
+                long expected = rowVersions == null ? 0 : rowVersions[i];
+                Map<Integer, Employee> states = pending.containsKey(id) ? pending
+                        : flushing.containsKey(id) ? flushing : null;
+                Employee state = states == null ? null : states.get(id);
+                long current = state != null ? state.getRowVersion() : storedRowVersions == null ? 0 : storedRowVersions[i];
+                long[] flushed = states == null ? flushedRowVersions.get(id) : null;
+                if (flushed != null && expected == flushed[0] && current == flushed[1]) {
+                    // Handed out while pending, and nobody wrote the employee since the flush
+                    expected = current;
+                }
+                if (state == null && states != null || expected != 0 && current == 0) {
+                    statuses.add(ItemStatus.NOT_FOUND);
+                } else if (expected != 0 && expected != current) {
+                    statuses.add(ItemStatus.CONFLICT);
+                } else {
+                    statuses.add(ItemStatus.OK);
+                    accepted.add(change);
+                }
+            }
+            if (accepted.isEmpty()) {
+                return statuses;
+            }
+            try {
+                position = wal.append(accepted);
+            } catch (IOException e) {
+                throw new PersistenceException(e);
+            }
+            for (Object change : accepted) {
+                flushedRowVersions.remove(change instanceof Employee ? ((Employee) change).getId() : change);
+                if (change instanceof Employee) {
+                    // Set on the caller's object too, so caches and listeners keeping it have the current one
+                    Employee employee = copy((Employee) change);
+                    employee.setRowVersion(nextRowVersion--);
+                    ((Employee) change).setRowVersion(employee.getRowVersion());
+                    pending.put(employee.getId(), employee);
+                } else {
+                    pending.put((Integer) change, null);
+                }
+            }
+            full = pending.size() > WRITE_BEHIND_MAX_PENDING;
+        }
+        try {
+            wal.sync(position);
+        } catch (IOException e) {
+            throw new PersistenceException(e);
+        }
+        if (full) {
+            try {
+                flush();
+            } catch (SQLException e) {
+                // The changes are logged, only the database is behind
+                log.log(Level.WARNING, "Write-behind flush failed, will retry", e);
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Write batch, removing what was committed; flushed gets the pending and the database's row version
+     * of the updates committed
+     */
+    private void write(Map<Integer, Employee> batch, Map<Integer, long[]> flushed) throws SQLException {
+        List<Employee> updates = new ArrayList<>();
+        List<Integer> deletes = new ArrayList<>();
+        for (Map.Entry<Integer, Employee> entry : batch.entrySet()) {
+            if (entry.getValue() != null) {
+                // Written unconditionally: the pending row version is our own, not the database's
+                Employee update = copy(entry.getValue());
+                update.setRowVersion(0);
+                updates.add(update);
+            } else {
+                deletes.add(entry.getKey());
+            }
+        }
+        int[] keys = new int[deletes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = deletes.get(i);
+        }
+
+        try (Connection connection = delegate.getConnection()) {
+            EmployeeDao dao = delegate.getEmployeeDao(connection);
+            if (!updates.isEmpty()) {
+                try {
+                    dao.updateAll(updates);
+                } catch (BatchPersistenceException e) {
+                    List<Integer> ids = new ArrayList<>(updates.size());
+                    for (Employee employee : updates) {
+                        ids.add(employee.getId());
+                    }
+                    dropFailed(batch, ids, e.getStatuses());
+                    throw new SQLException("Batch update failed", e);
+                }
+                // Committed: a failure below must not write them again
+                for (Employee employee : updates) {
+                    Employee written = batch.remove(employee.getId());
+                    if (employee.getRowVersion() != 0) {
+                        flushed.put(employee.getId(), new long[]{written.getRowVersion(), employee.getRowVersion()});
+                    }
+                }
+            }
+            if (keys.length > 0) {
+                try {
+                    dao.deleteAll(keys);
+                } catch (BatchPersistenceException e) {
+                    dropFailed(batch, deletes, e.getStatuses());
+                    throw new SQLException("Batch delete failed", e);
+                }
+            }
+            log.fine("Flushed " + updates.size() + " updates and " + keys.length + " deletes");
+        } catch (PersistenceException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /** Changes the database rejects would fail every flush: log and forget them */
+    private static void dropFailed(Map<Integer, Employee> batch, List<Integer> ids, List<ItemStatus> statuses) {
+        for (int i = 0; i < statuses.size(); i++) {
+            if (statuses.get(i) == ItemStatus.FAILED) {
+                batch.remove(ids.get(i));
+                log.severe("Database rejected the change of employee " + ids.get(i) + ", dropping it");
+            }
+        }
+    }
+
+    /** The flush in progress ended: remember the row versions of what it wrote, unless changed again since */
+    private synchronized void flushed(Map<Integer, long[]> rowVersions) {
+        for (Map.Entry<Integer, long[]> entry : rowVersions.entrySet()) {
+            if (!pending.containsKey(entry.getKey())) {
+                flushedRowVersions.put(entry.getKey(), entry.getValue());
+            }
+        }
+        flushing = Collections.emptyMap();
+    }
+
+    /** Put back what could not be written, unless it has been changed again since */
+    private synchronized void requeue(Map<Integer, Employee> batch) {
+        for (Map.Entry<Integer, Employee> entry : batch.entrySet()) {
+            if (!pending.containsKey(entry.getKey())) {
+                pending.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static Employee copy(Employee employee) {
+        if (employee == null) {
+            return null;
+        }
+        Employee copy = new Employee(employee.getFullName(), employee.getDepartment(), employee.getSupervisor(),
+                employee.getComment());
+        copy.setId(employee.getId());
+        copy.setRowVersion(employee.getRowVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,163 @@
+package com.ankoma88.personnelsystem.server.dao.impl;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
+import com.ankoma88.personnelsystem.server.dao.exceptions.ConflictException;
+import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EmployeeDao decorator handing updates and deletes to a WriteBehindDaoFactory.
+ * Queries the pending changes could affect wait until they are flushed.
+ */
+public class WriteBehindEmployeeDao implements EmployeeDao {
+
+    private final EmployeeDao delegate;
+    private final WriteBehindDaoFactory factory;
+
+    public WriteBehindEmployeeDao(EmployeeDao delegate, WriteBehindDaoFactory factory) {
+        this.delegate = delegate;
+        this.factory = factory;
+    }
+
+    @Override
+    public Employee create(Employee e) throws PersistenceException {
+        return delegate.create(e);
+    }
+
+    @Override
+    public Employee read(int key) throws PersistenceException {
+        return factory.read(key, delegate);
+    }
+
+    @Override
+    public Employee update(Employee employee) throws PersistenceException {
+        Employee current = employee.getId() == null ? null : read(employee.getId());
+        if (current == null) {
+            throw new PersistenceException("No such record: " + employee.getId());
+        }
+        check(factory.log(employee, employee.getRowVersion(), current.getRowVersion()), employee.getId());
+        return read(employee.getId());
+    }
+
+    @Override
+    public void delete(int key) throws PersistenceException {
+        delete(key, 0);
+    }
+
+    @Override
+    public void delete(int key, long rowVersion) throws PersistenceException {
+        Employee current = read(key);
+        if (current == null) {
+            throw new PersistenceException("No such record: " + key);
+        }
+        check(factory.log(key, rowVersion, current.getRowVersion()), key);
+    }
+
+    private void check(ItemStatus status, int key) throws PersistenceException {
+        Employee current;
+        if (status == ItemStatus.CONFLICT && (current = read(key)) != null) {
+            throw new ConflictException(current);
+        }
+        if (status != ItemStatus.OK) {
+            throw new PersistenceException("No such record: " + key);
+        }
+    }
+
+    @Override
+    public List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException {
+        return delegate.createAll(employees);
+    }
+
+    /**
+     * Only employees deleted by a pending change are reported NOT_FOUND; updates of ids the
+     * database does not have are acknowledged and have no effect when flushed.
+     * Employees sent with a row version are read first, to check it.
+     */
+    @Override
+    public List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException {
+        long[] rowVersions = new long[employees.size()];
+        long[] stored = new long[employees.size()];
+        for (int i = 0; i < employees.size(); i++) {
+            Employee employee = employees.get(i);
+            if (employee.getId() == null) {
+                throw new PersistenceException("Employee without id in batch update");
+            }
+            rowVersions[i] = employee.getRowVersion();
+            if (rowVersions[i] != 0) {
+                Employee current = read(employee.getId());
+                stored[i] = current == null ? 0 : current.getRowVersion();
+            }
+        }
+        return factory.log(employees, rowVersions, stored);
+    }
+
+    /** See updateAll */
+    @Override
+    public List<ItemStatus> deleteAll(int[] keys) throws PersistenceException {
+        List<Integer> ids = new ArrayList<>(keys.length);
+        for (int key : keys) {
+            ids.add(key);
+        }
+        return factory.log(ids);
+    }
+
+    @Override
+    public List<Employee> getAll() throws SQLException {
+        factory.flush();
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<Employee> getPage(int afterId, int limit) throws SQLException {
+        factory.flush();
+        return delegate.getPage(afterId, limit);
+    }
+
+    @Override
+    public EmployeeCursor openCursor(int fetchSize) throws SQLException {
+        factory.flush();
+        return delegate.openCursor(fetchSize);
+    }
+
+    @Override
+    public List<Employee> getChangedSince(long rowVersion) throws SQLException {
+        factory.flush();
+        return delegate.getChangedSince(rowVersion);
+    }
+
+    /** Pending changes get row versions at least this high when they are flushed */
+    @Override
+    public long getMinActiveRowVersion() throws SQLException {
+        return delegate.getMinActiveRowVersion();
+    }
+
+    @Override
+    public int[] getIds() throws SQLException {
+        factory.flush();
+        return delegate.getIds();
+    }
+
+    @Override
+    public List<Employee> getSupervisors() throws SQLException {
+        factory.flush();
+        return delegate.getSupervisors();
+    }
+
+    @Override
+    public List<Employee> getSubordinates(int key) throws SQLException {
+        factory.flush();
+        return delegate.getSubordinates(key);
+    }
+
+    @Override
+    public List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException {
+        factory.flush();
+        return delegate.updateCancelSupervisorOfFormerSubordinates(key);
+    }
+}
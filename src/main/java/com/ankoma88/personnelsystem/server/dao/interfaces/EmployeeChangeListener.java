@@ -0,0 +1,22 @@
+package com.ankoma88.personnelsystem.server.dao.interfaces;
+
+import com.ankoma88.personnelsystem.model.Employee;
+
+/**
+ * Receives employee mutations after they were stored successfully
+ */
+public interface EmployeeChangeListener {
+
+    void employeeCreated(Employee employee);
+
+    /** @param employee the state now stored */
+    void employeeUpdated(Employee employee);
+
+    void employeeDeleted(int id);
+
+    /** Everyone who reported to supervisor now has supervisor 0 */
+    void supervisorCancelled(int supervisor);
+
+    /** Changes may have been missed: forget whatever was derived from earlier ones */
+    void resync();
+}
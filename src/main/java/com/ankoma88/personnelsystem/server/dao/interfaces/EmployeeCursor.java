@@ -0,0 +1,17 @@
+package com.ankoma88.personnelsystem.server.dao.interfaces;
+
+import com.ankoma88.personnelsystem.model.Employee;
+
+import java.sql.SQLException;
+
+/**
+ * Forward-only pass over employees that holds one row at a time; must be closed
+ */
+public interface EmployeeCursor extends AutoCloseable {
+
+    /** @return the next employee or null after the last one */
+    Employee next() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
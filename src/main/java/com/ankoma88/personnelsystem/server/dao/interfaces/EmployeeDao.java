@@ -2,6 +2,7 @@ package com.ankoma88.personnelsystem.server.dao.interfaces;
 
 import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
 import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
 
 import java.sql.SQLException;
 import java.util.List;
@@ -10,14 +11,52 @@ public interface EmployeeDao {
 
     Employee create(Employee e) throws PersistenceException;
     Employee read(int key) throws PersistenceException;
+
+    /**
+     * With a row version, only if the employee still has it; a ConflictException carries the current state
+     * otherwise. Batch updates report that as CONFLICT.
+     */
     Employee update(Employee employee) throws PersistenceException;
     void delete(int key) throws PersistenceException;
+
+    /** Delete only if the employee still has rowVersion (unless it is 0), like update */
+    void delete(int key, long rowVersion) throws PersistenceException;
+
+    /*
+     * Batch variants run in one transaction. Statuses are in input order; if any item fails
+     * nothing is applied and a BatchPersistenceException carries the statuses.
+     */
+
+    /** Created employees get their generated ids and row versions set, updated ones their new row versions */
+    List<ItemStatus> createAll(List<Employee> employees) throws PersistenceException;
+
+    List<ItemStatus> updateAll(List<Employee> employees) throws PersistenceException;
+
+    List<ItemStatus> deleteAll(int[] keys) throws PersistenceException;
     List<Employee> getAll() throws SQLException;
 
+    /** Up to limit employees with id greater than afterId, in id order */
+    List<Employee> getPage(int afterId, int limit) throws SQLException;
+
+    /** All employees in id order, fetched from the database fetchSize rows at a time */
+    EmployeeCursor openCursor(int fetchSize) throws SQLException;
+
+    /** Employees whose row version is greater than the given one, in id order */
+    List<Employee> getChangedSince(long rowVersion) throws SQLException;
+
+    /**
+     * Lowest row version a write not yet committed may have; everything committed later gets it or a higher one.
+     * Row versions are given out as rows are written, not as they commit.
+     */
+    long getMinActiveRowVersion() throws SQLException;
+
+    /** Ids of all employees, ascending */
+    int[] getIds() throws SQLException;
+
     List<Employee> getSupervisors() throws SQLException;
 
     List<Employee> getSubordinates(int key) throws SQLException;
 
-
-    void updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException;
+    /** Move key's subordinates to the top level; returns them as stored now, with their new row versions */
+    List<Employee> updateCancelSupervisorOfFormerSubordinates(int key) throws SQLException;
 }
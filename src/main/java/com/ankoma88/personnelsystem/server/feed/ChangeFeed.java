@@ -0,0 +1,73 @@
+package com.ankoma88.personnelsystem.server.feed;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeChangeListener;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import static com.ankoma88.personnelsystem.util.Settings.SUBSCRIBER_QUEUE_LIMIT;
+
+/**
+ * Fans stored employee changes out to subscribed clients.
+ * Register it with the NotifyingDaoFactory that processes requests, so every successful
+ * create, update, delete and supervisor cancellation reaches the subscribers.
+ */
+public class ChangeFeed implements EmployeeChangeListener {
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Start pushing changes to subscriber; pushes run on executor
+     */
+    public Subscription subscribe(Subscriber subscriber, Executor executor) {
+        Subscription subscription = new Subscription(subscriber, executor, SUBSCRIBER_QUEUE_LIMIT);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+        subscription.cancel();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void employeeCreated(Employee employee) {
+        for (Subscription subscription : subscriptions) {
+            subscription.changed(employee);
+        }
+    }
+
+    @Override
+    public void employeeUpdated(Employee employee) {
+        for (Subscription subscription : subscriptions) {
+            subscription.changed(employee);
+        }
+    }
+
+    @Override
+    public void employeeDeleted(int id) {
+        for (Subscription subscription : subscriptions) {
+            subscription.deleted(id);
+        }
+    }
+
+    @Override
+    public void supervisorCancelled(int supervisor) {
+        for (Subscription subscription : subscriptions) {
+            subscription.supervisorCancelled(supervisor);
+        }
+    }
+
+    @Override
+    public void resync() {
+        for (Subscription subscription : subscriptions) {
+            subscription.resync();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ankoma88.personnelsystem.server.feed;
+
+import com.ankoma88.personnelsystem.model.Message;
+
+import java.io.IOException;
+
+/**
+ * Client end of a Subscription, usually a connection
+ */
+public interface Subscriber {
+
+    /**
+     * Whether the client is behind on reading; changes keep coalescing until it catches up.
+     * Must not block.
+     */
+    boolean isBacklogged();
+
+    void push(Message change) throws IOException;
+}
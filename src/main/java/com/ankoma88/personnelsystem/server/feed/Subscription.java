@@ -0,0 +1,145 @@
+package com.ankoma88.personnelsystem.server.feed;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.Message;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Changes waiting to be pushed to one subscriber, delivered on an executor so publishers never wait for clients.
+ *
+ * Pending changes are keyed by employee (and by supervisor for cancellations): a newer change replaces
+ * the pending one and moves to the back, so a slow client receives each employee's latest state once,
+ * still in an order that replays correctly. When more than the limit are pending they are all dropped
+ * and the client gets RESYNC instead.
+ */
+public class Subscription {
+
+    private final Subscriber subscriber;
+    private final Executor executor;
+    private final int limit;
+
+    /** Guarded by this. Employee ids as keys; cancellations use ~supervisor, ids being positive. */
+    private final LinkedHashMap<Integer, Message> pending = new LinkedHashMap<>();
+    private boolean overflowed;
+    private boolean draining;
+    private boolean cancelled;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    Subscription(Subscriber subscriber, Executor executor, int limit) {
+        this.subscriber = subscriber;
+        this.executor = executor;
+        this.limit = limit;
+    }
+
+    void changed(Employee employee) {
+        offer(employee.getId(), new Message(Command.EMPLOYEE_CHANGED, employee));
+    }
+
+    void deleted(int id) {
+        offer(id, new Message(Command.EMPLOYEE_DELETED, id));
+    }
+
+    void supervisorCancelled(int supervisor) {
+        offer(~supervisor, new Message(Command.SUPERVISOR_CANCELLED, supervisor));
+    }
+
+    /**
+     * The subscriber may have caught up with its output: push what is pending
+     */
+    public void wakeUp() {
+        synchronized (this) {
+            if (draining || cancelled || (pending.isEmpty() && !overflowed)) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            // Server is shutting down
+            cancel();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Drop what is pending and send RESYNC instead */
+    void resync() {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            pending.clear();
+            overflowed = true;
+        }
+        wakeUp();
+    }
+
+    synchronized void cancel() {
+        cancelled = true;
+        pending.clear();
+    }
+
+    private void offer(int key, Message change) {
+        synchronized (this) {
+            if (cancelled || overflowed) {
+                // A pending RESYNC covers this change
+                return;
+            }
+            pending.remove(key);
+            if (pending.size() >= limit) {
+                pending.clear();
+                overflowed = true;
+            } else {
+                pending.put(key, change);
+            }
+        }
+        wakeUp();
+    }
+
+    private void drain() {
+        try {
+            while (!subscriber.isBacklogged()) {
+                Message next;
+                synchronized (this) {
+                    if (cancelled || (pending.isEmpty() && !overflowed)) {
+                        draining = false;
+                        return;
+                    }
+                    if (overflowed) {
+                        overflowed = false;
+                        next = new Message(Command.RESYNC);
+                    } else {
+                        Iterator<Message> it = pending.values().iterator();
+                        next = it.next();
+                        it.remove();
+                    }
+                }
+                subscriber.push(next);
+            }
+        } catch (IOException e) {
+            cancel();
+        }
+        synchronized (this) {
+            draining = false;
+        }
+        // The backlog may have cleared before we marked ourselves idle, in which case nobody else wakes us
+        if (!subscriber.isBacklogged()) {
+            wakeUp();
+        }
+    }
+}
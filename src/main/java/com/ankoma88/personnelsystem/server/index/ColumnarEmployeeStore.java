@@ -0,0 +1,411 @@
+package com.ankoma88.personnelsystem.server.index;
+
+import com.ankoma88.personnelsystem.model.Employee;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of employees stored column by column: ids and supervisors in int arrays, row versions
+ * in a long array, departments as codes into a dictionary, names and comments as UTF-8 in one byte array each.
+ * A row costs its UTF-8 text plus about thirty bytes, instead of the few hundred bytes
+ * an Employee object with its Integers and Strings takes.
+ *
+ * Rows are sorted by id. get() and view() return read-only Employee views that decode
+ * their fields on access; they are created on demand and hold nothing but the row number.
+ */
+public class ColumnarEmployeeStore {
+
+    private final int size;
+    private final int[] ids;
+    private final int[] supervisors;
+    private final long[] rowVersions;
+    /** Index into departmentNames, -1 for null */
+    private final int[] departments;
+    private final String[] departmentNames;
+    private final StringColumn fullNames;
+    private final StringColumn comments;
+    /** Data version of every row */
+    private final long version;
+    private final Footprint footprint;
+
+    private ColumnarEmployeeStore(Builder builder) {
+        size = builder.size;
+        version = builder.version;
+        ids = Arrays.copyOf(builder.ids, size);
+        supervisors = Arrays.copyOf(builder.supervisors, size);
+        rowVersions = Arrays.copyOf(builder.rowVersions, size);
+        departments = Arrays.copyOf(builder.departments, size);
+        departmentNames = new String[builder.departmentNames.size()];
+        for (Map.Entry<String, Integer> entry : builder.departmentNames.entrySet()) {
+            departmentNames[entry.getValue()] = entry.getKey();
+        }
+        fullNames = builder.fullNames.trim(size);
+        comments = builder.comments.trim(size);
+
+        long columnar = arrayBytes(4L * size) * 3 + arrayBytes(8L * size) + fullNames.bytes() + comments.bytes()
+                + arrayBytes(4L * departmentNames.length);
+        for (String name : departmentNames) {
+            columnar += stringBytes(name);
+        }
+        footprint = new Footprint(size, columnar, builder.objectBytes + hashMapBytes(size));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Row of the employee with the given id, negative if there is none */
+    public int indexOf(int id) {
+        int row = Arrays.binarySearch(ids, 0, size, id);
+        return row < 0 ? -1 : row;
+    }
+
+    /** First row with an id greater than the given one, size() if there is none */
+    public int rowAfter(int id) {
+        int row = Arrays.binarySearch(ids, 0, size, id);
+        return row < 0 ? -row - 1 : row + 1;
+    }
+
+    public int id(int row) {
+        return ids[row];
+    }
+
+    public int supervisor(int row) {
+        return supervisors[row];
+    }
+
+    public String fullName(int row) {
+        return fullNames.get(row);
+    }
+
+    public String department(int row) {
+        int code = departments[row];
+        return code < 0 ? null : departmentNames[code];
+    }
+
+    /** Index of the row's department in the dictionary, -1 for null */
+    public int departmentCode(int row) {
+        return departments[row];
+    }
+
+    public int departmentCount() {
+        return departmentNames.length;
+    }
+
+    public String departmentName(int code) {
+        return departmentNames[code];
+    }
+
+    public long rowVersion(int row) {
+        return rowVersions[row];
+    }
+
+    public String comment(int row) {
+        return comments.get(row);
+    }
+
+    /** The employee with the given id, null if there is none */
+    public Employee get(int id) {
+        int row = indexOf(id);
+        return row < 0 ? null : view(row);
+    }
+
+    public Employee view(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        }
+        return new View(this, row);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Footprint getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Collects employees in ascending id order, as EmployeeDao.openCursor returns them
+     */
+    public static class Builder {
+        private int size;
+        private int[] ids = new int[1024];
+        private int[] supervisors = new int[1024];
+        private long[] rowVersions = new long[1024];
+        private int[] departments = new int[1024];
+        private final Map<String, Integer> departmentNames = new HashMap<>();
+        private final StringColumn fullNames = new StringColumn();
+        private final StringColumn comments = new StringColumn();
+        private long version;
+        /** What the same rows would take as Employee objects */
+        private long objectBytes;
+
+        public Builder add(Employee employee) {
+            int id = employee.getId();
+            if (size > 0 && id <= ids[size - 1]) {
+                throw new IllegalArgumentException("Employees must be added in ascending id order, got " + id
+                        + " after " + ids[size - 1]);
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                supervisors = Arrays.copyOf(supervisors, size * 2);
+                rowVersions = Arrays.copyOf(rowVersions, size * 2);
+                departments = Arrays.copyOf(departments, size * 2);
+            }
+            ids[size] = id;
+            supervisors[size] = employee.getSupervisor() == null ? 0 : employee.getSupervisor();
+            rowVersions[size] = employee.getRowVersion();
+            departments[size] = code(employee.getDepartment());
+            fullNames.add(employee.getFullName());
+            comments.add(employee.getComment());
+            size++;
+
+            objectBytes += EMPLOYEE_BYTES + 2 * INTEGER_BYTES + stringBytes(employee.getFullName())
+                    + stringBytes(employee.getDepartment()) + stringBytes(employee.getComment());
+            return this;
+        }
+
+        /** Data version the rows are reported with, 0 by default */
+        public Builder version(long version) {
+            this.version = version;
+            return this;
+        }
+
+        public ColumnarEmployeeStore build() {
+            return new ColumnarEmployeeStore(this);
+        }
+
+        private int code(String department) {
+            if (department == null) {
+                return -1;
+            }
+            Integer code = departmentNames.get(department);
+            if (code == null) {
+                code = departmentNames.size();
+                departmentNames.put(department, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Heap taken by the columns compared with an IntObjectHashMap of Employee objects holding the same rows.
+     * Estimates assume a 64-bit JVM with compressed references and char[] backed Strings.
+     */
+    public static class Footprint {
+        private final int rows;
+        private final long columnarBytes;
+        private final long objectBytes;
+
+        Footprint(int rows, long columnarBytes, long objectBytes) {
+            this.rows = rows;
+            this.columnarBytes = columnarBytes;
+            this.objectBytes = objectBytes;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getColumnarBytes() {
+            return columnarBytes;
+        }
+
+        public long getObjectBytes() {
+            return objectBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d employees: %,d bytes columnar, %,d bytes as objects (%.1f%%)", rows,
+                    columnarBytes, objectBytes, objectBytes == 0 ? 100.0 : 100.0 * columnarBytes / objectBytes);
+        }
+    }
+
+    /** Strings back to back in one UTF-8 byte array; row i spans offsets[i] to offsets[i + 1] */
+    private static class StringColumn {
+        private byte[] bytes = new byte[16 * 1024];
+        private int length;
+        private int[] offsets = new int[1025];
+        private int count;
+        private final BitSet nulls = new BitSet();
+
+        void add(String s) {
+            if (count + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            if (s == null) {
+                nulls.set(count);
+            } else {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                if (length + utf8.length > bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + utf8.length));
+                }
+                System.arraycopy(utf8, 0, bytes, length, utf8.length);
+                length += utf8.length;
+            }
+            offsets[++count] = length;
+        }
+
+        String get(int row) {
+            if (nulls.get(row)) {
+                return null;
+            }
+            return new String(bytes, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+        }
+
+        StringColumn trim(int rows) {
+            bytes = Arrays.copyOf(bytes, length);
+            offsets = Arrays.copyOf(offsets, rows + 1);
+            return this;
+        }
+
+        long bytes() {
+            return arrayBytes(length) + arrayBytes(4L * offsets.length) + arrayBytes(nulls.size() / 8);
+        }
+    }
+
+    /**
+     * Read-only Employee backed by a row; serialized as a plain Employee
+     */
+    private static final class View extends Employee {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ColumnarEmployeeStore store;
+        private final transient int row;
+
+        View(ColumnarEmployeeStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override
+        public Integer getId() {
+            return store.id(row);
+        }
+
+        @Override
+        public String getFullName() {
+            return store.fullName(row);
+        }
+
+        @Override
+        public String getDepartment() {
+            return store.department(row);
+        }
+
+        @Override
+        public Integer getSupervisor() {
+            return store.supervisor(row);
+        }
+
+        @Override
+        public String getComment() {
+            return store.comment(row);
+        }
+
+        @Override
+        public long getVersion() {
+            return store.version;
+        }
+
+        @Override
+        public long getRowVersion() {
+            return store.rowVersion(row);
+        }
+
+        @Override
+        public void setId(int id) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public void setFullName(String fullName) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public void setDepartment(String department) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public void setSupervisor(Integer supervisor) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public void setComment(String comment) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public void setVersion(long version) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public void setRowVersion(long rowVersion) {
+            throw new UnsupportedOperationException("Read-only employee view");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Employee)) return false;
+
+            Employee employee = (Employee) o;
+            return getId().equals(employee.getId()) && getFullName().equals(employee.getFullName())
+                    && getDepartment().equals(employee.getDepartment());
+        }
+
+        @Override
+        public int hashCode() {
+            int result = getId();
+            result = 31 * result + getFullName().hashCode();
+            result = 31 * result + getDepartment().hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return getFullName();
+        }
+
+        private Object writeReplace() {
+            Employee copy = new Employee(getFullName(), getDepartment(), getSupervisor(), getComment());
+            copy.setId(getId());
+            copy.setVersion(getVersion());
+            copy.setRowVersion(getRowVersion());
+            return copy;
+        }
+    }
+
+    /*
+     * Size estimates, 64-bit JVM with compressed references: 12 byte object headers,
+     * 16 byte array headers, everything padded to 8 bytes.
+     */
+
+    /** Header, five references and two longs */
+    private static final long EMPLOYEE_BYTES = 48;
+    private static final long INTEGER_BYTES = 16;
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 24 + arrayBytes(2L * s.length());
+    }
+
+    private static long arrayBytes(long payload) {
+        return (16 + payload + 7) & ~7L;
+    }
+
+    /** Key and value arrays of an IntObjectHashMap holding rows entries */
+    private static long hashMapBytes(int rows) {
+        long capacity = Long.highestOneBit(Math.max((long) (rows / 0.6f), 8) - 1) << 1;
+        return arrayBytes(4 * capacity) * 2;
+    }
+}
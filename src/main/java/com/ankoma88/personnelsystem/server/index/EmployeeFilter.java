@@ -0,0 +1,48 @@
+package com.ankoma88.personnelsystem.server.index;
+
+import java.util.Arrays;
+
+/**
+ * Condition for the org chart's filter and count queries: employees in a department
+ * (compared ignoring case) and/or reporting directly to one of a set of supervisors.
+ * A null condition matches everyone.
+ */
+public class EmployeeFilter {
+
+    private final String department;
+    /** Sorted, without duplicates */
+    private final int[] supervisors;
+
+    public EmployeeFilter(String department, int[] supervisors) {
+        this.department = department;
+        if (supervisors == null) {
+            this.supervisors = null;
+        } else {
+            int[] sorted = supervisors.clone();
+            Arrays.sort(sorted);
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[n++] = sorted[i];
+                }
+            }
+            this.supervisors = Arrays.copyOf(sorted, n);
+        }
+    }
+
+    public String getDepartment() {
+        return department;
+    }
+
+    public int[] getSupervisors() {
+        return supervisors;
+    }
+
+    boolean matchesDepartment(String value) {
+        return department == null || department.equalsIgnoreCase(value);
+    }
+
+    boolean matchesSupervisor(int supervisor) {
+        return supervisors == null || Arrays.binarySearch(supervisors, supervisor) >= 0;
+    }
+}
@@ -0,0 +1,825 @@
+package com.ankoma88.personnelsystem.server.index;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.GroupCount;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeChangeListener;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+import com.ankoma88.personnelsystem.util.IntIntHashMap;
+import com.ankoma88.personnelsystem.util.IntList;
+import com.ankoma88.personnelsystem.util.IntLongHashMap;
+import com.ankoma88.personnelsystem.util.IntObjectHashMap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import static com.ankoma88.personnelsystem.util.Settings.MAX_PAGE_SIZE;
+
+/**
+ * In-memory copy of the reporting structure: every employee by id and, for each supervisor id,
+ * the ids of the employees reporting to it (supervisor 0 holds the top level).
+ *
+ * Loaded with one full read and then kept current through EmployeeChangeListener events;
+ * events arriving while a load runs are replayed on top of it. After the refresh interval, or a resync,
+ * the index needs a reload to pick up changes made directly in the database; it goes on answering
+ * from the current data until the reload swaps in the new one.
+ *
+ * Employees live in a ColumnarEmployeeStore built by each load; employees changed since then
+ * are kept as objects on top of it until the next load folds them in.
+ * A SearchIndex over their text is maintained alongside.
+ *
+ * Every change raises a data version and stamps the employees it touches with it; the rows of a snapshot
+ * carry the version of the load. The high bits of a version are an epoch drawn at random by each index,
+ * so versions handed out by another node or an earlier process are recognised as foreign rather than
+ * compared against this index's own.
+ * Since the last load the index also remembers when employees were deleted and when a supervisor's team
+ * changed, which is enough to tell what changed since a given version after it.
+ */
+public class OrgChartIndex implements EmployeeChangeListener {
+    private static final Logger log = Logger.getLogger(OrgChartIndex.class.getName());
+    private static final int EPOCH_SHIFT = 40;
+
+    private final long refreshMillis;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadLock = new Object();
+    /** High bits of every version this index hands out; the low EPOCH_SHIFT bits count changes */
+    private final long epoch = (long) ThreadLocalRandom.current().nextInt(1, 1 << (63 - EPOCH_SHIFT)) << EPOCH_SHIFT;
+
+    /** Guarded by lock */
+    private ColumnarEmployeeStore snapshot;
+    /** Snapshot rows deleted or superseded by an entry in changed */
+    private BitSet replaced;
+    private IntObjectHashMap<Employee> changed;
+    private int size;
+    private IntObjectHashMap<IntList> children;
+    private SearchIndex searchIndex;
+    private List<Change> pending;
+    private long version = epoch;
+    /** Since the load: when employees were deleted, and when someone joined or left a supervisor's team */
+    private IntLongHashMap deletedAt;
+    private IntLongHashMap teamChangedAt;
+
+    private volatile boolean loaded;
+    private volatile long loadedAt;
+    /** Invalidated since the current load started */
+    private volatile boolean stale;
+
+    public OrgChartIndex(long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+    }
+
+    /** Whether the index can answer queries, even if a reload is due */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Whether a load is due: the index was never loaded, was invalidated, or is older than the refresh interval */
+    public boolean needsRefresh() {
+        return !loaded || stale || System.currentTimeMillis() - loadedAt >= refreshMillis;
+    }
+
+    /** Make the next load() reload the index */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /** Estimated heap taken by the last snapshot, 0 before the first load */
+    public long getSnapshotBytes() {
+        lock.readLock().lock();
+        try {
+            return snapshot == null ? 0 : snapshot.getFootprint().getColumnarBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * (Re)build the index from dao.openCursor() unless another thread just did; queries keep using
+     * the current data meanwhile
+     */
+    public void load(EmployeeDao dao) throws SQLException {
+        load(dao, null);
+    }
+
+    /**
+     * Like load(dao), reading the saved snapshot caught up with the database instead when there is one
+     */
+    public void load(EmployeeDao dao, OrgChartSnapshot saved) throws SQLException {
+        synchronized (loadLock) {
+            if (!needsRefresh()) {
+                return;
+            }
+            long loadVersion;
+            lock.writeLock().lock();
+            try {
+                // A resync from now on needs another load
+                stale = false;
+                pending = new ArrayList<>();
+                loadVersion = ++version;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            ColumnarEmployeeStore.Builder builder = new ColumnarEmployeeStore.Builder().version(loadVersion);
+            IntObjectHashMap<IntList> newChildren = new IntObjectHashMap<>();
+            SearchIndex newSearchIndex = new SearchIndex();
+            boolean read = false;
+            try (EmployeeCursor cursor = saved != null ? saved.catchUp(dao) : dao.openCursor(MAX_PAGE_SIZE)) {
+                Employee e;
+                while ((e = cursor.next()) != null) {
+                    builder.add(e);
+                    child(newChildren, supervisorOf(e)).add(e.getId());
+                    newSearchIndex.add(e);
+                }
+                read = true;
+            } finally {
+                if (!read) {
+                    lock.writeLock().lock();
+                    try {
+                        pending = null;
+                        stale = true;
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+            ColumnarEmployeeStore newSnapshot = builder.build();
+            log.info("Org chart loaded, " + newSnapshot.getFootprint());
+
+            lock.writeLock().lock();
+            try {
+                snapshot = newSnapshot;
+                replaced = new BitSet(newSnapshot.size());
+                changed = new IntObjectHashMap<>();
+                size = newSnapshot.size();
+                children = newChildren;
+                searchIndex = newSearchIndex;
+                deletedAt = new IntLongHashMap();
+                teamChangedAt = new IntLongHashMap();
+                for (Change event : pending) {
+                    event.run();
+                }
+                pending = null;
+                loadedAt = System.currentTimeMillis();
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /** Version of the latest change */
+    public long getVersion() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Whether version was handed out by this index, rather than by another node or an earlier process */
+    public boolean isOwnVersion(long version) {
+        return (version & -(1L << EPOCH_SHIFT)) == epoch;
+    }
+
+    /**
+     * Version of the latest change to the list getSubordinates returns: to one of the subordinates,
+     * or someone joining or leaving the team
+     */
+    public long getSubordinatesVersion(int supervisor) {
+        lock.readLock().lock();
+        try {
+            long latest = Math.max(snapshot.getVersion(), teamChangedAt.get(supervisor));
+            IntList ids = children.get(supervisor);
+            for (int i = 0; ids != null && i < ids.size(); i++) {
+                Employee e = changed.get(ids.get(i));
+                if (e != null) {
+                    latest = Math.max(latest, e.getVersion());
+                }
+            }
+            return latest;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Employees created or updated and ids deleted after the given version, in id order;
+     * null if the index does not know, because the version is from before the last load or not one of its own
+     */
+    public Delta changesSince(final long since) {
+        lock.readLock().lock();
+        try {
+            if (!isOwnVersion(since) || since < snapshot.getVersion() || since > version) {
+                return null;
+            }
+            int[] changedIds = changed.keys();
+            Arrays.sort(changedIds);
+            List<Employee> employees = new ArrayList<>();
+            for (int id : changedIds) {
+                Employee e = changed.get(id);
+                if (e.getVersion() > since) {
+                    employees.add(e);
+                }
+            }
+            final IntList deleted = new IntList();
+            deletedAt.forEach(new IntLongHashMap.Visitor() {
+                @Override
+                public void visit(int id, long at) {
+                    if (at > since) {
+                        deleted.add(id);
+                    }
+                }
+            });
+            int[] deletedIds = deleted.toArray();
+            Arrays.sort(deletedIds);
+            return new Delta(version, employees, deletedIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Everyone, in id order */
+    public List<Employee> getAll() {
+        return filter(new EmployeeFilter(null, null), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** The employee with the given id, null if there is none */
+    public Employee get(int id) {
+        lock.readLock().lock();
+        try {
+            return lookup(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Employees whose supervisor is the given id */
+    public List<Employee> getSubordinates(int supervisor) {
+        lock.readLock().lock();
+        try {
+            return resolve(children.get(supervisor));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Employees that have subordinates or no supervisor themselves */
+    public List<Employee> getSupervisors() {
+        lock.readLock().lock();
+        try {
+            final List<Employee> result = new ArrayList<>();
+            for (int row = 0; row < snapshot.size(); row++) {
+                if (!replaced.get(row) && isSupervisor(snapshot.id(row), snapshot.supervisor(row))) {
+                    result.add(snapshot.view(row));
+                }
+            }
+            changed.forEach(new IntObjectHashMap.Visitor<Employee>() {
+                @Override
+                public void visit(int id, Employee e) {
+                    if (isSupervisor(id, supervisorOf(e))) {
+                        result.add(e);
+                    }
+                }
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The employee's supervisor, their supervisor and so on up to the top level */
+    public List<Employee> getReportingChain(int id) {
+        lock.readLock().lock();
+        try {
+            List<Employee> chain = new ArrayList<>();
+            Employee current = lookup(id);
+            // Bounded by the number of employees in case the data contains a cycle
+            for (int steps = 0; current != null && steps < size; steps++) {
+                int supervisor = supervisorOf(current);
+                if (supervisor == 0 || supervisor == id) {
+                    break;
+                }
+                current = lookup(supervisor);
+                if (current != null) {
+                    chain.add(current);
+                }
+            }
+            return chain;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Everyone reporting to the given employee directly or indirectly, breadth first */
+    public List<Employee> getSubtree(int id) {
+        lock.readLock().lock();
+        try {
+            IntList queue = new IntList();
+            IntObjectHashMap<Boolean> seen = new IntObjectHashMap<>();
+            queue.add(id);
+            seen.put(id, Boolean.TRUE);
+            for (int i = 0; i < queue.size(); i++) {
+                IntList subordinates = children.get(queue.get(i));
+                if (subordinates == null) {
+                    continue;
+                }
+                for (int j = 0; j < subordinates.size(); j++) {
+                    int child = subordinates.get(j);
+                    if (seen.put(child, Boolean.TRUE) == null) {
+                        queue.add(child);
+                    }
+                }
+            }
+            List<Employee> result = new ArrayList<>(queue.size() - 1);
+            for (int i = 1; i < queue.size(); i++) {
+                Employee e = lookup(queue.get(i));
+                if (e != null) {
+                    result.add(e);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Best matches for a SEARCH query, see SearchIndex */
+    public List<Employee> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            int[] ids = searchIndex.search(query, limit);
+            List<Employee> result = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                Employee e = lookup(id);
+                if (e != null) {
+                    result.add(e);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Employees matching filter with an id greater than afterId, in id order, at most limit of them */
+    public List<Employee> filter(EmployeeFilter filter, int afterId, final int limit) {
+        lock.readLock().lock();
+        try {
+            final List<Employee> result = new ArrayList<>();
+            scan(filter, afterId, new Match() {
+                @Override
+                public boolean matched(int id, int supervisor, int row, Employee changedEmployee) {
+                    result.add(row >= 0 ? snapshot.view(row) : changedEmployee);
+                    return result.size() < limit;
+                }
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(EmployeeFilter filter) {
+        lock.readLock().lock();
+        try {
+            final int[] count = new int[1];
+            scan(filter, Integer.MIN_VALUE, new Match() {
+                @Override
+                public boolean matched(int id, int supervisor, int row, Employee changedEmployee) {
+                    count[0]++;
+                    return true;
+                }
+            });
+            return count[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Headcount per department of the employees matching filter, largest first, at most limit groups */
+    public List<GroupCount> countByDepartment(EmployeeFilter filter, int limit) {
+        lock.readLock().lock();
+        try {
+            // Snapshot rows are counted by dictionary code, without looking at their text
+            final int[] byCode = new int[snapshot.departmentCount() + 1];
+            final Map<String, Integer> byName = new HashMap<>();
+            scan(filter, Integer.MIN_VALUE, new Match() {
+                @Override
+                public boolean matched(int id, int supervisor, int row, Employee changedEmployee) {
+                    if (row >= 0) {
+                        byCode[snapshot.departmentCode(row) + 1]++;
+                    } else {
+                        add(byName, changedEmployee.getDepartment(), 1);
+                    }
+                    return true;
+                }
+            });
+            for (int code = -1; code < snapshot.departmentCount(); code++) {
+                if (byCode[code + 1] > 0) {
+                    add(byName, code < 0 ? null : snapshot.departmentName(code), byCode[code + 1]);
+                }
+            }
+            List<GroupCount> groups = new ArrayList<>(byName.size());
+            for (Map.Entry<String, Integer> entry : byName.entrySet()) {
+                groups.add(new GroupCount(0, entry.getKey(), entry.getValue()));
+            }
+            return largest(groups, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of direct reports (span of control) per supervisor among the employees matching filter,
+     * largest first, at most limit groups. Supervisor 0 counts the top level.
+     */
+    public List<GroupCount> countBySupervisor(EmployeeFilter filter, int limit) {
+        lock.readLock().lock();
+        try {
+            final IntIntHashMap bySupervisor = new IntIntHashMap();
+            scan(filter, Integer.MIN_VALUE, new Match() {
+                @Override
+                public boolean matched(int id, int supervisor, int row, Employee changedEmployee) {
+                    bySupervisor.put(supervisor, bySupervisor.get(supervisor) + 1);
+                    return true;
+                }
+            });
+            final List<GroupCount> groups = new ArrayList<>(bySupervisor.size());
+            bySupervisor.forEach(new IntIntHashMap.Visitor() {
+                @Override
+                public void visit(int supervisor, int count) {
+                    groups.add(new GroupCount(supervisor, null, count));
+                }
+            });
+            return largest(groups, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void employeeCreated(Employee employee) {
+        // The caller's object travels on to caches and answers; keep the state it has now
+        final Employee created = copyOf(employee);
+        apply(new Change() {
+            @Override
+            public void run() {
+                store(created, at);
+            }
+        });
+    }
+
+    @Override
+    public void employeeUpdated(Employee employee) {
+        final Employee updated = copyOf(employee);
+        apply(new Change() {
+            @Override
+            public void run() {
+                store(updated, at);
+            }
+        });
+    }
+
+    @Override
+    public void employeeDeleted(final int id) {
+        apply(new Change() {
+            @Override
+            public void run() {
+                Employee previous = remove(id);
+                if (previous != null) {
+                    removeChild(supervisorOf(previous), id);
+                    teamChangedAt.put(supervisorOf(previous), at);
+                    searchIndex.remove(previous);
+                }
+                deletedAt.put(id, at);
+            }
+        });
+    }
+
+    @Override
+    public void supervisorCancelled(final int supervisor) {
+        apply(new Change() {
+            @Override
+            public void run() {
+                if (supervisor == 0) {
+                    return;
+                }
+                IntList former = children.remove(supervisor);
+                if (former == null) {
+                    return;
+                }
+                IntList topLevel = child(children, 0);
+                for (int i = 0; i < former.size(); i++) {
+                    int id = former.get(i);
+                    Employee e = lookup(id);
+                    if (e != null) {
+                        Employee copy = new Employee(e.getFullName(), e.getDepartment(), 0, e.getComment());
+                        copy.setId(id);
+                        copy.setVersion(at);
+                        // Outdated until employeeUpdated follows with the row version the database gave it
+                        copy.setRowVersion(e.getRowVersion());
+                        put(copy);
+                    }
+                    topLevel.add(id);
+                }
+                teamChangedAt.put(supervisor, at);
+                teamChangedAt.put(0, at);
+            }
+        });
+    }
+
+    @Override
+    public void resync() {
+        invalidate();
+    }
+
+    /**
+     * What changed since a version: the new state of employees created or updated, and the ids deleted
+     */
+    public static class Delta {
+        private final long version;
+        private final List<Employee> employees;
+        private final int[] deleted;
+
+        Delta(long version, List<Employee> employees, int[] deleted) {
+            this.version = version;
+            this.employees = employees;
+            this.deleted = deleted;
+        }
+
+        /** Version the changes bring the receiver to */
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Employee> getEmployees() {
+            return employees;
+        }
+
+        public int[] getDeleted() {
+            return deleted;
+        }
+
+        public boolean isEmpty() {
+            return employees.isEmpty() && deleted.length == 0;
+        }
+    }
+
+    /** An event; its version is assigned when it arrives, so replaying it after a load keeps it */
+    private abstract static class Change implements Runnable {
+        long at;
+    }
+
+    /**
+     * Version an event, run it against the current structures and remember it if a load is in progress
+     */
+    private void apply(Change event) {
+        lock.writeLock().lock();
+        try {
+            event.at = ++version;
+            if (snapshot != null) {
+                event.run();
+            }
+            if (pending != null) {
+                pending.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Insert or replace; idempotent so that replayed events are harmless. Stores a copy of its own, as readers
+     * use stored employees outside the lock and a replay must not touch those of the previous load.
+     */
+    private void store(Employee event, long at) {
+        Employee employee = copyOf(event);
+        int id = employee.getId();
+        employee.setVersion(at);
+        Employee previous = put(employee);
+        if (previous != null) {
+            searchIndex.remove(previous);
+        }
+        searchIndex.add(employee);
+        int supervisor = supervisorOf(employee);
+        if (previous != null) {
+            if (supervisorOf(previous) == supervisor) {
+                return;
+            }
+            removeChild(supervisorOf(previous), id);
+            teamChangedAt.put(supervisorOf(previous), at);
+        }
+        child(children, supervisor).add(id);
+        teamChangedAt.put(supervisor, at);
+    }
+
+    private static Employee copyOf(Employee e) {
+        Employee copy = new Employee(e.getFullName(), e.getDepartment(), e.getSupervisor(), e.getComment());
+        copy.setId(e.getId());
+        copy.setRowVersion(e.getRowVersion());
+        copy.setVersion(e.getVersion());
+        return copy;
+    }
+
+    private Employee lookup(int id) {
+        Employee e = changed.get(id);
+        if (e != null) {
+            return e;
+        }
+        int row = snapshot.indexOf(id);
+        return row < 0 || replaced.get(row) ? null : snapshot.view(row);
+    }
+
+    /** @return the employee replaced, null if it is new */
+    private Employee put(Employee employee) {
+        int id = employee.getId();
+        Employee previous = changed.put(id, employee);
+        if (previous == null) {
+            int row = snapshot.indexOf(id);
+            if (row >= 0 && !replaced.get(row)) {
+                previous = snapshot.view(row);
+                replaced.set(row);
+            } else {
+                size++;
+            }
+        }
+        return previous;
+    }
+
+    private Employee remove(int id) {
+        Employee previous = changed.remove(id);
+        if (previous == null) {
+            int row = snapshot.indexOf(id);
+            if (row >= 0 && !replaced.get(row)) {
+                previous = snapshot.view(row);
+                replaced.set(row);
+            }
+        }
+        if (previous != null) {
+            size--;
+        }
+        return previous;
+    }
+
+    private interface Match {
+        /**
+         * Called with the employee's snapshot row, or with row -1 and the changed employee
+         * @return whether to go on
+         */
+        boolean matched(int id, int supervisor, int row, Employee changedEmployee);
+    }
+
+    /**
+     * Visit the employees matching filter with an id greater than afterId in id order.
+     * With a supervisor condition only their subordinates are looked at, otherwise everyone.
+     */
+    private void scan(EmployeeFilter filter, int afterId, Match match) {
+        boolean[] departments = null;
+        if (filter.getDepartment() != null) {
+            departments = new boolean[snapshot.departmentCount()];
+            for (int code = 0; code < departments.length; code++) {
+                departments[code] = filter.matchesDepartment(snapshot.departmentName(code));
+            }
+        }
+
+        if (filter.getSupervisors() != null) {
+            IntList candidates = new IntList();
+            for (int supervisor : filter.getSupervisors()) {
+                IntList subordinates = children.get(supervisor);
+                if (subordinates != null) {
+                    candidates.addAll(subordinates);
+                }
+            }
+            int[] ids = candidates.toArray();
+            Arrays.sort(ids);
+            for (int id : ids) {
+                if (id <= afterId) {
+                    continue;
+                }
+                Employee e = changed.get(id);
+                boolean more = e != null
+                        ? visit(e, filter, match) : visit(snapshot.indexOf(id), filter, departments, match);
+                if (!more) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        // Merge the id-sorted snapshot with the changed employees
+        int[] changedIds = changed.keys();
+        Arrays.sort(changedIds);
+        int next = 0;
+        while (next < changedIds.length && changedIds[next] <= afterId) {
+            next++;
+        }
+        int row = snapshot.rowAfter(afterId);
+        while (row < snapshot.size() || next < changedIds.length) {
+            boolean more;
+            if (next == changedIds.length || (row < snapshot.size() && snapshot.id(row) < changedIds[next])) {
+                more = visit(row++, filter, departments, match);
+            } else {
+                more = visit(changed.get(changedIds[next++]), filter, match);
+            }
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    private boolean visit(int row, EmployeeFilter filter, boolean[] departments, Match match) {
+        if (row < 0 || replaced.get(row)) {
+            return true;
+        }
+        int code = snapshot.departmentCode(row);
+        if (departments != null && (code < 0 || !departments[code])) {
+            return true;
+        }
+        int supervisor = snapshot.supervisor(row);
+        return !filter.matchesSupervisor(supervisor) || match.matched(snapshot.id(row), supervisor, row, null);
+    }
+
+    private boolean visit(Employee e, EmployeeFilter filter, Match match) {
+        int supervisor = supervisorOf(e);
+        if (!filter.matchesDepartment(e.getDepartment()) || !filter.matchesSupervisor(supervisor)) {
+            return true;
+        }
+        return match.matched(e.getId(), supervisor, -1, e);
+    }
+
+    private static void add(Map<String, Integer> counts, String department, int count) {
+        Integer previous = counts.get(department);
+        counts.put(department, previous == null ? count : previous + count);
+    }
+
+    /** Largest groups first, then by department or supervisor id */
+    private static List<GroupCount> largest(List<GroupCount> groups, int limit) {
+        Collections.sort(groups, new Comparator<GroupCount>() {
+            @Override
+            public int compare(GroupCount a, GroupCount b) {
+                if (a.getCount() != b.getCount()) {
+                    return a.getCount() > b.getCount() ? -1 : 1;
+                }
+                if (a.getLabel() != null && b.getLabel() != null) {
+                    return a.getLabel().compareTo(b.getLabel());
+                }
+                return a.getLabel() != null ? -1 : b.getLabel() != null ? 1 : Integer.compare(a.getKey(), b.getKey());
+            }
+        });
+        return groups.size() > limit ? new ArrayList<>(groups.subList(0, limit)) : groups;
+    }
+
+    private boolean isSupervisor(int id, int supervisor) {
+        IntList subordinates = children.get(id);
+        return supervisor == 0 || (subordinates != null && !subordinates.isEmpty());
+    }
+
+    private void removeChild(int supervisor, int id) {
+        IntList list = children.get(supervisor);
+        if (list != null) {
+            list.removeValue(id);
+            if (list.isEmpty()) {
+                children.remove(supervisor);
+            }
+        }
+    }
+
+    private List<Employee> resolve(IntList ids) {
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<Employee> result = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Employee e = lookup(ids.get(i));
+            if (e != null) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    private static IntList child(IntObjectHashMap<IntList> children, int supervisor) {
+        IntList list = children.get(supervisor);
+        if (list == null) {
+            list = new IntList();
+            children.put(supervisor, list);
+        }
+        return list;
+    }
+
+    private static int supervisorOf(Employee employee) {
+        return employee.getSupervisor() == null ? 0 : employee.getSupervisor();
+    }
+}
@@ -0,0 +1,373 @@
+package com.ankoma88.personnelsystem.server.index;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static com.ankoma88.personnelsystem.util.Settings.SNAPSHOT_BLOCK_ROWS;
+import static com.ankoma88.personnelsystem.util.Settings.SNAPSHOT_LOAD_THREADS;
+
+/**
+ * Image of the org chart saved to a file, so that a restarted server does not have to read every employee
+ * from the database before it can answer from the OrgChartIndex.
+ *
+ * The file holds a header, a table of row blocks and the blocks themselves, each row being
+ * id:int supervisor:int rowVersion:long and the full name, department and comment as length:int (-1 for null)
+ * and UTF-8. The header and table carry one CRC32 and every block one of its own, so that blocks are checked
+ * and decoded in parallel straight from a read-only mapping.
+ *
+ * The header records the database's MIN_ACTIVE_ROWVERSION() from before the org chart was read for saving:
+ * row versions are given out as rows are written and grow with every write, but a transaction may commit
+ * after one that got a higher version, so the highest version saved could be past writes still to commit.
+ * Every write committed after that watermark was taken has a row version at or above it, and catchUp()
+ * needs only those rows, plus the current ids to drop the employees deleted since.
+ */
+public class OrgChartSnapshot {
+    private static final Logger log = Logger.getLogger(OrgChartSnapshot.class.getName());
+
+    private static final int MAGIC = 0x5053534E;
+    private static final int FORMAT = 2;
+    /** magic:int format:int count:int blocks:int watermark:long */
+    private static final int HEADER_BYTES = 24;
+    /** offset:int rows:int crc32:int per block */
+    private static final int BLOCK_ENTRY_BYTES = 12;
+    /** Blocks decoded ahead of the cursor, per loader thread */
+    private static final int BLOCKS_AHEAD = 4;
+
+    private final Path file;
+    private final MappedByteBuffer image;
+    private final int count;
+    private final int blocks;
+    private final long watermark;
+
+    private OrgChartSnapshot(Path file, MappedByteBuffer image) {
+        this.file = file;
+        this.image = image;
+        this.count = image.getInt(8);
+        this.blocks = image.getInt(12);
+        this.watermark = image.getLong(16);
+    }
+
+    /**
+     * Write employees, in id order, to a new file that replaces the given one. The watermark is the
+     * EmployeeDao.getMinActiveRowVersion() taken before they were read.
+     */
+    public static void save(Path file, long watermark, List<Employee> employees) throws IOException {
+        int blocks = (employees.size() + SNAPSHOT_BLOCK_ROWS - 1) / SNAPSHOT_BLOCK_ROWS;
+        int tableEnd = HEADER_BYTES + BLOCK_ENTRY_BYTES * blocks + 4;
+        List<byte[]> encoded = new ArrayList<>(blocks);
+        ByteBuffer table = ByteBuffer.allocate(tableEnd);
+        table.position(HEADER_BYTES);
+        long offset = tableEnd;
+        for (int b = 0; b < blocks; b++) {
+            List<Employee> rows = employees.subList(b * SNAPSHOT_BLOCK_ROWS,
+                    Math.min(employees.size(), (b + 1) * SNAPSHOT_BLOCK_ROWS));
+            Block block = new Block();
+            for (Employee employee : rows) {
+                block.put(employee);
+            }
+            byte[] bytes = block.toByteArray();
+            if (offset + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Org chart too large for a snapshot");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            table.putInt((int) offset).putInt(rows.size()).putInt((int) crc.getValue());
+            encoded.add(bytes);
+            offset += bytes.length;
+        }
+        table.putInt(0, MAGIC).putInt(4, FORMAT).putInt(8, employees.size()).putInt(12, blocks)
+                .putLong(16, watermark);
+        CRC32 crc = new CRC32();
+        crc.update(table.array(), 0, tableEnd - 4);
+        table.putInt((int) crc.getValue());
+        table.flip();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path saved = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(saved, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, table);
+            for (byte[] bytes : encoded) {
+                write(out, ByteBuffer.wrap(bytes));
+            }
+            out.force(true);
+        }
+        Files.move(saved, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Makes the rename durable; not supported everywhere
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not sync " + directory, e);
+        }
+    }
+
+    /**
+     * Map a saved snapshot and check its header; blocks are checked as they are decoded
+     */
+    public static OrgChartSnapshot open(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_BYTES + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Truncated snapshot");
+            }
+            MappedByteBuffer image = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int blocks = image.getInt(12);
+            if (image.getInt(0) != MAGIC || image.getInt(4) != FORMAT || blocks < 0
+                    || HEADER_BYTES + (long) BLOCK_ENTRY_BYTES * blocks + 4 > size) {
+                throw new IOException("Corrupt snapshot");
+            }
+            int tableEnd = HEADER_BYTES + BLOCK_ENTRY_BYTES * blocks;
+            ByteBuffer content = image.duplicate();
+            content.limit(tableEnd);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if ((int) crc.getValue() != image.getInt(tableEnd)) {
+                throw new IOException("Corrupt snapshot");
+            }
+            return new OrgChartSnapshot(file, image);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Lowest row version a write the snapshot may be missing can have */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * The employees as they are in the database now, in id order: the saved ones, with those written since
+     * replaced and those deleted since dropped. Blocks are decoded on SNAPSHOT_LOAD_THREADS threads while
+     * the database is asked for the rows written since and the current ids, and then a few blocks ahead
+     * of the cursor.
+     *
+     * The cursor throws SQLException if a block is corrupt, or an id is neither saved nor written since;
+     * the caller should then read everyone from the database instead.
+     */
+    public EmployeeCursor catchUp(EmployeeDao dao) throws SQLException {
+        final ExecutorService loaders = Executors.newFixedThreadPool(SNAPSHOT_LOAD_THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "snapshot-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final List<Future<List<Employee>>> decoded = new ArrayList<>(blocks);
+        final int ahead = SNAPSHOT_LOAD_THREADS * BLOCKS_AHEAD;
+        final int[] ids;
+        final List<Employee> written;
+        boolean started = false;
+        try {
+            for (int b = 0; b < Math.min(blocks, ahead); b++) {
+                decoded.add(submit(loaders, b));
+            }
+            // Ids first: a row inserted between the two queries is then among those written since
+            ids = dao.getIds();
+            // Row versions from the watermark on
+            written = dao.getChangedSince(watermark - 1);
+            started = true;
+        } finally {
+            if (!started) {
+                loaders.shutdownNow();
+            }
+        }
+        log.info("Org chart snapshot " + file + " has " + count + " employees, " + written.size()
+                + " written since, " + ids.length + " in the database");
+
+        return new EmployeeCursor() {
+            private int nextId;
+            private int nextWritten;
+            private int nextBlock;
+            private List<Employee> block = new ArrayList<>();
+            private int nextRow;
+
+            @Override
+            public Employee next() throws SQLException {
+                Employee latest = nextWritten < written.size() ? written.get(nextWritten) : null;
+                if (nextId == ids.length && latest == null) {
+                    return null;
+                }
+                if (latest != null && (nextId == ids.length || latest.getId() <= ids[nextId])) {
+                    nextWritten++;
+                    if (nextId < ids.length && latest.getId() == ids[nextId]) {
+                        nextId++;
+                    }
+                    return latest;
+                }
+                int id = ids[nextId++];
+                Employee saved;
+                while ((saved = nextSaved()) != null && saved.getId() < id) {
+                    // Deleted since
+                    nextRow++;
+                }
+                if (saved == null || saved.getId() != id) {
+                    throw new SQLException("Employee " + id + " is neither in the snapshot nor written since it");
+                }
+                nextRow++;
+                return saved;
+            }
+
+            /** The current saved row, null after the last one */
+            private Employee nextSaved() throws SQLException {
+                while (nextRow == block.size()) {
+                    if (nextBlock == blocks) {
+                        return null;
+                    }
+                    try {
+                        block = decoded.get(nextBlock).get();
+                        // Let the decoded rows go once the cursor is past them
+                        decoded.set(nextBlock++, null);
+                        nextRow = 0;
+                        if (decoded.size() < blocks) {
+                            decoded.add(submit(loaders, decoded.size()));
+                        }
+                    } catch (ExecutionException e) {
+                        throw new SQLException("Could not read the org chart snapshot", e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while reading the org chart snapshot", e);
+                    }
+                }
+                return block.get(nextRow);
+            }
+
+            @Override
+            public void close() {
+                loaders.shutdownNow();
+            }
+        };
+    }
+
+    private Future<List<Employee>> submit(ExecutorService loaders, final int block) {
+        return loaders.submit(new Callable<List<Employee>>() {
+            @Override
+            public List<Employee> call() throws IOException {
+                return decode(block);
+            }
+        });
+    }
+
+    private List<Employee> decode(int block) throws IOException {
+        int entry = HEADER_BYTES + BLOCK_ENTRY_BYTES * block;
+        int offset = image.getInt(entry);
+        int rows = image.getInt(entry + 4);
+        int end = block + 1 < blocks ? image.getInt(entry + BLOCK_ENTRY_BYTES) : image.capacity();
+        if (offset < HEADER_BYTES + BLOCK_ENTRY_BYTES * blocks + 4 || end < offset || end > image.capacity()) {
+            throw new IOException("Corrupt snapshot block " + block);
+        }
+        ByteBuffer in = image.duplicate();
+        in.limit(end).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate());
+        if ((int) crc.getValue() != image.getInt(entry + 8)) {
+            throw new IOException("Corrupt snapshot block " + block);
+        }
+        List<Employee> employees = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Employee employee = new Employee();
+            employee.setId(in.getInt());
+            employee.setSupervisor(in.getInt());
+            employee.setRowVersion(in.getLong());
+            employee.setFullName(readString(in));
+            employee.setDepartment(readString(in));
+            employee.setComment(readString(in));
+            employees.add(employee);
+        }
+        return employees;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /** Rows of one block being encoded */
+    private static class Block {
+        private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+
+        void put(Employee employee) {
+            byte[] fullName = utf8(employee.getFullName());
+            byte[] department = utf8(employee.getDepartment());
+            byte[] comment = utf8(employee.getComment());
+            ensure(28 + length(fullName) + length(department) + length(comment));
+            out.putInt(employee.getId());
+            out.putInt(employee.getSupervisor() == null ? 0 : employee.getSupervisor());
+            out.putLong(employee.getRowVersion());
+            putString(fullName);
+            putString(department);
+            putString(comment);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[out.position()];
+            System.arraycopy(out.array(), 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+
+        private void putString(byte[] utf8) {
+            if (utf8 == null) {
+                out.putInt(-1);
+            } else {
+                out.putInt(utf8.length).put(utf8);
+            }
+        }
+
+        private void ensure(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+
+        private static byte[] utf8(String s) {
+            return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static int length(byte[] utf8) {
+            return utf8 == null ? 0 : utf8.length;
+        }
+    }
+}
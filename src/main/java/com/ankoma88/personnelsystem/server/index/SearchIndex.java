@@ -0,0 +1,260 @@
+package com.ankoma88.personnelsystem.server.index;
+
+import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.util.IntIntHashMap;
+import com.ankoma88.personnelsystem.util.IntList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over employee names, departments and comments.
+ *
+ * Text is split into tokens at every character that is not a letter or digit, and lower-cased.
+ * An employee matches a query if every query token equals, starts or (from three characters on)
+ * occurs inside one of its tokens. Results are ranked by how well each query token matched,
+ * exact over prefix over substring, and where: the name counts three times as much as the other fields.
+ *
+ * Tokens are kept in a sorted dictionary for prefix lookups and under each of their trigrams for
+ * substring lookups. A token nobody uses any more stays in both until the index is rebuilt.
+ * Not thread safe, OrgChartIndex guards it with its lock.
+ */
+public class SearchIndex {
+
+    private static final int NAME = 0;
+    private static final int DEPARTMENT = 1;
+    private static final int COMMENT = 2;
+    private static final int[] FIELD_WEIGHTS = {3, 1, 1};
+
+    private static final int EXACT = 4;
+    private static final int PREFIX = 2;
+    private static final int SUBSTRING = 1;
+    private static final int GRAM = 3;
+
+    private final TreeMap<String, Token> dictionary = new TreeMap<>();
+    private final Map<String, List<Token>> trigrams = new HashMap<>();
+
+    public void add(Employee employee) {
+        update(employee, true);
+    }
+
+    public void remove(Employee employee) {
+        update(employee, false);
+    }
+
+    /**
+     * Ids of the best matches for query, best first; equal scores go to the lower id
+     */
+    public int[] search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        IntIntHashMap scores = null;
+        for (String term : terms) {
+            scores = score(term, scores);
+            if (scores.isEmpty()) {
+                return new int[0];
+            }
+        }
+        return top(scores, limit);
+    }
+
+    /** Distinct lower-cased tokens of text in order of appearance */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                String token = current.toString();
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private void update(Employee employee, boolean add) {
+        int id = employee.getId();
+        update(employee.getFullName(), NAME, id, add);
+        update(employee.getDepartment(), DEPARTMENT, id, add);
+        update(employee.getComment(), COMMENT, id, add);
+    }
+
+    private void update(String value, int field, int id, boolean add) {
+        for (String text : tokenize(value)) {
+            Token token = dictionary.get(text);
+            if (add) {
+                if (token == null) {
+                    token = newToken(text);
+                }
+                token.postings(field).addSorted(id);
+            } else if (token != null && token.postings[field] != null) {
+                token.postings[field].removeSorted(id);
+            }
+        }
+    }
+
+    private Token newToken(String text) {
+        Token token = new Token(text);
+        dictionary.put(text, token);
+        List<String> seen = new ArrayList<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM);
+            if (seen.contains(gram)) {
+                continue;
+            }
+            seen.add(gram);
+            List<Token> tokens = trigrams.get(gram);
+            if (tokens == null) {
+                tokens = new ArrayList<>();
+                trigrams.put(gram, tokens);
+            }
+            tokens.add(token);
+        }
+        return token;
+    }
+
+    /**
+     * Best score of every employee matching term, plus its score so far;
+     * only employees in previous are considered unless previous is null
+     */
+    private IntIntHashMap score(String term, final IntIntHashMap previous) {
+        Collection<Token> prefixed = dictionary.subMap(term, true, term + Character.MAX_VALUE, false).values();
+        List<Token> inside = new ArrayList<>();
+        if (term.length() >= GRAM) {
+            for (Token token : containing(term)) {
+                if (!token.text.startsWith(term)) {
+                    inside.add(token);
+                }
+            }
+        }
+        int expected = 0;
+        for (Token token : prefixed) {
+            expected += token.count();
+        }
+        for (Token token : inside) {
+            expected += token.count();
+        }
+        final IntIntHashMap scores =
+                new IntIntHashMap(previous == null ? expected : Math.min(expected, previous.size()));
+        for (Token token : prefixed) {
+            collect(token, token.text.length() == term.length() ? EXACT : PREFIX, scores, previous);
+        }
+        for (Token token : inside) {
+            collect(token, SUBSTRING, scores, previous);
+        }
+        if (previous != null) {
+            // Replaces values of existing keys only, which is safe while iterating
+            scores.forEach(new IntIntHashMap.Visitor() {
+                @Override
+                public void visit(int id, int score) {
+                    scores.put(id, score + previous.get(id));
+                }
+            });
+        }
+        return scores;
+    }
+
+    /** Tokens containing term, found through its rarest trigram */
+    private List<Token> containing(String term) {
+        List<Token> candidates = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            List<Token> tokens = trigrams.get(term.substring(i, i + GRAM));
+            if (tokens == null) {
+                return Collections.emptyList();
+            }
+            if (candidates == null || tokens.size() < candidates.size()) {
+                candidates = tokens;
+            }
+        }
+        List<Token> result = new ArrayList<>();
+        for (Token token : candidates) {
+            if (token.text.contains(term)) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    private static void collect(Token token, int quality, IntIntHashMap scores, IntIntHashMap previous) {
+        for (int field = 0; field < token.postings.length; field++) {
+            IntList ids = token.postings[field];
+            if (ids == null) {
+                continue;
+            }
+            int score = quality * FIELD_WEIGHTS[field];
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                if (previous != null && previous.get(id) == 0) {
+                    continue;
+                }
+                if (score > scores.get(id)) {
+                    scores.put(id, score);
+                }
+            }
+        }
+    }
+
+    private static int[] top(IntIntHashMap scores, final int limit) {
+        // Score in the high half, inverted id in the low half: the smallest entry is the worst match
+        final PriorityQueue<Long> best = new PriorityQueue<>();
+        scores.forEach(new IntIntHashMap.Visitor() {
+            @Override
+            public void visit(int id, int score) {
+                long entry = ((long) score << 32) | (Integer.MAX_VALUE - id);
+                if (best.size() < limit) {
+                    best.offer(entry);
+                } else if (entry > best.peek()) {
+                    best.poll();
+                    best.offer(entry);
+                }
+            }
+        });
+        int[] ids = new int[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = Integer.MAX_VALUE - (int) (best.poll() & 0xFFFFFFFFL);
+        }
+        return ids;
+    }
+
+    private static class Token {
+        final String text;
+        /** Ids of the employees having the token in ascending order, by field; null until the first one */
+        final IntList[] postings = new IntList[3];
+
+        Token(String text) {
+            this.text = text;
+        }
+
+        /** Employees having the token, counted once per field */
+        int count() {
+            int count = 0;
+            for (IntList ids : postings) {
+                count += ids == null ? 0 : ids.size();
+            }
+            return count;
+        }
+
+        IntList postings(int field) {
+            if (postings[field] == null) {
+                postings[field] = new IntList(1);
+            }
+            return postings[field];
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.ankoma88.personnelsystem.server.metrics;
+
+public interface CounterMBean {
+
+    long getCount();
+}
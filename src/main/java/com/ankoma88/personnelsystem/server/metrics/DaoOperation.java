@@ -0,0 +1,10 @@
+package com.ankoma88.personnelsystem.server.metrics;
+
+/**
+ * EmployeeDao methods, as timed by MeteredEmployeeDao
+ */
+public enum DaoOperation {
+    CREATE, READ, UPDATE, DELETE, CREATE_ALL, UPDATE_ALL, DELETE_ALL, GET_ALL, GET_PAGE, CURSOR,
+    GET_SUPERVISORS, GET_SUBORDINATES, CANCEL_SUPERVISOR, CHANGED_SINCE, GET_IDS,
+    MIN_ACTIVE_ROW_VERSION
+}
@@ -0,0 +1,32 @@
+package com.ankoma88.personnelsystem.server.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Current value of something the server already tracks, read when metrics are exported
+ */
+public class Gauge implements GaugeMBean {
+
+    private final String name;
+    private final String help;
+    private final LongSupplier value;
+
+    public Gauge(String name, String help, LongSupplier value) {
+        this.name = name;
+        this.help = help;
+        this.value = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    @Override
+    public long getValue() {
+        return value.getAsLong();
+    }
+}
@@ -0,0 +1,167 @@
+package com.ankoma88.personnelsystem.server.metrics;
+
+import com.ankoma88.personnelsystem.model.Command;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * Every metric the server records. The recording side (timers and counters looked up by
+ * array index) takes no locks and allocates nothing; exporting reads the current values.
+ */
+public class ServerMetrics {
+
+    private static final String DOMAIN = "com.ankoma88.personnelsystem";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Timer[] commands;
+    private final Timer[] daoOperations;
+    private final Timer connectionAcquire = new Timer("database");
+    private final Counter rowsReturned = new Counter();
+    private final Counter bytesReceived = new Counter();
+    private final Counter bytesSent = new Counter();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    public ServerMetrics() {
+        Command[] commandValues = Command.values();
+        commands = new Timer[commandValues.length];
+        for (Command command : commandValues) {
+            commands[command.ordinal()] = new Timer(command.name());
+        }
+        DaoOperation[] operations = DaoOperation.values();
+        daoOperations = new Timer[operations.length];
+        for (DaoOperation operation : operations) {
+            daoOperations[operation.ordinal()] = new Timer(operation.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /** Requests by command, from arrival at the processor to the answer */
+    public Timer command(Command command) {
+        return commands[command.ordinal()];
+    }
+
+    /** EmployeeDao calls that reached the database */
+    public Timer daoOperation(DaoOperation operation) {
+        return daoOperations[operation.ordinal()];
+    }
+
+    /** Time spent waiting for a pooled connection */
+    public Timer getConnectionAcquire() {
+        return connectionAcquire;
+    }
+
+    /** Employees read from result sets */
+    public Counter getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public Counter getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public Counter getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Export a value tracked elsewhere, e.g. the number of open client connections
+     */
+    public void addGauge(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, value));
+    }
+
+    /**
+     * Make every metric visible through the platform MBean server, under com.ankoma88.personnelsystem
+     */
+    public void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Timer timer : commands) {
+            server.registerMBean(timer, new ObjectName(DOMAIN + ":type=Command,name=" + timer.getLabel()));
+        }
+        for (Timer timer : daoOperations) {
+            server.registerMBean(timer, new ObjectName(DOMAIN + ":type=Dao,name=" + timer.getLabel()));
+        }
+        server.registerMBean(connectionAcquire, new ObjectName(DOMAIN + ":type=Pool,name=acquire"));
+        server.registerMBean(rowsReturned, new ObjectName(DOMAIN + ":type=Dao,name=rows"));
+        server.registerMBean(bytesReceived, new ObjectName(DOMAIN + ":type=Network,name=bytesReceived"));
+        server.registerMBean(bytesSent, new ObjectName(DOMAIN + ":type=Network,name=bytesSent"));
+        for (Gauge gauge : gauges) {
+            server.registerMBean(gauge, new ObjectName(DOMAIN + ":type=Gauge,name=" + gauge.getName()));
+        }
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format (version 0.0.4)
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        writeTimers(out, "personnel_requests", "Requests processed, by command", "command", commands);
+        writeTimers(out, "personnel_dao_calls", "EmployeeDao calls that reached the database", "operation",
+                daoOperations);
+        writeTimers(out, "personnel_pool_acquire", "Waits for a pooled database connection", "pool",
+                new Timer[]{connectionAcquire});
+        writeCounter(out, "personnel_dao_rows_total", "Employees read from result sets", rowsReturned);
+        writeCounter(out, "personnel_network_received_bytes_total", "Bytes received from clients", bytesReceived);
+        writeCounter(out, "personnel_network_sent_bytes_total", "Bytes sent to clients", bytesSent);
+        for (Gauge gauge : gauges) {
+            out.append("# HELP ").append(gauge.getName()).append(' ').append(gauge.getHelp()).append('\n');
+            out.append("# TYPE ").append(gauge.getName()).append(" gauge\n");
+            out.append(gauge.getName()).append(' ').append(gauge.getValue()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Count and error families plus a latency summary in seconds; timers that never ran are left out */
+    private static void writeTimers(StringBuilder out, String name, String help, String label, Timer[] timers) {
+        out.append("# HELP ").append(name).append("_total ").append(help).append('\n');
+        out.append("# TYPE ").append(name).append("_total counter\n");
+        for (Timer timer : timers) {
+            if (timer.getCount() > 0) {
+                sample(out, name + "_total", label, timer.getLabel(), null).append(timer.getCount()).append('\n');
+            }
+        }
+        out.append("# HELP ").append(name).append("_errors_total ").append(help).append(", failed\n");
+        out.append("# TYPE ").append(name).append("_errors_total counter\n");
+        for (Timer timer : timers) {
+            if (timer.getCount() > 0) {
+                sample(out, name + "_errors_total", label, timer.getLabel(), null)
+                        .append(timer.getErrorCount()).append('\n');
+            }
+        }
+        String summary = name + "_duration_seconds";
+        out.append("# HELP ").append(summary).append(' ').append(help).append(", duration\n");
+        out.append("# TYPE ").append(summary).append(" summary\n");
+        for (Timer timer : timers) {
+            Histogram latency = timer.getLatency();
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            for (double quantile : QUANTILES) {
+                sample(out, summary, label, timer.getLabel(), quantile)
+                        .append(latency.getPercentile(quantile * 100) / 1e9).append('\n');
+            }
+            sample(out, summary + "_sum", label, timer.getLabel(), null).append(latency.getSum() / 1e9).append('\n');
+            sample(out, summary + "_count", label, timer.getLabel(), null).append(latency.getCount()).append('\n');
+        }
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, Counter counter) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(counter.getCount()).append('\n');
+    }
+
+    private static StringBuilder sample(StringBuilder out, String name, String label, String value, Double quantile) {
+        out.append(name).append('{').append(label).append("=\"").append(value).append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        return out.append("} ");
+    }
+}
@@ -0,0 +1,78 @@
+package com.ankoma88.personnelsystem.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count of one kind of operation, recorded in nanoseconds
+ */
+public class Timer implements TimerMBean {
+
+    private final String label;
+    private final Histogram latency = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    public Timer(String label) {
+        this.label = label;
+    }
+
+    /** Value of the metric's label, e.g. the command name */
+    public String getLabel() {
+        return label;
+    }
+
+    public void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /** Record the time elapsed since start, a System.nanoTime() value */
+    public void recordSince(long start, boolean failed) {
+        record(System.nanoTime() - start, failed);
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMean() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return latency.getPercentile(90) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMax() / 1e6;
+    }
+}
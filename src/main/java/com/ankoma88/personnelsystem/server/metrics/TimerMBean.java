@@ -0,0 +1,23 @@
+package com.ankoma88.personnelsystem.server.metrics;
+
+/**
+ * JMX view of a Timer; durations in milliseconds
+ */
+public interface TimerMBean {
+
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,206 @@
+package com.ankoma88.personnelsystem.server.service.impl;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.server.dao.impl.Deadline;
+import com.ankoma88.personnelsystem.server.service.interfaces.AsyncProcessor;
+import com.ankoma88.personnelsystem.server.service.interfaces.MessageSink;
+import com.ankoma88.personnelsystem.server.service.interfaces.Processor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ankoma88.personnelsystem.util.Settings.IO_QUEUE_CAPACITY;
+import static com.ankoma88.personnelsystem.util.Settings.IO_THREADS;
+import static com.ankoma88.personnelsystem.util.Settings.REQUEST_TIMEOUT_MILLIS;
+
+/**
+ * Runs a synchronous Processor on a bounded pool of I/O threads.
+ *
+ * The pool has one thread per pooled database connection, so threads never wait for a connection
+ * another I/O thread holds. A ConcurrencyLimiter in front of it decides how many of them may work at once
+ * and which waiting request goes next; requests it turns away are answered OVERLOADED.
+ * Requests the Processor can answer from memory complete on the calling thread and never queue behind slow queries.
+ *
+ * Every other request gets a Deadline, REQUEST_TIMEOUT_MILLIS or the shorter timeout the client asked for.
+ * An ERROR answer given after it passed, and a request whose deadline passed while it waited, are answered TIMEOUT.
+ * Cancelling the returned stage cancels the deadline, and with it the statements the request is running.
+ */
+public class AsyncProcessorImpl implements AsyncProcessor {
+
+    private final Processor processor;
+    private final ThreadPoolExecutor ioExecutor;
+    private final ConcurrencyLimiter limiter;
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public AsyncProcessorImpl(Processor processor) {
+        this(processor, IO_THREADS, IO_QUEUE_CAPACITY);
+    }
+
+    public AsyncProcessorImpl(Processor processor, int ioThreads, int queueCapacity) {
+        this.processor = processor;
+        // The limiter never admits more requests than there are threads, so this queue stays empty
+        this.ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "db-io-" + count.incrementAndGet());
+            }
+        });
+        this.limiter = new ConcurrencyLimiter(ioExecutor, ioThreads, queueCapacity);
+    }
+
+    @Override
+    public CompletionStage<Message> processMessage(final Message input) {
+        Message answer = processor.processFromMemory(input);
+        if (answer != null) {
+            return CompletableFuture.completedFuture(answer);
+        }
+        final Deadline deadline = deadlineOf(input);
+        final CompletableFuture<Message> answered = cancelling(deadline);
+        limiter.submit(new ConcurrencyLimiter.Request(input.getCommand(), deadline) {
+            @Override
+            boolean run() {
+                deadline.attach();
+                try {
+                    Message output = asTimeout(processor.processMessage(input), deadline);
+                    answered.complete(output);
+                    return output != null && output.getCommand() != Command.ERROR
+                            && output.getCommand() != Command.TIMEOUT;
+                } catch (RuntimeException e) {
+                    answered.completeExceptionally(e);
+                    return false;
+                } finally {
+                    deadline.detach();
+                }
+            }
+
+            @Override
+            void overloaded() {
+                answered.complete(new Message(Command.OVERLOADED));
+            }
+
+            @Override
+            void timedOut() {
+                answered.complete(asTimeout(new Message(Command.ERROR), deadline));
+            }
+        });
+        return answered;
+    }
+
+    @Override
+    public CompletionStage<Void> processGetAllStream(final Message input, final MessageSink output) {
+        final Deadline deadline = deadlineOf(input);
+        final CompletableFuture<Void> streamed = cancelling(deadline);
+        final MessageSink timedOutput = new MessageSink() {
+            @Override
+            public void send(Message message) throws IOException {
+                output.send(asTimeout(message, deadline));
+            }
+        };
+        limiter.submit(new ConcurrencyLimiter.Request(input.getCommand(), deadline) {
+            @Override
+            boolean run() {
+                deadline.attach();
+                try {
+                    processor.processGetAllStream(input, timedOutput);
+                    streamed.complete(null);
+                    return true;
+                } catch (IOException e) {
+                    streamed.completeExceptionally(new UncheckedIOException(e));
+                    return false;
+                } catch (RuntimeException e) {
+                    streamed.completeExceptionally(e);
+                    return false;
+                } finally {
+                    deadline.detach();
+                }
+            }
+
+            @Override
+            void overloaded() {
+                answer(new Message(Command.OVERLOADED));
+            }
+
+            @Override
+            void timedOut() {
+                answer(new Message(Command.ERROR));
+            }
+
+            private void answer(Message message) {
+                try {
+                    timedOutput.send(message);
+                    streamed.complete(null);
+                } catch (IOException e) {
+                    streamed.completeExceptionally(e);
+                }
+            }
+        });
+        return streamed;
+    }
+
+    private static Deadline deadlineOf(Message input) {
+        int timeout = input.getTimeoutMillis();
+        return new Deadline(timeout > 0 ? Math.min(timeout, REQUEST_TIMEOUT_MILLIS) : REQUEST_TIMEOUT_MILLIS);
+    }
+
+    /** A stage whose cancel() also cancels the deadline */
+    private static <T> CompletableFuture<T> cancelling(final Deadline deadline) {
+        return new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                deadline.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+    }
+
+    /** TIMEOUT instead of an ERROR given once the deadline has passed, keeping a batch's item results */
+    private Message asTimeout(Message output, Deadline deadline) {
+        if (output == null || output.getCommand() != Command.ERROR || !deadline.isExpired()) {
+            return output;
+        }
+        timedOut.incrementAndGet();
+        Message timeout = new Message(Command.TIMEOUT);
+        timeout.setResults(output.getResults());
+        return timeout;
+    }
+
+    /** Requests waiting for an I/O thread */
+    public int getQueueSize() {
+        return limiter.getQueueSize();
+    }
+
+    /** Requests that may use the database at once right now */
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    /** Requests answered OVERLOADED so far */
+    public long getOverloadedCount() {
+        return limiter.getOverloadedCount();
+    }
+
+    /** Requests answered TIMEOUT so far */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * Stop taking requests; waiting ones are answered OVERLOADED and running ones interrupted
+     */
+    public void shutdown() {
+        limiter.close();
+        ioExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,283 @@
+package com.ankoma88.personnelsystem.server.service.impl;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.server.dao.impl.Deadline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.ankoma88.personnelsystem.util.Settings.LIMIT_BACKOFF;
+import static com.ankoma88.personnelsystem.util.Settings.LIMIT_SLACK_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.LIMIT_TOLERANCE;
+import static com.ankoma88.personnelsystem.util.Settings.MAX_QUEUE_WAIT_MILLIS;
+import static com.ankoma88.personnelsystem.util.Settings.MIN_CONCURRENCY;
+
+/**
+ * Admits requests to an executor while fewer than the concurrency limit are running, and adapts the limit
+ * to the latency they see (AIMD): a request that fails, or takes much longer than its command usually does,
+ * shrinks the limit by LIMIT_BACKOFF, at most once per limit's worth of completions; the others grow it
+ * by 1/limit, up to maxLimit. A command's usual latency is its lowest recent one, drifting up slowly.
+ *
+ * Requests beyond the limit wait in one queue per priority and are started highest priority first.
+ * When the queues are full a request displaces the newest waiting one of a lower priority, if any;
+ * requests displaced, refused, or waiting longer than MAX_QUEUE_WAIT_MILLIS are told they are overloaded.
+ * Those whose deadline passed while waiting are told they timed out, and cancelled ones are dropped.
+ */
+class ConcurrencyLimiter {
+
+    static final int HIGH = 0;
+    static final int NORMAL = 1;
+    static final int LOW = 2;
+
+    /** A command's baseline latency moves 1/2^DRIFT_SHIFT of the way towards every slower sample */
+    private static final int DRIFT_SHIFT = 12;
+
+    private final Executor executor;
+    private final int maxLimit;
+    private final int queueCapacity;
+
+    /** Guarded by this */
+    private final ArrayDeque<Request>[] queues;
+    private final long[] baselines = new long[Command.values().length];
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private int sinceBackoff;
+    private long overloaded;
+    private boolean closed;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ConcurrencyLimiter(Executor executor, int maxLimit, int queueCapacity) {
+        this.executor = executor;
+        this.maxLimit = maxLimit;
+        this.queueCapacity = queueCapacity;
+        // Low enough to learn what the commands cost unloaded; grows within a few hundred requests
+        this.limit = Math.max(Math.min(MIN_CONCURRENCY, maxLimit), maxLimit / 4);
+        this.queues = new ArrayDeque[]{new ArrayDeque<Request>(), new ArrayDeque<Request>(), new ArrayDeque<Request>()};
+    }
+
+    /**
+     * Cheap single-employee requests first, whole-list reads and batches last
+     */
+    static int priorityOf(Command command) {
+        switch (command) {
+            case READ:
+            case CREATE:
+            case UPDATE:
+            case DELETE:
+            case CANCEL_SUPERVISOR:
+            case GET_SUBORDINATES:
+            case GET_REPORTING_CHAIN:
+            case SEARCH:
+            case COUNT:
+                return HIGH;
+            case GET_ALL:
+            case GET_ALL_STREAM:
+            case GET_SUBTREE:
+            case BATCH_CREATE:
+            case BATCH_UPDATE:
+            case BATCH_DELETE:
+                return LOW;
+            default:
+                return NORMAL;
+        }
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getQueueSize() {
+        return queued;
+    }
+
+    /** Requests answered as overloaded so far */
+    synchronized long getOverloadedCount() {
+        return overloaded;
+    }
+
+    void submit(Request request) {
+        Request rejected = null;
+        boolean start = false;
+        synchronized (this) {
+            request.enqueuedAt = System.nanoTime();
+            if (closed) {
+                rejected = request;
+            } else if (inFlight < (int) limit && queued == 0) {
+                inFlight++;
+                start = true;
+            } else if (queued < queueCapacity) {
+                enqueue(request);
+            } else {
+                rejected = request;
+                for (int p = LOW; p > request.priority; p--) {
+                    if (!queues[p].isEmpty()) {
+                        rejected = queues[p].pollLast();
+                        queued--;
+                        enqueue(request);
+                        break;
+                    }
+                }
+            }
+            if (rejected != null) {
+                overloaded++;
+            }
+        }
+        if (rejected != null) {
+            rejected.overloaded();
+        }
+        if (start) {
+            execute(request);
+        }
+    }
+
+    /**
+     * Refuse everything still waiting and whatever comes later
+     */
+    void close() {
+        List<Request> rejected = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (ArrayDeque<Request> queue : queues) {
+                rejected.addAll(queue);
+                queue.clear();
+            }
+            queued = 0;
+        }
+        for (Request request : rejected) {
+            request.overloaded();
+        }
+    }
+
+    private void enqueue(Request request) {
+        queues[request.priority].addLast(request);
+        queued++;
+    }
+
+    private void execute(final Request request) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.nanoTime();
+                    boolean succeeded = false;
+                    try {
+                        succeeded = request.run();
+                    } finally {
+                        completed(request, System.nanoTime() - start, succeeded);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            synchronized (this) {
+                inFlight--;
+                overloaded++;
+            }
+            request.overloaded();
+        }
+    }
+
+    private void completed(Request request, long nanos, boolean succeeded) {
+        List<Request> timedOut = new ArrayList<>();
+        List<Request> rejected = new ArrayList<>();
+        List<Request> started = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (!request.deadline.isCancelled()) {
+                // A request stopped because its client left says nothing about the database
+                adapt(request.command, nanos, succeeded);
+            }
+
+            long expired = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_WAIT_MILLIS);
+            while (inFlight < (int) limit && queued > 0) {
+                Request next = poll();
+                if (next.deadline.isCancelled()) {
+                    // Nobody is waiting for the answer
+                    continue;
+                }
+                if (next.deadline.isExpired()) {
+                    timedOut.add(next);
+                } else if (next.enqueuedAt - expired < 0) {
+                    overloaded++;
+                    rejected.add(next);
+                } else {
+                    inFlight++;
+                    started.add(next);
+                }
+            }
+        }
+        for (Request next : timedOut) {
+            next.timedOut();
+        }
+        for (Request next : rejected) {
+            next.overloaded();
+        }
+        for (Request next : started) {
+            execute(next);
+        }
+    }
+
+    private void adapt(Command command, long nanos, boolean succeeded) {
+        int c = command.ordinal();
+        long baseline = baselines[c];
+        if (baseline == 0 || nanos < baseline) {
+            baselines[c] = nanos;
+        } else {
+            baselines[c] = baseline + ((nanos - baseline) >> DRIFT_SHIFT);
+        }
+
+        boolean slow = baseline != 0 && nanos > baseline * LIMIT_TOLERANCE
+                && nanos > baseline + TimeUnit.MILLISECONDS.toNanos(LIMIT_SLACK_MILLIS);
+        sinceBackoff++;
+        if (!succeeded || slow) {
+            // Requests started before the last backoff don't show its effect yet
+            if (sinceBackoff >= limit) {
+                limit = Math.max(Math.min(MIN_CONCURRENCY, maxLimit), limit * LIMIT_BACKOFF);
+                sinceBackoff = 0;
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private Request poll() {
+        for (ArrayDeque<Request> queue : queues) {
+            Request request = queue.pollFirst();
+            if (request != null) {
+                queued--;
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A request waiting for admission
+     */
+    abstract static class Request {
+        private final Command command;
+        private final Deadline deadline;
+        private final int priority;
+        private long enqueuedAt;
+
+        Request(Command command, Deadline deadline) {
+            this.command = command;
+            this.deadline = deadline;
+            this.priority = priorityOf(command);
+        }
+
+        /** Process the request on an executor thread; false if it failed */
+        abstract boolean run();
+
+        /** Answer that the server is too busy; called on the submitting or a completing thread */
+        abstract void overloaded();
+
+        /** Answer that the deadline passed before the request could start; called on a completing thread */
+        abstract void timedOut();
+    }
+}
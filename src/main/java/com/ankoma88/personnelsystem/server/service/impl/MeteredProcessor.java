@@ -0,0 +1,153 @@
+package com.ankoma88.personnelsystem.server.service.impl;
+
+import com.ankoma88.personnelsystem.model.Command;
+import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.server.metrics.ServerMetrics;
+import com.ankoma88.personnelsystem.server.service.interfaces.MessageSink;
+import com.ankoma88.personnelsystem.server.service.interfaces.Processor;
+
+import java.io.IOException;
+
+/**
+ * Processor decorator that records count, errors and latency of every request by command.
+ * An answer with the ERROR command counts as an error.
+ */
+public class MeteredProcessor implements Processor {
+
+    private final Processor delegate;
+    private final ServerMetrics metrics;
+
+    public MeteredProcessor(Processor delegate, ServerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Message processMessage(Message input) {
+        long start = System.nanoTime();
+        Message output = null;
+        try {
+            output = delegate.processMessage(input);
+            return output;
+        } finally {
+            metrics.command(input.getCommand()).recordSince(start, isError(output));
+        }
+    }
+
+    /** Only answers actually given from memory are recorded; the others are recorded by processMessage */
+    @Override
+    public Message processFromMemory(Message input) {
+        long start = System.nanoTime();
+        Message output = delegate.processFromMemory(input);
+        if (output != null) {
+            metrics.command(input.getCommand()).recordSince(start, isError(output));
+        }
+        return output;
+    }
+
+    @Override
+    public void processGetAllStream(Message input, MessageSink output) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.processGetAllStream(input, output);
+            failed = false;
+        } finally {
+            metrics.command(input.getCommand()).recordSince(start, failed);
+        }
+    }
+
+    @Override
+    public Message processRead(Message input) {
+        return delegate.processRead(input);
+    }
+
+    @Override
+    public Message processDelete(Message input) {
+        return delegate.processDelete(input);
+    }
+
+    @Override
+    public Message processUpdate(Message input) {
+        return delegate.processUpdate(input);
+    }
+
+    @Override
+    public Message processGetSubordinates(Message input) {
+        return delegate.processGetSubordinates(input);
+    }
+
+    @Override
+    public Message processGetSupervisors(Message input) {
+        return delegate.processGetSupervisors(input);
+    }
+
+    @Override
+    public Message processGetAll(Message input) {
+        return delegate.processGetAll(input);
+    }
+
+    @Override
+    public Message processCreate(Message input) {
+        return delegate.processCreate(input);
+    }
+
+    @Override
+    public Message processGetReportingChain(Message input) {
+        return delegate.processGetReportingChain(input);
+    }
+
+    @Override
+    public Message processGetSubtree(Message input) {
+        return delegate.processGetSubtree(input);
+    }
+
+    @Override
+    public Message processSearch(Message input) {
+        return delegate.processSearch(input);
+    }
+
+    @Override
+    public Message processFilter(Message input) {
+        return delegate.processFilter(input);
+    }
+
+    @Override
+    public Message processCount(Message input) {
+        return delegate.processCount(input);
+    }
+
+    @Override
+    public Message processCountByDepartment(Message input) {
+        return delegate.processCountByDepartment(input);
+    }
+
+    @Override
+    public Message processCountBySupervisor(Message input) {
+        return delegate.processCountBySupervisor(input);
+    }
+
+    @Override
+    public Message processGetPage(Message input) {
+        return delegate.processGetPage(input);
+    }
+
+    @Override
+    public Message processBatchCreate(Message input) {
+        return delegate.processBatchCreate(input);
+    }
+
+    @Override
+    public Message processBatchUpdate(Message input) {
+        return delegate.processBatchUpdate(input);
+    }
+
+    @Override
+    public Message processBatchDelete(Message input) {
+        return delegate.processBatchDelete(input);
+    }
+
+    private static boolean isError(Message output) {
+        return output == null || output.getCommand() == Command.ERROR;
+    }
+}
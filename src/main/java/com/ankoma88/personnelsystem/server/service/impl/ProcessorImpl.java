@@ -3,23 +3,57 @@ package com.ankoma88.personnelsystem.server.service.impl;
 
 import com.ankoma88.personnelsystem.model.Command;
 import com.ankoma88.personnelsystem.model.Employee;
+import com.ankoma88.personnelsystem.model.ItemStatus;
 import com.ankoma88.personnelsystem.model.Message;
+import com.ankoma88.personnelsystem.server.dao.exceptions.BatchPersistenceException;
+import com.ankoma88.personnelsystem.server.dao.exceptions.ConflictException;
 import com.ankoma88.personnelsystem.server.dao.exceptions.PersistenceException;
 import com.ankoma88.personnelsystem.server.dao.impl.DaoFactoryImpl;
+import com.ankoma88.personnelsystem.server.dao.impl.Deadline;
 import com.ankoma88.personnelsystem.server.dao.interfaces.DaoFactory;
+import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeCursor;
 import com.ankoma88.personnelsystem.server.dao.interfaces.EmployeeDao;
+import com.ankoma88.personnelsystem.server.index.EmployeeFilter;
+import com.ankoma88.personnelsystem.server.index.OrgChartIndex;
+import com.ankoma88.personnelsystem.server.service.interfaces.MessageSink;
 import com.ankoma88.personnelsystem.server.service.interfaces.Processor;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.ankoma88.personnelsystem.util.Settings.DEFAULT_PAGE_SIZE;
+import static com.ankoma88.personnelsystem.util.Settings.DEFAULT_SEARCH_RESULTS;
+import static com.ankoma88.personnelsystem.util.Settings.MAX_PAGE_SIZE;
+
 public class ProcessorImpl implements Processor {
 
     private static final Logger log = Logger.getLogger(ProcessorImpl.class.getName());
-    private static final DaoFactory daoFactory = new DaoFactoryImpl();
+    private static final long REFRESH_RETRY_MILLIS = 5000;
+    private final DaoFactory daoFactory;
+    /** Answers hierarchy queries from memory when present; must receive the factory's change events */
+    private final OrgChartIndex orgChart;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile long retryRefreshAt;
+
+    public ProcessorImpl() {
+        this(new DaoFactoryImpl());
+    }
+
+    public ProcessorImpl(DaoFactory daoFactory) {
+        this(daoFactory, null);
+    }
+
+    public ProcessorImpl(DaoFactory daoFactory, OrgChartIndex orgChart) {
+        this.daoFactory = daoFactory;
+        this.orgChart = orgChart;
+    }
 
 
     /**
@@ -46,12 +80,71 @@ public class ProcessorImpl implements Processor {
                 return processRead(input);
             case CANCEL_SUPERVISOR:
                 return processCancelSupervisor(input);
+            case GET_REPORTING_CHAIN:
+                return processGetReportingChain(input);
+            case GET_SUBTREE:
+                return processGetSubtree(input);
+            case GET_PAGE:
+                return processGetPage(input);
+            case SEARCH:
+                return processSearch(input);
+            case FILTER:
+                return processFilter(input);
+            case COUNT:
+                return processCount(input);
+            case COUNT_BY_DEPARTMENT:
+                return processCountByDepartment(input);
+            case COUNT_BY_SUPERVISOR:
+                return processCountBySupervisor(input);
+            case BATCH_CREATE:
+                return processBatchCreate(input);
+            case BATCH_UPDATE:
+                return processBatchUpdate(input);
+            case BATCH_DELETE:
+                return processBatchDelete(input);
 
             default:
                 return new Message(Command.ERROR);
         }
     }
 
+    /**
+     * Reads and hierarchy queries are answered from the org chart index once it is loaded.
+     * Never loads the index itself, that takes a database round trip; a reload that is due starts
+     * in the background.
+     */
+    @Override
+    public Message processFromMemory(Message input) {
+        if (orgChart == null || !orgChart.isLoaded()) {
+            return null;
+        }
+        if (orgChart.needsRefresh()) {
+            refreshInBackground();
+        }
+        switch (input.getCommand()) {
+            case READ:
+                Employee employee = orgChart.get(input.getKey());
+                return employee == null ? null : new Message(Command.SUCCESS, employee);
+            case GET_ALL:
+            case GET_SUBORDINATES:
+            case GET_SUPERVISORS:
+                return versioned(input);
+            case GET_REPORTING_CHAIN:
+                return new Message(Command.SUCCESS, orgChart.getReportingChain(input.getKey()));
+            case GET_SUBTREE:
+                return new Message(Command.SUCCESS, orgChart.getSubtree(input.getKey()));
+            case SEARCH:
+                return search(input);
+            case FILTER:
+            case COUNT:
+            case COUNT_BY_DEPARTMENT:
+            case COUNT_BY_SUPERVISOR:
+                return aggregate(input);
+            default:
+                return null;
+        }
+    }
+
     private Message processCancelSupervisor(Message input) {
         List<Employee> resultList;
         try (Connection con = daoFactory.getConnection()) {
@@ -77,11 +170,17 @@ public class ProcessorImpl implements Processor {
         return new Message(Command.SUCCESS, resultEmp);
     }
 
+    /**
+     * Deletes employee input.key; if input.employee is set, only if it still has that employee's row version
+     */
     @Override
     public Message processDelete(Message input) {
+        long rowVersion = input.getEmployee() == null ? 0 : input.getEmployee().getRowVersion();
         try (Connection con = daoFactory.getConnection()) {
             EmployeeDao dao = daoFactory.getEmployeeDao(con);
-            dao.delete(input.getKey());
+            dao.delete(input.getKey(), rowVersion);
+        } catch (ConflictException e) {
+            return new Message(Command.CONFLICT, e.getCurrent());
         } catch (SQLException | PersistenceException e) {
             e.printStackTrace();
             return new Message(Command.ERROR);
@@ -96,6 +195,8 @@ public class ProcessorImpl implements Processor {
             EmployeeDao dao = daoFactory.getEmployeeDao(con);
             resultEmp = dao.update(input.getEmployee());
             log.info("Updated: "+resultEmp);
+        } catch (ConflictException e) {
+            return new Message(Command.CONFLICT, e.getCurrent());
         } catch (SQLException | PersistenceException e) {
             e.printStackTrace();
             return new Message(Command.ERROR);
@@ -105,6 +206,9 @@ public class ProcessorImpl implements Processor {
 
     @Override
     public Message processGetSubordinates(Message input) {
+        if (orgChartReady()) {
+            return versioned(input);
+        }
         List<Employee> subordinatesList = new LinkedList<>();
         try (Connection con = daoFactory.getConnection()) {
             EmployeeDao dao = daoFactory.getEmployeeDao(con);
@@ -118,6 +222,9 @@ public class ProcessorImpl implements Processor {
 
     @Override
     public Message processGetSupervisors(Message input) {
+        if (orgChartReady()) {
+            return versioned(input);
+        }
         List<Employee> supervisorsList = new LinkedList<>();
         try (Connection con = daoFactory.getConnection()) {
             EmployeeDao dao = daoFactory.getEmployeeDao(con);
@@ -131,6 +238,9 @@ public class ProcessorImpl implements Processor {
 
     @Override
     public Message processGetAll(Message input) {
+        if (orgChartReady()) {
+            return versioned(input);
+        }
         List<Employee> allEmployeesList = new LinkedList<>();
         try (Connection con = daoFactory.getConnection()) {
             EmployeeDao dao = daoFactory.getEmployeeDao(con);
@@ -155,4 +265,326 @@ public class ProcessorImpl implements Processor {
         }
         return new Message(Command.SUCCESS, resultEmp);
     }
+
+    /**
+     * Supervisors of input.key up to the top of the hierarchy, nearest first
+     */
+    @Override
+    public Message processGetReportingChain(Message input) {
+        if (!orgChartReady()) {
+            return new Message(Command.ERROR);
+        }
+        return new Message(Command.SUCCESS, orgChart.getReportingChain(input.getKey()));
+    }
+
+    /**
+     * Everyone reporting to input.key directly or indirectly
+     */
+    @Override
+    public Message processGetSubtree(Message input) {
+        if (!orgChartReady()) {
+            return new Message(Command.ERROR);
+        }
+        return new Message(Command.SUCCESS, orgChart.getSubtree(input.getKey()));
+    }
+
+    /**
+     * Employees matching input.query best first, at most input.pageSize of them
+     */
+    @Override
+    public Message processSearch(Message input) {
+        if (!orgChartReady()) {
+            return new Message(Command.ERROR);
+        }
+        return search(input);
+    }
+
+    private Message search(Message input) {
+        if (input.getQuery() == null) {
+            return new Message(Command.ERROR);
+        }
+        int requested = input.getPageSize();
+        int limit = requested <= 0 ? DEFAULT_SEARCH_RESULTS : Math.min(requested, MAX_PAGE_SIZE);
+        return new Message(Command.SUCCESS, orgChart.search(input.getQuery(), limit));
+    }
+
+    /**
+     * Employees in department input.query and/or reporting to one of input.keys, paged like GET_PAGE
+     */
+    @Override
+    public Message processFilter(Message input) {
+        return orgChartReady() ? aggregate(input) : new Message(Command.ERROR);
+    }
+
+    /**
+     * Number of employees matching the FILTER condition, as the answer's key
+     */
+    @Override
+    public Message processCount(Message input) {
+        return orgChartReady() ? aggregate(input) : new Message(Command.ERROR);
+    }
+
+    /**
+     * Headcount per department among the employees matching the FILTER condition
+     */
+    @Override
+    public Message processCountByDepartment(Message input) {
+        return orgChartReady() ? aggregate(input) : new Message(Command.ERROR);
+    }
+
+    /**
+     * Direct reports per supervisor among the employees matching the FILTER condition
+     */
+    @Override
+    public Message processCountBySupervisor(Message input) {
+        return orgChartReady() ? aggregate(input) : new Message(Command.ERROR);
+    }
+
+    /** Filter and count queries, answered by scanning the org chart index */
+    private Message aggregate(Message input) {
+        EmployeeFilter filter = new EmployeeFilter(input.getQuery(), input.getKeys());
+        int limit = pageSize(input);
+        Message output = new Message(Command.SUCCESS);
+        switch (input.getCommand()) {
+            case FILTER:
+                List<Employee> page = orgChart.filter(filter, input.getKey(), limit);
+                output.setEmployees(page);
+                output.setKey(page.size() < limit ? 0 : page.get(page.size() - 1).getId());
+                output.setPageSize(limit);
+                break;
+            case COUNT:
+                output.setKey(orgChart.count(filter));
+                break;
+            case COUNT_BY_DEPARTMENT:
+                output.setGroups(orgChart.countByDepartment(filter, limit));
+                break;
+            case COUNT_BY_SUPERVISOR:
+                output.setGroups(orgChart.countBySupervisor(filter, limit));
+                break;
+            default:
+                return new Message(Command.ERROR);
+        }
+        return output;
+    }
+
+    /**
+     * Keyset pagination: input.key is the last id of the previous page (0 for the first page).
+     * The answer's key is the token for the next page, 0 once there are no more rows.
+     */
+    @Override
+    public Message processGetPage(Message input) {
+        int limit = pageSize(input);
+        List<Employee> page;
+        try (Connection con = daoFactory.getConnection()) {
+            EmployeeDao dao = daoFactory.getEmployeeDao(con);
+            page = dao.getPage(input.getKey(), limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new Message(Command.ERROR);
+        }
+        Message output = new Message(Command.SUCCESS, page);
+        output.setKey(page.size() < limit ? 0 : page.get(page.size() - 1).getId());
+        output.setPageSize(limit);
+        return output;
+    }
+
+    /**
+     * Rows go from the database cursor to the client one chunk at a time,
+     * so memory use does not depend on the size of the table.
+     */
+    @Override
+    public void processGetAllStream(Message input, MessageSink output) throws IOException {
+        int chunkSize = pageSize(input);
+        List<Employee> chunk = new ArrayList<>(chunkSize);
+        Message frame = new Message(Command.CHUNK, chunk);
+        int total = 0;
+        try (Connection con = daoFactory.getConnection();
+             EmployeeCursor cursor = daoFactory.getEmployeeDao(con).openCursor(chunkSize)) {
+            Employee employee;
+            while ((employee = cursor.next()) != null) {
+                chunk.add(employee);
+                if (chunk.size() == chunkSize) {
+                    output.send(frame);
+                    total += chunk.size();
+                    chunk.clear();
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            output.send(new Message(Command.ERROR));
+            return;
+        }
+        if (!chunk.isEmpty()) {
+            output.send(frame);
+            total += chunk.size();
+        }
+        output.send(new Message(Command.SUCCESS, total));
+    }
+
+    /**
+     * Create input.employees in one transaction; the answer carries them with their new ids
+     * and one ItemStatus per employee
+     */
+    @Override
+    public Message processBatchCreate(Message input) {
+        if (input.getEmployees() == null) {
+            return new Message(Command.ERROR);
+        }
+        List<ItemStatus> statuses;
+        try (Connection con = daoFactory.getConnection()) {
+            EmployeeDao dao = daoFactory.getEmployeeDao(con);
+            statuses = dao.createAll(input.getEmployees());
+        } catch (SQLException | PersistenceException e) {
+            return batchError(e);
+        }
+        return batchResult(input.getEmployees(), statuses);
+    }
+
+    @Override
+    public Message processBatchUpdate(Message input) {
+        if (input.getEmployees() == null) {
+            return new Message(Command.ERROR);
+        }
+        List<ItemStatus> statuses;
+        try (Connection con = daoFactory.getConnection()) {
+            EmployeeDao dao = daoFactory.getEmployeeDao(con);
+            statuses = dao.updateAll(input.getEmployees());
+        } catch (SQLException | PersistenceException e) {
+            return batchError(e);
+        }
+        return batchResult(input.getEmployees(), statuses);
+    }
+
+    /**
+     * Delete the employees whose ids are in input.keys, in one transaction
+     */
+    @Override
+    public Message processBatchDelete(Message input) {
+        if (input.getKeys() == null) {
+            return new Message(Command.ERROR);
+        }
+        List<ItemStatus> statuses;
+        try (Connection con = daoFactory.getConnection()) {
+            EmployeeDao dao = daoFactory.getEmployeeDao(con);
+            statuses = dao.deleteAll(input.getKeys());
+        } catch (SQLException | PersistenceException e) {
+            return batchError(e);
+        }
+        return batchResult(null, statuses);
+    }
+
+    private static Message batchResult(List<Employee> employees, List<ItemStatus> statuses) {
+        Message output = new Message(Command.SUCCESS, employees);
+        output.setResults(statuses);
+        return output;
+    }
+
+    private static Message batchError(Exception e) {
+        e.printStackTrace();
+        Message output = new Message(Command.ERROR);
+        if (e instanceof BatchPersistenceException) {
+            output.setResults(((BatchPersistenceException) e).getStatuses());
+        }
+        return output;
+    }
+
+    /**
+     * GET_ALL, GET_SUPERVISORS or GET_SUBORDINATES from the org chart. The answer carries the version
+     * to send next time; sent with one, the answer is NOT_MODIFIED if the list has not changed since,
+     * and for GET_ALL a DELTA if the index can tell what changed.
+     * The version is read before the list, so a list may already hold a change its version does not cover
+     * and the client gets that change again next time.
+     */
+    private Message versioned(Message input) {
+        long since = input.getVersion();
+        long version;
+        List<Employee> employees;
+        switch (input.getCommand()) {
+            case GET_ALL:
+                if (since != 0) {
+                    OrgChartIndex.Delta delta = orgChart.changesSince(since);
+                    if (delta != null) {
+                        Message output = new Message(delta.isEmpty() ? Command.NOT_MODIFIED : Command.DELTA);
+                        if (!delta.isEmpty()) {
+                            output.setEmployees(delta.getEmployees());
+                            output.setKeys(delta.getDeleted());
+                        }
+                        output.setVersion(delta.getVersion());
+                        return output;
+                    }
+                }
+                version = orgChart.getVersion();
+                employees = orgChart.getAll();
+                break;
+            case GET_SUPERVISORS:
+                version = orgChart.getVersion();
+                employees = since == version ? null : orgChart.getSupervisors();
+                break;
+            case GET_SUBORDINATES:
+                version = orgChart.getSubordinatesVersion(input.getKey());
+                // A version from another node or an earlier process says nothing about this index's list
+                boolean current = orgChart.isOwnVersion(since) && since >= version && since <= orgChart.getVersion();
+                employees = current ? null : orgChart.getSubordinates(input.getKey());
+                break;
+            default:
+                return new Message(Command.ERROR);
+        }
+        Message output = employees == null ? new Message(Command.NOT_MODIFIED) : new Message(Command.SUCCESS, employees);
+        output.setVersion(version);
+        return output;
+    }
+
+    private static int pageSize(Message input) {
+        int requested = input.getPageSize();
+        return requested <= 0 ? DEFAULT_PAGE_SIZE : Math.min(requested, MAX_PAGE_SIZE);
+    }
+
+    private boolean orgChartReady() {
+        if (orgChart == null) {
+            return false;
+        }
+        if (orgChart.isLoaded()) {
+            if (orgChart.needsRefresh()) {
+                refreshInBackground();
+            }
+            return true;
+        }
+        // Only the first load is waited for, there is nothing to answer from before. Requests arriving
+        // meanwhile wait for it too, so it must not time out or be cancelled with the one that started it
+        Deadline deadline = Deadline.suspend();
+        try (Connection con = daoFactory.getConnection()) {
+            orgChart.load(daoFactory.getEmployeeDao(con));
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Deadline.resume(deadline);
+        }
+    }
+
+    /**
+     * Reload the org chart on a thread of its own unless that is running already, or failed less than
+     * REFRESH_RETRY_MILLIS ago; queries are answered from the current data meanwhile
+     */
+    private void refreshInBackground() {
+        if (System.currentTimeMillis() < retryRefreshAt || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Thread refresher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Connection con = daoFactory.getConnection()) {
+                    orgChart.load(daoFactory.getEmployeeDao(con));
+                } catch (SQLException | RuntimeException e) {
+                    retryRefreshAt = System.currentTimeMillis() + REFRESH_RETRY_MILLIS;
+                    log.log(Level.WARNING, "Org chart refresh failed, answering from the previous load", e);
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+        }, "org-chart-refresh");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
 }
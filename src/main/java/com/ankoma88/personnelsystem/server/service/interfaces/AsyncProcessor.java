@@ -0,0 +1,24 @@
+package com.ankoma88.personnelsystem.server.service.interfaces;
+
+import com.ankoma88.personnelsystem.model.Message;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking face of a Processor: the caller gets a stage that completes with the answer
+ * and is never blocked on the database itself. Cancelling the stage's CompletableFuture asks for
+ * the request to be abandoned, e.g. because nobody is left to read the answer.
+ */
+public interface AsyncProcessor {
+
+    /**
+     * Answer to input. Completes exceptionally if the request could not be processed,
+     * e.g. because too many requests are already waiting for the database.
+     */
+    CompletionStage<Message> processMessage(Message input);
+
+    /**
+     * Stream all employees to output as Processor.processGetAllStream does; completes once the last message is sent
+     */
+    CompletionStage<Void> processGetAllStream(Message input, MessageSink output);
+}
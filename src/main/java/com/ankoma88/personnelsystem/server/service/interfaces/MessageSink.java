@@ -0,0 +1,16 @@
+package com.ankoma88.personnelsystem.server.service.interfaces;
+
+import com.ankoma88.personnelsystem.model.Message;
+
+import java.io.IOException;
+
+/**
+ * Where a processor writes responses that consist of several messages
+ */
+public interface MessageSink {
+
+    /**
+     * Send a message to the client. The message may be reused by the caller once this returns.
+     */
+    void send(Message message) throws IOException;
+}
@@ -3,9 +3,16 @@ package com.ankoma88.personnelsystem.server.service.interfaces;
 
 import com.ankoma88.personnelsystem.model.Message;
 
+import java.io.IOException;
+
 public interface Processor {
     Message processMessage(Message input);
 
+    /**
+     * Answer input without touching the database if the data is in memory, otherwise return null
+     */
+    Message processFromMemory(Message input);
+
     Message processRead(Message input);
 
     Message processDelete(Message input);
@@ -19,4 +26,31 @@ public interface Processor {
     Message processGetAll(Message input);
 
     Message processCreate(Message input);
+
+    Message processGetReportingChain(Message input);
+
+    Message processGetSubtree(Message input);
+
+    Message processGetPage(Message input);
+
+    Message processSearch(Message input);
+
+    Message processFilter(Message input);
+
+    Message processCount(Message input);
+
+    Message processCountByDepartment(Message input);
+
+    Message processCountBySupervisor(Message input);
+
+    Message processBatchCreate(Message input);
+
+    Message processBatchUpdate(Message input);
+
+    Message processBatchDelete(Message input);
+
+    /**
+     * Send all employees as a series of CHUNK messages followed by SUCCESS with the row count as key
+     */
+    void processGetAllStream(Message input, MessageSink output) throws IOException;
 }
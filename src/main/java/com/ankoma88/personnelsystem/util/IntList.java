@@ -0,0 +1,117 @@
+package com.ankoma88.personnelsystem.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return values[index];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public void addAll(IntList other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.values[i]);
+        }
+    }
+
+    public boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    public int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Remove the first occurrence of value; order of the remaining elements is not preserved */
+    public boolean removeValue(int value) {
+        int i = indexOf(value);
+        if (i < 0) {
+            return false;
+        }
+        values[i] = values[--size];
+        return true;
+    }
+
+    /**
+     * Add value to a list kept in ascending order, unless it is there already; appending the largest
+     * value so far is constant time
+     * @return whether value was added
+     */
+    public boolean addSorted(int value) {
+        if (size == 0 || values[size - 1] < value) {
+            add(value);
+            return true;
+        }
+        int i = Arrays.binarySearch(values, 0, size, value);
+        if (i >= 0) {
+            return false;
+        }
+        i = -i - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove value from a list kept in ascending order, found by binary search
+     * @return whether value was there
+     */
+    public boolean removeSorted(int value) {
+        int i = Arrays.binarySearch(values, 0, size, value);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
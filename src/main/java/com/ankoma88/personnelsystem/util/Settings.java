@@ -11,10 +11,155 @@ public abstract class Settings {
     public static final String PASSWORD = "Ak221188";
 
     /**
-     * Network settings
+     * Storage engine: "sqlserver" for the database above, or "mapped" to keep employees in a memory-mapped
+     * file under MAPPED_DATA_DIR, needing no database server. The mapped file grows from MAPPED_INITIAL_BYTES;
+     * it is forced to disk on every write only with -Dpersonnelsystem.mappedSync=true, otherwise the
+     * operating system writes it back and only a machine crash can lose the latest changes.
+     */
+    public static final String STORAGE = System.getProperty("personnelsystem.storage", "sqlserver");
+    public static final boolean MAPPED_STORAGE = "mapped".equalsIgnoreCase(STORAGE);
+    public static final String MAPPED_DATA_DIR = System.getProperty("personnelsystem.dataDir", "data");
+    public static final int MAPPED_INITIAL_BYTES = 16 * 1024 * 1024;
+    public static final boolean MAPPED_SYNC_WRITES = Boolean.getBoolean("personnelsystem.mappedSync");
+
+    /**
+     * Connection pool settings. POOL_MAX_SIZE bounds concurrent database sessions
+     * and should be at least WORKER_THREADS, otherwise workers queue up for connections.
+     * Each connection keeps up to POOL_STATEMENT_CACHE_SIZE prepared statements open for reuse, 0 disables that.
+     */
+    public static final int POOL_MIN_SIZE = 2;
+    public static final int POOL_MAX_SIZE = 16;
+    public static final long POOL_ACQUIRE_TIMEOUT_MILLIS = 5000;
+    public static final long POOL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    public static final long POOL_LEAK_THRESHOLD_MILLIS = 60 * 1000;
+    /** Leak reports name the borrowing thread; its stack trace too, at a cost per borrow, with this flag */
+    public static final boolean POOL_LEAK_STACK_TRACES = Boolean.getBoolean("personnelsystem.poolLeakTraces");
+    public static final int POOL_VALIDATION_TIMEOUT_SECONDS = 2;
+    public static final long POOL_HOUSEKEEPING_PERIOD_MILLIS = 30 * 1000;
+    public static final int POOL_STATEMENT_CACHE_SIZE = 32;
+
+    /**
+     * Server-side employee cache settings. The TTL only matters for changes made to the
+     * database behind the server's back; the server's own writes update the cache immediately.
+     */
+    public static final int CACHE_MAX_EMPLOYEES = 100000;
+    public static final int CACHE_MAX_SUBORDINATE_LISTS = 1024;
+    public static final long CACHE_TTL_MILLIS = 5 * 60 * 1000;
+    public static final long ORG_CHART_REFRESH_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Network settings; the ports can be overridden to run several servers on one machine
      */
     public static final String IP = "127.0.0.1";
-    public static final int PORT = 11111;
+    public static final int PORT = Integer.getInteger("personnelsystem.port", 11111);
+    /** Prometheus text endpoint, http://IP:METRICS_PORT/metrics */
+    public static final int METRICS_PORT = Integer.getInteger("personnelsystem.metricsPort", 11112);
+
+    /**
+     * Cluster mode, off unless -Dpersonnelsystem.clusterPeers lists the other servers as host:port,host:port.
+     * Servers sharing the database tell each other on CLUSTER_PORT about the changes they make, so each keeps
+     * its cache and org chart current. Up to CLUSTER_QUEUE_LIMIT changes wait for a peer that is unreachable;
+     * past that they are dropped and the peer is told to start over from the database.
+     * A link carries a heartbeat every CLUSTER_HEARTBEAT_MILLIS, which the peer echoes; either end drops
+     * a link it has heard nothing on for CLUSTER_HEARTBEAT_TIMEOUT_MILLIS and the sender reconnects.
+     */
+    public static final String CLUSTER_PEERS = System.getProperty("personnelsystem.clusterPeers", "");
+    public static final int CLUSTER_PORT = Integer.getInteger("personnelsystem.clusterPort", 11113);
+    public static final int CLUSTER_CONNECT_TIMEOUT_MILLIS = 2000;
+    public static final long CLUSTER_RECONNECT_MILLIS = 1000;
+    public static final int CLUSTER_QUEUE_LIMIT = 10000;
+    public static final long CLUSTER_HEARTBEAT_MILLIS = 5000;
+    public static final int CLUSTER_HEARTBEAT_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Server settings. Idle client connections only cost a selector registration;
+     * WORKER_THREADS decode requests and write answers, database work runs on IO_THREADS
+     * (one per pooled connection) with at most IO_QUEUE_CAPACITY requests waiting for them.
+     */
+    public static final int WORKER_THREADS = 16;
+    public static final int IO_THREADS = POOL_MAX_SIZE;
+    public static final int IO_QUEUE_CAPACITY = 1024;
+    /**
+     * Admission control in front of the IO_THREADS: how many requests may use the database at once adapts between
+     * MIN_CONCURRENCY and IO_THREADS. A request that fails, or takes LIMIT_TOLERANCE times (and LIMIT_SLACK_MILLIS
+     * more than) its command's usual latency, shrinks the limit by LIMIT_BACKOFF; normal ones grow it back slowly.
+     * Waiting requests are started cheap commands first; those that wait longer than MAX_QUEUE_WAIT_MILLIS,
+     * or find the queue full, are answered OVERLOADED.
+     */
+    public static final int MIN_CONCURRENCY = 2;
+    public static final double LIMIT_TOLERANCE = 2.0;
+    public static final long LIMIT_SLACK_MILLIS = 5;
+    public static final double LIMIT_BACKOFF = 0.9;
+    public static final long MAX_QUEUE_WAIT_MILLIS = 2000;
+    /**
+     * Longest a request may take, waiting included; clients may ask for less. Its database statements are
+     * cancelled when the time is up, and the answer is TIMEOUT.
+     */
+    public static final int REQUEST_TIMEOUT_MILLIS = 30 * 1000;
+    public static final long READ_TIMEOUT_MILLIS = 30 * 1000;
+    /**
+     * Binary frames are decoded once they have arrived completely; a serialized message, whose length is not
+     * known up front, may hold a worker this long for the rest of it before the connection is dropped.
+     * At most PARTIAL_MESSAGE_WORKERS workers wait like that at once; connections beyond are dropped too.
+     */
+    public static final long PARTIAL_MESSAGE_TIMEOUT_MILLIS = 5000;
+    public static final int PARTIAL_MESSAGE_WORKERS = WORKER_THREADS / 4;
+    public static final int MAX_INBOUND_BUFFER_BYTES = 1024 * 1024;
+    public static final int MAX_OUTBOUND_BUFFER_BYTES = 8 * 1024 * 1024;
+    /**
+     * Binary protocol frames with a larger payload are sent Deflate-compressed at COMPRESSION_LEVEL, to clients
+     * that negotiated protocol version 3. Up to COMPRESSION_POOL_SIZE idle compressors are kept for reuse.
+     */
+    public static final int COMPRESSION_THRESHOLD_BYTES = 4096;
+    public static final int COMPRESSION_LEVEL = 1; // Deflater.BEST_SPEED; 9 is smallest
+    public static final int COMPRESSION_POOL_SIZE = WORKER_THREADS;
+    /**
+     * Pipelined requests (those with a correlation id) one connection may have in processing at once.
+     * Beyond that the server stops reading the connection until answers go out.
+     */
+    public static final int MAX_IN_FLIGHT_PER_CONNECTION = 32;
+    /**
+     * Change feed subscribers: changes waiting for one client are coalesced per employee; past the limit
+     * they are dropped for a RESYNC. Nothing is pushed while more than the backlog is waiting to be sent.
+     */
+    public static final int SUBSCRIBER_QUEUE_LIMIT = 10000;
+    public static final int SUBSCRIBER_BACKLOG_BYTES = 256 * 1024;
+
+    /**
+     * Rows per GET_PAGE page or GET_ALL_STREAM chunk when the client does not ask for a size, and the upper limit
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final int MAX_PAGE_SIZE = 5000;
+    /** SEARCH results when the client does not ask for a number; limited by MAX_PAGE_SIZE as well */
+    public static final int DEFAULT_SEARCH_RESULTS = 20;
+
+    /**
+     * Statements sent per executeBatch() round trip by the batch commands
+     */
+    public static final int BATCH_SIZE = 1000;
+
+    /**
+     * Write-behind mode, off unless started with -Dpersonnelsystem.writeBehind=true: updates and deletes
+     * are acknowledged once in the write-ahead log under WRITE_BEHIND_LOG_DIR and written to the database
+     * every WRITE_BEHIND_FLUSH_MILLIS. Writers wait for a flush while more changes than the limit are pending.
+     * The row versions handed out for pending changes stay valid after the flush for the most recently flushed
+     * WRITE_BEHIND_REMEMBERED_VERSIONS employees; older ones get CONFLICT with the current state.
+     */
+    public static final boolean WRITE_BEHIND = Boolean.getBoolean("personnelsystem.writeBehind");
+    public static final String WRITE_BEHIND_LOG_DIR = System.getProperty("personnelsystem.walDir", "wal");
+    public static final long WRITE_BEHIND_FLUSH_MILLIS = 200;
+    public static final int WRITE_BEHIND_MAX_PENDING = 50000;
+    public static final int WRITE_BEHIND_REMEMBERED_VERSIONS = 100000;
+
+    /**
+     * Warm start, off unless -Dpersonnelsystem.snapshotFile names a file: the org chart is saved there every
+     * SNAPSHOT_INTERVAL_MILLIS when it changed, and on startup loaded from it, reading from the database only
+     * the employees written since. Blocks of SNAPSHOT_BLOCK_ROWS are decoded on SNAPSHOT_LOAD_THREADS threads.
+     */
+    public static final String SNAPSHOT_FILE = System.getProperty("personnelsystem.snapshotFile", "");
+    public static final long SNAPSHOT_INTERVAL_MILLIS = 5 * 60 * 1000;
+    public static final int SNAPSHOT_BLOCK_ROWS = 8192;
+    public static final int SNAPSHOT_LOAD_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
 
 
 }